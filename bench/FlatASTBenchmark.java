@@ -0,0 +1,170 @@
+// bench/FlatASTBenchmark.java - NO PACKAGE DECLARATION
+import lexer.ColumnarLexer;
+import parser.ASTNode;
+import parser.FlatAST;
+import parser.Parser;
+import java.util.List;
+
+// Object tree vs FlatAST on a generated 50k-line script: heap retained per 1k lines once parsing is done,
+// and the time for a full recursive walk that counts nodes and sums number literals, which is the access
+// pattern of the compiler and the interpreter.
+// Compile against the engine classes: javac -cp out -d out bench/FlatASTBenchmark.java
+public class FlatASTBenchmark {
+    private static final int LINES = 50_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static long sink;
+    private static double total;
+
+    public static void main(String[] args) {
+        String source = generate();
+        System.out.printf("source: %d lines%n", LINES);
+
+        long before = usedHeap();
+        List<ASTNode.Stmt> tree = new Parser(new ColumnarLexer(source).scanTokens()).parse();
+        long treeBytes = usedHeap() - before;
+        before = usedHeap();
+        FlatAST flat = new Parser(new ColumnarLexer(source).scanTokens()).parseFlat();
+        long flatBytes = usedHeap() - before;
+        System.out.printf("object tree  %8.1f KB per 1k lines%n", treeBytes / 1024.0 / (LINES / 1000.0));
+        System.out.printf("FlatAST      %8.1f KB per 1k lines  (%d nodes, %d ints, %d constants)%n",
+                flatBytes / 1024.0 / (LINES / 1000.0), flat.nodeCount(), flat.arenaSize(), flat.constantCount());
+
+        measure("walk object tree", () -> {
+            for (ASTNode.Stmt stmt : tree) sink += walk(stmt);
+        });
+        measure("walk FlatAST    ", () -> {
+            int statements = flat.statements();
+            for (int i = 0; i < flat.count(statements); i++) sink += walk(flat, flat.item(statements, i));
+        });
+        System.out.println("(checksum " + sink + " " + total + ")");
+    }
+
+    private static String generate() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            switch (i % 5) {
+                case 0: text.append("fn update").append(i).append("(dt, speed) {\n"); break;
+                case 1: text.append("    let pos = [x + speed * dt, y - ").append(i % 48).append(".5]\n"); break;
+                case 2: text.append("    if (pos[0] > ").append(i % 640).append(" and not paused) { hits = hits + 1 }\n"); break;
+                case 3: text.append("    move(enemy.pos, pos, {hp: ").append(i % 100).append(", name: \"orc\"})\n"); break;
+                default: text.append("}\n");
+            }
+        }
+        return text.toString();
+    }
+
+    // Covers the node kinds the generated script produces
+    private static int walk(ASTNode.Stmt stmt) {
+        if (stmt instanceof ASTNode.Function) {
+            int count = 1;
+            for (ASTNode.Stmt s : ((ASTNode.Function) stmt).body()) count += walk(s);
+            return count;
+        } else if (stmt instanceof ASTNode.Let) {
+            return 1 + walk(((ASTNode.Let) stmt).initializer);
+        } else if (stmt instanceof ASTNode.Assignment) {
+            return 1 + walk(((ASTNode.Assignment) stmt).value);
+        } else if (stmt instanceof ASTNode.If) {
+            ASTNode.If ifStmt = (ASTNode.If) stmt;
+            int count = 1 + walk(ifStmt.condition);
+            for (ASTNode.Stmt s : ifStmt.thenBranch) count += walk(s);
+            for (ASTNode.Stmt s : ifStmt.elseBranch) count += walk(s);
+            return count;
+        } else if (stmt instanceof ASTNode.ExpressionStmt) {
+            return 1 + walk(((ASTNode.ExpressionStmt) stmt).expression);
+        }
+        return 1;
+    }
+
+    private static int walk(ASTNode.Expr expr) {
+        if (expr instanceof ASTNode.Literal) {
+            Object value = ((ASTNode.Literal) expr).value;
+            if (value instanceof Double) total += (Double) value;
+            return 1;
+        } else if (expr instanceof ASTNode.Binary) {
+            ASTNode.Binary binary = (ASTNode.Binary) expr;
+            return 1 + walk(binary.left) + walk(binary.right);
+        } else if (expr instanceof ASTNode.Unary) {
+            return 1 + walk(((ASTNode.Unary) expr).right);
+        } else if (expr instanceof ASTNode.Call) {
+            ASTNode.Call call = (ASTNode.Call) expr;
+            int count = 1 + walk(call.callee);
+            for (ASTNode.Expr e : call.arguments) count += walk(e);
+            return count;
+        } else if (expr instanceof ASTNode.Index) {
+            ASTNode.Index index = (ASTNode.Index) expr;
+            return 1 + walk(index.object) + walk(index.index);
+        } else if (expr instanceof ASTNode.Get) {
+            return 1 + walk(((ASTNode.Get) expr).object);
+        } else if (expr instanceof ASTNode.ArrayLiteral) {
+            int count = 1;
+            for (ASTNode.Expr e : ((ASTNode.ArrayLiteral) expr).elements) count += walk(e);
+            return count;
+        } else if (expr instanceof ASTNode.MapLiteral) {
+            ASTNode.MapLiteral map = (ASTNode.MapLiteral) expr;
+            int count = 1;
+            for (ASTNode.Expr e : map.keys) count += walk(e);
+            for (ASTNode.Expr e : map.values) count += walk(e);
+            return count;
+        }
+        return 1;
+    }
+
+    private static int walk(FlatAST ast, int node) {
+        switch (ast.kind(node)) {
+            case FlatAST.FUNCTION:
+                return 1 + walkList(ast, ast.operand(node, 2));
+            case FlatAST.LET:
+            case FlatAST.ASSIGN:
+                return 1 + walk(ast, ast.operand(node, 1));
+            case FlatAST.IF:
+                return 1 + walk(ast, ast.operand(node, 0)) + walkList(ast, ast.operand(node, 1))
+                        + walkList(ast, ast.operand(node, 2));
+            case FlatAST.EXPRESSION:
+                return 1 + walk(ast, ast.operand(node, 0));
+            case FlatAST.NUMBER:
+                total += ast.number(node);
+                return 1;
+            case FlatAST.BINARY:
+                return 1 + walk(ast, ast.operand(node, 2)) + walk(ast, ast.operand(node, 3));
+            case FlatAST.UNARY:
+                return 1 + walk(ast, ast.operand(node, 2));
+            case FlatAST.CALL:
+                return 1 + walk(ast, ast.operand(node, 0)) + walkList(ast, ast.operand(node, 1));
+            case FlatAST.INDEX:
+                return 1 + walk(ast, ast.operand(node, 0)) + walk(ast, ast.operand(node, 1));
+            case FlatAST.GET:
+                return 1 + walk(ast, ast.operand(node, 0));
+            case FlatAST.ARRAY:
+                return 1 + walkList(ast, ast.operand(node, 0));
+            case FlatAST.MAP:
+                return 1 + walkList(ast, ast.operand(node, 0)) + walkList(ast, ast.operand(node, 1));
+            default:
+                return 1;
+        }
+    }
+
+    private static int walkList(FlatAST ast, int list) {
+        int count = 0;
+        for (int i = 0; i < ast.count(list); i++) count += walk(ast, ast.item(list, i));
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void measure(String name, Runnable body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s  %8.2f ms (best of %d)%n", name, best / 1e6, MEASURED_ROUNDS);
+    }
+}
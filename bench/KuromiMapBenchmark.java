@@ -0,0 +1,87 @@
+// bench/KuromiMapBenchmark.java - NO PACKAGE DECLARATION
+import runtime.KuromiMap;
+import runtime.Value;
+import java.util.HashMap;
+import java.util.Random;
+
+// Lookup and insert throughput of KuromiMap against java.util.HashMap holding the same keys, the way
+// the interpreter would have to use it (boxed Double or String keys). Each case runs a few warmup rounds
+// before the measured ones so both sides are compiled.
+// Compile against the engine classes: javac -cp out -d out bench/KuromiMapBenchmark.java
+public class KuromiMapBenchmark {
+    private static final int KEYS = 100_000;
+    private static final int LOOKUPS = 5_000_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+        double[] numbers = new double[KEYS];
+        String[] strings = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            numbers[i] = random.nextInt(1_000_000_000);
+            strings[i] = "entity_" + random.nextInt(1_000_000_000);
+        }
+        int[] order = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) order[i] = random.nextInt(KEYS);
+        Value value = Value.number(1);
+
+        KuromiMap numberMap = new KuromiMap();
+        KuromiMap stringMap = new KuromiMap();
+        HashMap<Double, Value> numberHash = new HashMap<>();
+        HashMap<String, Value> stringHash = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            numberMap.put(numbers[i], value);
+            stringMap.put(strings[i], value);
+            numberHash.put(numbers[i], value);
+            stringHash.put(strings[i], value);
+        }
+
+        measure("number get  KuromiMap", () -> {
+            for (int i : order) sink += numberMap.get(numbers[i]).type.ordinal();
+        });
+        measure("number get  HashMap  ", () -> {
+            for (int i : order) sink += numberHash.get(numbers[i]).type.ordinal();
+        });
+        measure("string get  KuromiMap", () -> {
+            for (int i : order) sink += stringMap.get(strings[i]).type.ordinal();
+        });
+        measure("string get  HashMap  ", () -> {
+            for (int i : order) sink += stringHash.get(strings[i]).type.ordinal();
+        });
+        measure("number put  KuromiMap", () -> {
+            KuromiMap map = new KuromiMap();
+            for (int i = 0; i < KEYS; i++) map.put(numbers[i], value);
+            sink += map.size();
+        });
+        measure("number put  HashMap  ", () -> {
+            HashMap<Double, Value> map = new HashMap<>();
+            for (int i = 0; i < KEYS; i++) map.put(numbers[i], value);
+            sink += map.size();
+        });
+        measure("string put  KuromiMap", () -> {
+            KuromiMap map = new KuromiMap();
+            for (int i = 0; i < KEYS; i++) map.put(strings[i], value);
+            sink += map.size();
+        });
+        measure("string put  HashMap  ", () -> {
+            HashMap<String, Value> map = new HashMap<>();
+            for (int i = 0; i < KEYS; i++) map.put(strings[i], value);
+            sink += map.size();
+        });
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void measure(String name, Runnable body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s  %8.2f ms (best of %d)%n", name, best / 1e6, MEASURED_ROUNDS);
+    }
+}
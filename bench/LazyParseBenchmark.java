@@ -0,0 +1,75 @@
+// bench/LazyParseBenchmark.java - NO PACKAGE DECLARATION
+import lexer.ColumnarLexer;
+import lexer.TokenStream;
+import parser.ASTNode;
+import parser.Parser;
+import java.util.List;
+
+// Time to a runnable program for a content script with many functions of which a run calls few: eager
+// parsing against pre-parsing with lazy function bodies, plus the cost of then parsing the bodies of the
+// functions the first frame needs. Lexing is done up front and not measured.
+// Compile against the engine classes: javac -cp out -d out bench/LazyParseBenchmark.java
+public class LazyParseBenchmark {
+    private static final int FUNCTIONS = 2_000;
+    private static final int CALLED = 20;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        String source = generate();
+        TokenStream tokens = new ColumnarLexer(source).scanTokens();
+        System.out.printf("source: %d functions, %d tokens, %d bodies needed%n", FUNCTIONS, tokens.size(), CALLED);
+
+        measure("eager parse                 ", () -> sink += new Parser(tokens).parse().size());
+        measure("lazy pre-parse              ", () -> sink += parseLazy(tokens).size());
+        measure("lazy pre-parse + used bodies", () -> {
+            List<ASTNode.Stmt> program = parseLazy(tokens);
+            for (int i = 0; i < CALLED; i++) {
+                sink += ((ASTNode.Function) program.get(i * (FUNCTIONS / CALLED))).body().size();
+            }
+        });
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static List<ASTNode.Stmt> parseLazy(TokenStream tokens) {
+        Parser parser = new Parser(tokens);
+        parser.setLazyFunctionBodies(true);
+        return parser.parse();
+    }
+
+    private static String generate() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < FUNCTIONS; i++) {
+            if (i % 100 == 99) {
+                text.append("fn unused").append(i).append("() {}\n");
+                continue;
+            }
+            text.append("fn level").append(i).append("(world, dt) {\n");
+            text.append("    let origin = {x: ").append(i % 640).append(", y: ").append(i % 480).append(", hp: 10}\n");
+            text.append("    for e in world.enemies {\n");
+            text.append("        if (e.hp > 0 and distance(e, origin) < ").append(i % 90).append(") {\n");
+            text.append("            e.hp = e.hp - dt * 2\n");
+            text.append("            draw rect e.x e.y 16 16 \"red\"\n");
+            text.append("        } else {\n");
+            text.append("            move(e, [origin.x - e.x, origin.y - e.y], dt)\n");
+            text.append("        }\n");
+            text.append("    }\n");
+            text.append("    return world\n");
+            text.append("}\n");
+        }
+        return text.toString();
+    }
+
+    private static void measure(String name, Runnable body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s  %8.2f ms (best of %d)%n", name, best / 1e6, MEASURED_ROUNDS);
+    }
+}
@@ -0,0 +1,76 @@
+// bench/LexerBenchmark.java - NO PACKAGE DECLARATION
+import lexer.ColumnarLexer;
+import lexer.Lexer;
+import lexer.Token;
+import lexer.TokenStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+// Lexing a generated 50k-line level script with Lexer.scanTokens and with ColumnarLexer, reporting time
+// and bytes allocated per run. The columnar run also parses the stream the way Parser reads it (types only,
+// plus the tokens it keeps) to show how few Token objects are ever materialized.
+// Compile against the engine classes: javac -cp out -d out bench/LexerBenchmark.java
+public class LexerBenchmark {
+    private static final int LINES = 50_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        String source = generate();
+        System.out.printf("source: %d lines, %.1f MB%n", LINES, source.length() / 1e6);
+
+        measure("Lexer.scanTokens       ", () -> {
+            List<Token> tokens = new Lexer(source).scanTokens();
+            sink += tokens.size();
+        });
+        measure("ColumnarLexer          ", () -> {
+            TokenStream tokens = new ColumnarLexer(source).scanTokens();
+            sink += tokens.size();
+        });
+        measure("ColumnarLexer + names  ", () -> {
+            TokenStream tokens = new ColumnarLexer(source).scanTokens();
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.name(i) != null) sink += tokens.token(i).lexeme.length();
+            }
+        });
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static String generate() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            switch (i % 5) {
+                case 0: text.append("let tile_").append(i).append(" = [").append(i % 64).append(", ")
+                        .append(i % 48).append(", ").append(i * 0.25).append("]\n"); break;
+                case 1: text.append("spawnEntity(world, \"enemy\", ").append(i % 640).append(".5, ")
+                        .append(i % 480).append(")\n"); break;
+                case 2: text.append("if (level >= ").append(i % 10).append(" and score < ")
+                        .append(i).append(") { speed = speed * 1.05 }\n"); break;
+                case 3: text.append("// wave ").append(i / 5).append('\n'); break;
+                default: text.append("setBlocked(grid, ").append(i % 128).append(", ")
+                        .append(i % 96).append(", true)\n");
+            }
+        }
+        return text.toString();
+    }
+
+    private static void measure(String name, Runnable body) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) body.run();
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = threads.getThreadAllocatedBytes(thread) - before;
+        }
+        System.out.printf("%s  %8.2f ms (best of %d)  %7.1f MB allocated%n",
+                name, best / 1e6, MEASURED_ROUNDS, allocated / 1e6);
+    }
+}
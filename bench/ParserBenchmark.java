@@ -0,0 +1,79 @@
+// bench/ParserBenchmark.java - NO PACKAGE DECLARATION
+import lexer.ColumnarLexer;
+import lexer.TokenStream;
+import parser.Parser;
+
+// Parse throughput on a generated expression-heavy script (lexing done up front), plus the deepest
+// parenthesised and unary nesting the parser survives on the default thread stack.
+// Compile against the engine classes: javac -cp out -d out bench/ParserBenchmark.java
+public class ParserBenchmark {
+    private static final int LINES = 50_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int MAX_DEPTH = 1 << 20;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        String source = generate();
+        TokenStream tokens = new ColumnarLexer(source).scanTokens();
+        System.out.printf("source: %d lines, %d tokens%n", LINES, tokens.size());
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += new Parser(tokens).parse().size();
+            if (i >= WARMUP_ROUNDS) best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("parse  %8.2f ms (best of %d)  %6.1f M tokens/s%n",
+                best / 1e6, MEASURED_ROUNDS, tokens.size() / (best / 1e9) / 1e6);
+
+        System.out.println("deepest (...) nesting: " + depth(deepest("(", "1", ")")));
+        System.out.println("deepest unary nesting: " + depth(deepest("-", "1", "")));
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static String generate() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            switch (i % 4) {
+                case 0: text.append("let a").append(i % 100).append(" = (x + ").append(i)
+                        .append(") * y - z / 2 % 3\n"); break;
+                case 1: text.append("let ok = not done and (hp > 0 or shield >= ").append(i % 50)
+                        .append(") and lives != 0\n"); break;
+                case 2: text.append("move(enemies[i].pos, [1, 2, 3][j], -speed * dt, {hp: ")
+                        .append(i).append(", name: \"orc\"})\n"); break;
+                default: text.append("total = total + values[2:n] + score(p.x, p.y) * -1\n");
+            }
+        }
+        return text.toString();
+    }
+
+    // Binary search for the largest nesting depth that parses without a StackOverflowError
+    private static int deepest(String open, String atom, String close) {
+        int low = 1;
+        int high = MAX_DEPTH;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (parses(open, atom, close, mid)) low = mid; else high = mid - 1;
+        }
+        return low;
+    }
+
+    private static String depth(int depth) {
+        return depth == MAX_DEPTH ? ">= " + depth + " (search limit)" : String.valueOf(depth);
+    }
+
+    private static boolean parses(String open, String atom, String close, int depth) {
+        StringBuilder text = new StringBuilder("let v = ");
+        for (int i = 0; i < depth; i++) text.append(open);
+        text.append(atom);
+        for (int i = 0; i < depth; i++) text.append(close);
+        try {
+            sink += new Parser(new ColumnarLexer(text.toString()).scanTokens()).parse().size();
+            return true;
+        } catch (StackOverflowError e) {
+            return false;
+        }
+    }
+}
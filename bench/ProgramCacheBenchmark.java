@@ -0,0 +1,77 @@
+// bench/ProgramCacheBenchmark.java - NO PACKAGE DECLARATION
+import lexer.ColumnarLexer;
+import parser.FlatAST;
+import parser.KuromicFormat;
+import parser.Parser;
+import parser.ProgramCache;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// What Main pays before it can run an unchanged script: lexing and parsing the source, against hashing it
+// and loading the precompiled program from the on-disk cache. Both include the SHA-256 of the source.
+// Compile against the engine classes: javac -cp out -d out bench/ProgramCacheBenchmark.java
+public class ProgramCacheBenchmark {
+    private static final int FUNCTIONS = 2_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        byte[] source = generate().getBytes(StandardCharsets.UTF_8);
+        Path directory = Files.createTempDirectory("kuromi-cache-bench");
+        ProgramCache cache = new ProgramCache(directory);
+        byte[] hash = ProgramCache.hash(source);
+        FlatAST parsed = new Parser(new ColumnarLexer(new String(source, StandardCharsets.UTF_8)).scanTokens()).parseFlat();
+        cache.store(hash, parsed);
+        System.out.printf("source: %d KB, %d nodes, %s: %d KB%n", source.length / 1024, parsed.nodeCount(),
+                KuromicFormat.EXTENSION, Files.size(cache.pathFor(hash)) / 1024);
+
+        measure("lex + parse ", () -> {
+            sink += ProgramCache.hash(source)[0];
+            sink += new Parser(new ColumnarLexer(new String(source, StandardCharsets.UTF_8)).scanTokens())
+                    .parseFlat().nodeCount();
+        });
+        measure("cache load  ", () -> {
+            try {
+                sink += cache.load(ProgramCache.hash(source)).nodeCount();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static String generate() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < FUNCTIONS; i++) {
+            text.append("fn level").append(i).append("(world, dt) {\n");
+            text.append("    let origin = {x: ").append(i % 640).append(", y: ").append(i % 480).append(", hp: 10}\n");
+            text.append("    for e in world.enemies {\n");
+            text.append("        if (e.hp > 0 and distance(e, origin) < ").append(i % 90).append(") {\n");
+            text.append("            e.hp = e.hp - dt * 2\n");
+            text.append("            draw rect e.x e.y 16 16 \"red\"\n");
+            text.append("        } else {\n");
+            text.append("            move(e, [origin.x - e.x, origin.y - e.y], dt)\n");
+            text.append("        }\n");
+            text.append("    }\n");
+            text.append("    return world\n");
+            text.append("}\n");
+        }
+        return text.toString();
+    }
+
+    private static void measure(String name, Runnable body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s  %8.2f ms (best of %d)%n", name, best / 1e6, MEASURED_ROUNDS);
+    }
+}
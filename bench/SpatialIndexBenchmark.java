@@ -0,0 +1,62 @@
+// bench/SpatialIndexBenchmark.java - NO PACKAGE DECLARATION
+import runtime.IntList;
+import runtime.QuadTree;
+import runtime.SpatialHashGrid;
+import runtime.SpatialIndex;
+import java.util.Random;
+
+// Moves every object each frame, then runs a full broadphase pass.
+// Compile against the engine classes: javac -cp out -d out bench/SpatialIndexBenchmark.java
+public class SpatialIndexBenchmark {
+    private static final int WARMUP_FRAMES = 50;
+    private static final int MEASURED_FRAMES = 100;
+
+    public static void main(String[] args) {
+        for (int n : new int[] {10_000, 100_000}) {
+            // Keep density constant: roughly 25 objects per 100x100 area
+            float world = (float) Math.sqrt(n / 25.0) * 100;
+            run("hash grid", new SpatialHashGrid(32), n, world);
+            run("quadtree ", new QuadTree(0, 0, world, world), n, world);
+        }
+    }
+
+    private static void run(String name, SpatialIndex index, int n, float world) {
+        Random random = new Random(42);
+        float[] x = new float[n];
+        float[] y = new float[n];
+        float[] vx = new float[n];
+        float[] vy = new float[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextFloat() * world;
+            y[i] = random.nextFloat() * world;
+            vx[i] = random.nextFloat() * 4 - 2;
+            vy[i] = random.nextFloat() * 4 - 2;
+            index.insert(i, x[i], y[i], 8, 8);
+        }
+
+        IntList pairs = new IntList(n * 4);
+        long moveNanos = 0;
+        long pairNanos = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + MEASURED_FRAMES; frame++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                x[i] += vx[i];
+                y[i] += vy[i];
+                if (x[i] < 0 || x[i] > world - 8) vx[i] = -vx[i];
+                if (y[i] < 0 || y[i] > world - 8) vy[i] = -vy[i];
+                index.move(i, x[i], y[i], 8, 8);
+            }
+            long t1 = System.nanoTime();
+            pairs.clear();
+            index.queryPairs(pairs);
+            long t2 = System.nanoTime();
+            if (frame >= WARMUP_FRAMES) {
+                moveNanos += t1 - t0;
+                pairNanos += t2 - t1;
+            }
+        }
+
+        System.out.printf("%s n=%,7d  move %7.3f ms/frame  pairs %7.3f ms/frame  (%d pairs)%n",
+                name, n, moveNanos / 1e6 / MEASURED_FRAMES, pairNanos / 1e6 / MEASURED_FRAMES, pairs.size() / 2);
+    }
+}
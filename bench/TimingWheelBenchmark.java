@@ -0,0 +1,91 @@
+// bench/TimingWheelBenchmark.java - NO PACKAGE DECLARATION
+import runtime.TimingWheel;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+// One million pending timers with delays up to a minute; every 16 ms frame reschedules a slice of
+// them (entities resetting cooldowns) and then expires what came due. The priority queue baseline
+// cancels lazily with a flag, since PriorityQueue.remove is linear.
+// Compile against the engine classes: javac -cp out -d out bench/TimingWheelBenchmark.java
+public class TimingWheelBenchmark {
+    private static final int TIMERS = 1_000_000;
+    private static final int MAX_DELAY = 60_000;
+    private static final int FRAME_TICKS = 16;
+    private static final int RESCHEDULES_PER_FRAME = 20_000;
+    private static final int WARMUP_FRAMES = 200;
+    private static final int MEASURED_FRAMES = 600;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 2; round++) {
+            wheel();
+            priorityQueue();
+        }
+    }
+
+    private static void wheel() {
+        Random random = new Random(7);
+        TimingWheel<Object> wheel = new TimingWheel<>(0);
+        long[] handles = new long[TIMERS];
+        int[] fired = {0};
+        TimingWheel.Expiry<Object> expiry = (handle, payload) -> fired[0]++;
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < TIMERS; i++) {
+            handles[i] = wheel.schedule(1 + random.nextInt(MAX_DELAY), null);
+        }
+        long insertNanos = System.nanoTime() - t0;
+
+        long frameNanos = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + MEASURED_FRAMES; frame++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < RESCHEDULES_PER_FRAME; r++) {
+                int i = random.nextInt(TIMERS);
+                wheel.cancel(handles[i]);
+                handles[i] = wheel.schedule(1 + random.nextInt(MAX_DELAY), null);
+            }
+            wheel.advance(wheel.currentTick() + FRAME_TICKS, expiry);
+            if (frame >= WARMUP_FRAMES) frameNanos += System.nanoTime() - start;
+        }
+        report("timing wheel  ", insertNanos, frameNanos, fired[0], wheel.size());
+    }
+
+    private static void priorityQueue() {
+        Random random = new Random(7);
+        // {deadline, sequence, cancelled}
+        PriorityQueue<long[]> queue = new PriorityQueue<>(TIMERS, (a, b) -> a[0] != b[0]
+                ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        long[][] timers = new long[TIMERS][];
+        long now = 0;
+        long sequence = 0;
+        int fired = 0;
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < TIMERS; i++) {
+            timers[i] = new long[] {now + 1 + random.nextInt(MAX_DELAY), sequence++, 0};
+            queue.add(timers[i]);
+        }
+        long insertNanos = System.nanoTime() - t0;
+
+        long frameNanos = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + MEASURED_FRAMES; frame++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < RESCHEDULES_PER_FRAME; r++) {
+                int i = random.nextInt(TIMERS);
+                timers[i][2] = 1;
+                timers[i] = new long[] {now + 1 + random.nextInt(MAX_DELAY), sequence++, 0};
+                queue.add(timers[i]);
+            }
+            now += FRAME_TICKS;
+            while (!queue.isEmpty() && queue.peek()[0] <= now) {
+                if (queue.poll()[2] == 0) fired++;
+            }
+            if (frame >= WARMUP_FRAMES) frameNanos += System.nanoTime() - start;
+        }
+        report("priority queue", insertNanos, frameNanos, fired, queue.size());
+    }
+
+    private static void report(String name, long insertNanos, long frameNanos, int fired, int pending) {
+        System.out.printf("%s  insert 1M %7.1f ms  frame %6.3f ms  (%d fired, %d still queued)%n",
+                name, insertNanos / 1e6, frameNanos / 1e6 / MEASURED_FRAMES, fired, pending);
+    }
+}
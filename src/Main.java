@@ -1,17 +1,41 @@
 // src/Main.java - NO PACKAGE DECLARATION
-import lexer.Lexer;
-import lexer.Token;
+import lexer.ColumnarLexer;
+import lexer.ErrorReporter;
+import lexer.StreamingLexer;
+import lexer.TokenStream;
 import parser.Parser;
 import parser.ASTNode;
+import parser.FlatAST;
+import parser.KuromicFormat;
+import parser.ModuleCache;
+import parser.ModuleGraph;
+import parser.ProgramCache;
 import interpreter.Interpreter;
 import runtime.Compiler;
 import runtime.JarBuilder;
+import runtime.BuildDaemon;
+import runtime.DaemonClient;
+import runtime.ProjectBuilder;
 import gui.KuromiCoreGUI;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Main {
+    // Scripts at least this large are lexed from a memory-mapped file instead of a String
+    private static final long STREAMING_THRESHOLD = 8L * 1024 * 1024;
+
+    // Parsed imported modules, kept for every script this JVM processes; --no-cache uses the in-memory one
+    private static ModuleCache moduleCache;
+    private static ModuleCache memoryModuleCache;
+
+    // A daemon with nothing to do exits after this long unless --idle says otherwise
+    private static final long DAEMON_IDLE_SECONDS = 600;
+
     public static void main(String[] args) {
         // Launch GUI if no arguments provided
         if (args.length == 0) {
@@ -22,24 +46,81 @@ public class Main {
             return;
         }
 
+        // --daemon and --client take their own options; everything else is a command for execute
+        Path socket = BuildDaemon.defaultSocket();
+        long idleSeconds = DAEMON_IDLE_SECONDS;
+        boolean daemon = false;
+        boolean client = false;
+        List<String> command = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--daemon")) {
+                daemon = true;
+            } else if (args[i].equals("--client")) {
+                client = true;
+            } else if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if (args[i].equals("--idle") && i + 1 < args.length) {
+                idleSeconds = Long.parseLong(args[++i]);
+            } else {
+                command.add(args[i]);
+            }
+        }
+
+        if (daemon) {
+            try {
+                new BuildDaemon(socket, idleSeconds, Main::execute).serve();
+            } catch (Exception e) {
+                System.err.println("❌ Error: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        String[] commandArgs = client ? command.toArray(new String[0]) : args;
+        int status = -1;
+        if (client) {
+            try {
+                status = DaemonClient.send(socket, commandArgs);
+            } catch (IOException e) {
+                System.err.println("❌ Error: lost connection to daemon: " + e.getMessage());
+                System.exit(1);
+            }
+            if (status < 0) {
+                System.err.println("⚠️  No daemon listening on " + socket + ", running here instead");
+            }
+        }
+        if (status < 0) status = execute(commandArgs, Paths.get(""));
+        if (status != 0) System.exit(status);
+    }
+
+    // Runs one command line, with relative paths taken from workingDirectory; returns the exit status.
+    // The daemon calls this for each client concurrently, so whatever calls share must be thread-safe.
+    public static int execute(String[] args, Path workingDirectory) {
+        if (args.length == 0) {
+            System.err.println("❌ Error: No command given");
+            return 1;
+        }
+
         // CLI mode - handle special flags
         if (args[0].equals("--help") || args[0].equals("-h")) {
             printHelp();
-            return;
+            return 0;
         }
 
         if (args[0].equals("--version") || args[0].equals("-v")) {
             System.out.println("╔════════════════════════════════════════╗");
-            System.out.println("║    KuromiCore Engine v1.0.0            ║");
+            System.out.println(String.format("║    KuromiCore Engine v%-17s║", KuromicFormat.ENGINE_VERSION));
             System.out.println("║  Easy Game & Web Development           ║");
             System.out.println("╚════════════════════════════════════════╝");
-            return;
+            return 0;
         }
 
         // Parse command line arguments
         String mode = null;
         String filepath = null;
-        String outputName = "game";
+        String outputName = null;
+        String buildDir = null;
+        boolean useCache = true;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("--web") || args[i].equals("-w")) {
@@ -48,12 +129,28 @@ public class Main {
                 mode = "jar";
             } else if (args[i].equals("--run") || args[i].equals("-r")) {
                 mode = "run";
+            } else if (args[i].equals("--build") || args[i].equals("-b")) {
+                if (i + 1 < args.length) {
+                    buildDir = workingDirectory.resolve(args[++i]).toString();
+                }
+            } else if (args[i].equals("--no-cache")) {
+                useCache = false;
             } else if (args[i].equals("--output") || args[i].equals("-o")) {
                 if (i + 1 < args.length) {
-                    outputName = args[++i];
+                    outputName = workingDirectory.resolve(args[++i]).toString();
                 }
             } else if (args[i].endsWith(".kuromi")) {
-                filepath = args[i];
+                filepath = workingDirectory.resolve(args[i]).toString();
+            }
+        }
+
+        if (buildDir != null) {
+            try {
+                return buildProject(buildDir, outputName, useCache) ? 0 : 1;
+            } catch (Exception e) {
+                System.err.println("❌ Error: " + e.getMessage());
+                e.printStackTrace();
+                return 1;
             }
         }
 
@@ -62,58 +159,135 @@ public class Main {
             System.err.println("❌ Error: No .kuromi file specified");
             System.err.println("Usage: java -jar KuromiCore.jar [OPTIONS] <file.kuromi>");
             System.err.println("Run with --help for more information");
-            System.exit(1);
+            return 1;
         }
 
         // Default mode is run
         if (mode == null) {
             mode = "run";
         }
+        if (outputName == null) {
+            outputName = workingDirectory.resolve("game").toString();
+        }
 
         // Process the script
         try {
-            processKuromiScript(filepath, mode, outputName);
+            processKuromiScript(filepath, mode, outputName, useCache);
+            return 0;
         } catch (Exception e) {
             System.err.println("❌ Error: " + e.getMessage());
             e.printStackTrace();
-            System.exit(1);
+            return 1;
         }
     }
 
     public static void processKuromiScript(String filepath, String mode, String outputName) throws Exception {
+        processKuromiScript(filepath, mode, outputName, true);
+    }
+
+    public static void processKuromiScript(String filepath, String mode, String outputName, boolean useCache)
+            throws Exception {
         // Read source file
         System.out.println("📖 Reading " + filepath + "...");
         if (!Files.exists(Paths.get(filepath))) {
             throw new Exception("File not found: " + filepath);
         }
 
-        String source = new String(Files.readAllBytes(Paths.get(filepath)));
+        Path path = Paths.get(filepath);
+        String source = null;
+        List<ASTNode.Stmt> statements = null;
+        FlatAST program = null;
+        boolean streaming = !mode.equals("jar") && Files.size(path) >= STREAMING_THRESHOLD;
+        byte[] bytes = streaming ? null : Files.readAllBytes(path);
+        if (bytes != null) source = new String(bytes);
 
-        // Tokenize
-        System.out.println("🔤 Tokenizing...");
-        Lexer lexer = new Lexer(source);
-        List<Token> tokens = lexer.scanTokens();
+        // An unchanged script is loaded precompiled, skipping the lexer and parser entirely
+        ProgramCache cache = useCache ? ProgramCache.standard() : null;
+        byte[] hash = null;
+        if (cache != null) {
+            hash = streaming ? ProgramCache.hash(path) : ProgramCache.hash(bytes);
+            try {
+                program = cache.load(hash);
+            } catch (IOException e) {
+                // An unreadable entry is just a miss
+            }
+        }
+
+        // The cache and the web and jar builds use the flat encoding. A run that missed the cache parses to the
+        // object tree instead, where lazy function bodies let it skip parsing functions it never calls.
+        boolean loaded = program != null;
+        boolean flat = loaded || !mode.equals("run");
+        AtomicInteger errorCount = new AtomicInteger();
+        ErrorReporter errors = (line, message) -> {
+            errorCount.incrementAndGet();
+            ErrorReporter.STDERR.report(line, message);
+        };
 
-        if (tokens.isEmpty()) {
-            throw new Exception("No tokens generated - file may be empty");
+        if (program != null) {
+            System.out.println("⚡ Loaded precompiled program from cache");
+        } else if (streaming) {
+            // Large generated scripts are lexed straight from the mapped file as the parser pulls tokens,
+            // so the source is never copied onto the heap. The jar build embeds the source text instead.
+            System.out.println("🔤 Streaming tokens...");
+            System.out.println("🌳 Parsing...");
+            try (StreamingLexer lexer = StreamingLexer.open(path, errors)) {
+                Parser parser = new Parser(lexer, errors);
+                if (flat) program = parser.parseFlat(); else statements = parser.parse();
+            }
+        } else {
+            // Tokenize
+            System.out.println("🔤 Tokenizing...");
+            ColumnarLexer lexer = new ColumnarLexer(source, 0, 1, errors);
+            TokenStream tokens = lexer.scanTokens();
+
+            if (tokens.size() == 0) {
+                throw new Exception("No tokens generated - file may be empty");
+            }
+
+            // Parse
+            System.out.println("🌳 Parsing...");
+            Parser parser = new Parser(tokens, errors);
+            // A run only pays for parsing the functions it calls; builds check the whole script up front
+            parser.setLazyFunctionBodies(!flat);
+            if (flat) program = parser.parseFlat(); else statements = parser.parse();
         }
 
-        // Parse
-        System.out.println("🌳 Parsing...");
-        Parser parser = new Parser(tokens);
-        List<ASTNode.Stmt> statements = parser.parse();
+        // Only a clean parse is cached, so a script with syntax errors reports them again on every run. Every
+        // miss is stored, replacing an entry that was corrupt or written by another engine version.
+        Thread cacheWriter = null;
+        if (cache != null && !loaded && errorCount.get() == 0) {
+            if (flat) {
+                if (!program.isEmpty()) storeProgram(cache, hash, program);
+            } else if (!statements.isEmpty()) {
+                // Encoding parses every lazy body, so a run does it beside the script instead of ahead of it
+                List<ASTNode.Stmt> parsed = statements;
+                byte[] key = hash;
+                cacheWriter = new Thread(() -> {
+                    FlatAST encoded = FlatAST.encode(parsed);
+                    if (errorCount.get() == 0) storeProgram(cache, key, encoded);
+                }, "kuromi-cache-writer");
+                cacheWriter.start();
+            }
+        }
 
-        if (statements.isEmpty()) {
+        if (flat ? program.isEmpty() : statements.isEmpty()) {
             throw new Exception("No statements parsed - check syntax");
         }
 
+        List<String> imports = flat ? ModuleGraph.imports(program) : ModuleGraph.imports(statements);
+        ModuleGraph modules = null;
+        if (!imports.isEmpty()) {
+            modules = ModuleGraph.load(path, imports, moduleCache(useCache));
+            System.out.println("📚 Loaded " + modules.modules().size() + " modules");
+        }
+
         // Execute based on mode
         switch (mode) {
             case "web":
                 System.out.println("🌐 Compiling to HTML...");
                 Compiler compiler = new Compiler();
                 String htmlPath = outputName.endsWith(".html") ? outputName : outputName + ".html";
-                compiler.compile(statements, htmlPath);
+                compiler.compile(program, modules, htmlPath);
                 System.out.println("✅ Done! Open " + htmlPath + " in your browser.");
                 System.out.println("💡 Tip: Run a local server for image loading:");
                 System.out.println("   python -m http.server");
@@ -123,7 +297,8 @@ public class Main {
                 System.out.println("📦 Building JAR file...");
                 JarBuilder jarBuilder = new JarBuilder();
                 String jarPath = outputName.endsWith(".jar") ? outputName : outputName + ".jar";
-                jarBuilder.buildJar(statements, source, jarPath);
+                if (source == null) source = new String(Files.readAllBytes(path));
+                jarBuilder.buildJar(program, modules, source, jarPath);
                 System.out.println("✅ Done! Run with: java -jar " + jarPath);
                 break;
 
@@ -136,7 +311,12 @@ public class Main {
                 System.out.println();
 
                 Interpreter interpreter = new Interpreter();
-                interpreter.interpret(statements);
+                if (modules != null) interpreter.setModules(modules);
+                try {
+                    if (flat) interpreter.interpret(program); else interpreter.interpret(statements);
+                } finally {
+                    if (cacheWriter != null) cacheWriter.join();
+                }
 
                 System.out.println();
                 System.out.println("╔════════════════════════════════════════╗");
@@ -146,6 +326,34 @@ public class Main {
         }
     }
 
+    private static void storeProgram(ProgramCache cache, byte[] hash, FlatAST program) {
+        try {
+            cache.store(hash, program);
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not write parse cache: " + e.getMessage());
+        }
+    }
+
+    // Builds every entry script under directory to HTML, by default into directory/build
+    public static boolean buildProject(String directory, String outputDir, boolean useCache) throws Exception {
+        Path root = Paths.get(directory);
+        if (!Files.isDirectory(root)) {
+            throw new Exception("Not a directory: " + directory);
+        }
+        Path output = outputDir != null ? Paths.get(outputDir) : root.resolve("build");
+        System.out.println("🏗️  Building " + directory + " into " + output + "...");
+        return new ProjectBuilder(moduleCache(useCache)).build(root, output);
+    }
+
+    private static synchronized ModuleCache moduleCache(boolean useCache) {
+        if (!useCache) {
+            if (memoryModuleCache == null) memoryModuleCache = new ModuleCache(null);
+            return memoryModuleCache;
+        }
+        if (moduleCache == null) moduleCache = new ModuleCache(ProgramCache.standard());
+        return moduleCache;
+    }
+
     private static void printHelp() {
         System.out.println("╔══════════════════════════════════════════════════════════════╗");
         System.out.println("║        KuromiCore - Easy Game & Web Development              ║");
@@ -159,7 +367,13 @@ public class Main {
         System.out.println("  -r, --run          Run script directly (default)");
         System.out.println("  -w, --web          Compile to HTML website");
         System.out.println("  -j, --jar          Build standalone JAR file");
-        System.out.println("  -o, --output NAME  Specify output filename");
+        System.out.println("  -b, --build DIR    Build every script in DIR to HTML, only what changed");
+        System.out.println("  -o, --output NAME  Specify output filename (build: output directory)");
+        System.out.println("  --no-cache         Always re-parse instead of using ~/.kuromi/cache");
+        System.out.println("  --daemon           Keep a warm engine running for --client commands");
+        System.out.println("  --client           Send the command to the daemon (runs here if none)");
+        System.out.println("  --socket PATH      Daemon socket (default ~/.kuromi/daemon.sock)");
+        System.out.println("  --idle SECONDS     Stop the daemon after this long unused (default 600)");
         System.out.println("  -h, --help         Show this help");
         System.out.println("  -v, --version      Show version info");
         System.out.println();
@@ -168,6 +382,9 @@ public class Main {
         System.out.println("  java -jar KuromiCore.jar game.kuromi");
         System.out.println("  java -jar KuromiCore.jar --web game.kuromi");
         System.out.println("  java -jar KuromiCore.jar --jar game.kuromi");
+        System.out.println("  java -jar KuromiCore.jar --build levels/");
+        System.out.println("  java -jar KuromiCore.jar --daemon &");
+        System.out.println("  java -jar KuromiCore.jar --client --web game.kuromi");
         System.out.println();
         System.out.println("Learn more: README.md");
     }
@@ -1,8 +1,10 @@
 // src/gui/KuromiCoreGUI.java
 package gui;
 
+import parser.IncrementalDocument;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
@@ -15,6 +17,8 @@ public class KuromiCoreGUI extends JFrame {
     private JLabel statusLabel;
     private File currentFile;
     private boolean isModified = false;
+    // Tokens and AST of the editor text, updated per keystroke for live analysis
+    private final IncrementalDocument analysis = new IncrementalDocument();
 
     public KuromiCoreGUI() {
         initializeUI();
@@ -147,8 +151,18 @@ public class KuromiCoreGUI extends JFrame {
         codeEditor.setLineWrap(false);
         codeEditor.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             public void changedUpdate(javax.swing.event.DocumentEvent e) { setModified(true); }
-            public void removeUpdate(javax.swing.event.DocumentEvent e) { setModified(true); }
-            public void insertUpdate(javax.swing.event.DocumentEvent e) { setModified(true); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                analysis.remove(e.getOffset(), e.getLength());
+                setModified(true);
+            }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                try {
+                    analysis.insert(e.getOffset(), e.getDocument().getText(e.getOffset(), e.getLength()));
+                } catch (BadLocationException ex) {
+                    analysis.setText(codeEditor.getText());
+                }
+                setModified(true);
+            }
         });
 
         JScrollPane scrollPane = new JScrollPane(codeEditor);
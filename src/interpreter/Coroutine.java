@@ -0,0 +1,72 @@
+// src/interpreter/Coroutine.java
+package interpreter;
+
+import lexer.Token;
+import parser.ASTNode;
+import runtime.Value;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+// One script thread of control. Its position is kept as an explicit stack of frames rather than on
+// the Java stack, so it can stop after any statement and be resumed later by the Scheduler.
+class Coroutine {
+    enum State { READY, RUNNING, SUSPENDED, DONE }
+
+    final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    Environment environment;
+    State state = State.READY;
+
+    Coroutine(Environment environment) {
+        this.environment = environment;
+    }
+
+    abstract static class Frame {
+    }
+
+    static final class BlockFrame extends Frame {
+        final List<ASTNode.Stmt> statements;
+        int next = 0;
+
+        BlockFrame(List<ASTNode.Stmt> statements) {
+            this.statements = statements;
+        }
+    }
+
+    // The body frame is reused for every iteration
+    static final class WhileFrame extends Frame {
+        final ASTNode.While loop;
+        final BlockFrame body;
+
+        WhileFrame(ASTNode.While loop) {
+            this.loop = loop;
+            this.body = new BlockFrame(loop.body);
+        }
+    }
+
+    static final class ForFrame extends Frame {
+        final ASTNode.For loop;
+        final Iterator<Value> elements;
+        final BlockFrame body;
+
+        ForFrame(ASTNode.For loop, Iterator<Value> elements) {
+            this.loop = loop;
+            this.elements = elements;
+            this.body = new BlockFrame(loop.body);
+        }
+    }
+
+    // Function boundary; the result goes to target (or nowhere) in the caller's environment.
+    // A null caller marks the entry call of a spawned coroutine.
+    static final class CallFrame extends Frame {
+        final Environment caller;
+        final Token target;
+        final boolean define;
+
+        CallFrame(Environment caller, Token target, boolean define) {
+            this.caller = caller;
+            this.target = target;
+            this.define = define;
+        }
+    }
+}
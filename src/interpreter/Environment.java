@@ -8,6 +8,8 @@ import java.util.Map;
 public class Environment {
     private final Map<String, Value> values = new HashMap<>();
     private final Environment enclosing;
+    // Set once a timer holds on to this environment, so its bindings outlive the call that made them
+    private boolean captured;
 
     public Environment() {
         this.enclosing = null;
@@ -17,13 +19,15 @@ public class Environment {
         this.enclosing = enclosing;
     }
 
+    // A binding that is overwritten can't be reached any more, so it releases what it shared
     public void define(String name, Value value) {
-        values.put(name, value);
+        Value previous = values.put(name, value);
+        if (previous != null && previous != value) previous.release();
     }
 
     public void set(String name, Value value) {
         if (values.containsKey(name)) {
-            values.put(name, value);
+            define(name, value);
             return;
         }
         if (enclosing != null) {
@@ -33,6 +37,31 @@ public class Environment {
         throw new RuntimeException("Undefined variable '" + name + "'.");
     }
 
+    void capture() {
+        captured = true;
+    }
+
+    // Called when the call this environment belongs to returns: its bindings go away with it, except
+    // result, which the caller still has to store, and everything in an environment a timer holds
+    void release(Value result) {
+        if (captured) return;
+        for (Value value : values.values()) {
+            if (value != result && value.data != result.data) value.release();
+        }
+    }
+
+    // This environment's own binding, not looking outward; null when there is none
+    public Value getLocal(String name) {
+        return values.get(name);
+    }
+
+    // The outermost environment: the globals of the script or module this one belongs to
+    public Environment global() {
+        Environment environment = this;
+        while (environment.enclosing != null) environment = environment.enclosing;
+        return environment;
+    }
+
     public Value get(String name) {
         if (values.containsKey(name)) {
             return values.get(name);
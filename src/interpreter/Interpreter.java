@@ -2,13 +2,26 @@
 package interpreter;
 
 import parser.ASTNode;
+import parser.FlatAST;
+import parser.ModuleGraph;
 import lexer.Token;
 import lexer.TokenType;
+import runtime.AudioMixer;
+import runtime.BuiltInFunctions;
+import runtime.InputState;
+import runtime.KuromiArray;
+import runtime.KuromiMap;
+import runtime.ParticleSystem;
+import runtime.Range;
+import runtime.Record;
+import runtime.RecordType;
+import runtime.SpriteCache;
+import runtime.Tilemap;
 import runtime.Value;
-import java.util.ArrayList;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.nio.file.Path;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 
@@ -16,42 +29,267 @@ public class Interpreter {
     private Environment globals = new Environment();
     private Environment environment = globals;
     private GameWindow gameWindow;
+    private final InputState input = new InputState();
+    private AudioMixer audio;
     private Value returnValue;
     private boolean isReturning = false;
+    // Set by evaluateNumber when the expression didn't come out a number; the caller takes it right away
+    private Value nonNumber;
+    private final Scheduler scheduler = new Scheduler();
+    private final BuiltInFunctions builtins;
+    // What the script imports, and the module whose top level is running, which its imports resolve against
+    private ModuleGraph modules;
+    private Path currentModule;
+    private final java.util.Map<Path, Module> instances = new java.util.HashMap<>();
+    // The globals a function declared inside a module resolves names in; every other function uses the script's
+    private final java.util.Map<ASTNode.Function, Environment> homes = new java.util.IdentityHashMap<>();
 
+    public Interpreter() {
+        builtins = new BuiltInFunctions(this);
+        defineBuiltins(globals);
+    }
+
+    private void defineBuiltins(Environment environment) {
+        for (java.util.Map.Entry<String, BuiltInFunctions.Function> entry : builtins.getFunctions().entrySet()) {
+            environment.define(entry.getKey(), Value.nativeFunction(entry.getValue()));
+        }
+    }
+
+    // Needed before interpreting a script that imports modules
+    public void setModules(ModuleGraph modules) {
+        this.modules = modules;
+        this.currentModule = modules.root();
+    }
+
+    public InputState getInput() {
+        return input;
+    }
+
+    // The program runs as the first coroutine; once it and everything it spawned finish, interpret returns
+    // and its sound stops. Don't close the game window here - let it close independently so the IDE keeps running
     public void interpret(java.util.List<ASTNode.Stmt> statements) {
+        Coroutine main = new Coroutine(globals);
+        main.frames.push(new Coroutine.BlockFrame(statements));
+        scheduler.spawn(main);
         try {
-            for (ASTNode.Stmt stmt : statements) {
-                execute(stmt);
-                if (isReturning) break;
+            scheduler.run(this);
+        } finally {
+            if (audio != null) {
+                audio.shutdown();
+                audio = null;
+            }
+        }
+    }
+
+    // Nodes carry inline caches and serve as function identities, so a flat program runs as its decoded tree
+    public void interpret(FlatAST program) {
+        interpret(program.decode());
+    }
+
+    boolean isWindowClosed() {
+        return gameWindow != null && gameWindow.isClosing();
+    }
+
+    // Runs a coroutine until it suspends or finishes. A runtime error ends only that coroutine.
+    void resume(Coroutine coroutine) {
+        environment = coroutine.environment;
+        coroutine.state = Coroutine.State.RUNNING;
+        try {
+            while (coroutine.state == Coroutine.State.RUNNING) {
+                Coroutine.Frame frame = coroutine.frames.peek();
+                if (frame == null) {
+                    coroutine.state = Coroutine.State.DONE;
+                } else if (frame instanceof Coroutine.BlockFrame) {
+                    Coroutine.BlockFrame block = (Coroutine.BlockFrame) frame;
+                    if (block.next == block.statements.size()) {
+                        coroutine.frames.pop();
+                    } else {
+                        step(coroutine, block.statements.get(block.next++));
+                    }
+                } else if (frame instanceof Coroutine.WhileFrame) {
+                    Coroutine.WhileFrame loop = (Coroutine.WhileFrame) frame;
+                    if (evaluate(loop.loop.condition).asBoolean()) {
+                        loop.body.next = 0;
+                        coroutine.frames.push(loop.body);
+                    } else {
+                        coroutine.frames.pop();
+                    }
+                } else if (frame instanceof Coroutine.ForFrame) {
+                    Coroutine.ForFrame loop = (Coroutine.ForFrame) frame;
+                    if (loop.elements.hasNext()) {
+                        environment.define(loop.loop.variable.lexeme, loop.elements.next().share());
+                        loop.body.next = 0;
+                        coroutine.frames.push(loop.body);
+                    } else {
+                        coroutine.frames.pop();
+                    }
+                } else {
+                    // Fell off the end of a function body
+                    finishCall(coroutine, Value.nil());
+                }
             }
         } catch (Exception e) {
+            coroutine.state = Coroutine.State.DONE;
             System.err.println("Runtime Error: " + e.getMessage());
             e.printStackTrace();
         } finally {
-            // Don't close the game window here - let it close independently
-            // This allows the IDE to continue running
+            coroutine.environment = environment;
+            isReturning = false;
+        }
+    }
+
+    // Statements that contain other statements, or call script functions at statement level, become
+    // frames so a wait anywhere inside them can suspend; everything else runs directly
+    private void step(Coroutine coroutine, ASTNode.Stmt stmt) {
+        if (stmt instanceof ASTNode.Wait) {
+            ASTNode.Wait wait = (ASTNode.Wait) stmt;
+            if (wait.millis == null) {
+                scheduler.waitFrame(coroutine);
+            } else {
+                scheduler.sleep(coroutine, evaluate(wait.millis).asNumber());
+            }
+        } else if (stmt instanceof ASTNode.Yield) {
+            scheduler.waitFrame(coroutine);
+        } else if (stmt instanceof ASTNode.Return) {
+            ASTNode.Return ret = (ASTNode.Return) stmt;
+            finishCall(coroutine, ret.value != null ? evaluate(ret.value) : Value.nil());
+        } else if (stmt instanceof ASTNode.GameStart) {
+            ASTNode.GameStart game = (ASTNode.GameStart) stmt;
+            gameWindow = new GameWindow(game.width, game.height, input);
+            coroutine.frames.push(new Coroutine.BlockFrame(game.body));
+        } else if (stmt instanceof ASTNode.If) {
+            ASTNode.If ifStmt = (ASTNode.If) stmt;
+            boolean condition = evaluate(ifStmt.condition).asBoolean();
+            coroutine.frames.push(new Coroutine.BlockFrame(condition ? ifStmt.thenBranch : ifStmt.elseBranch));
+        } else if (stmt instanceof ASTNode.While) {
+            coroutine.frames.push(new Coroutine.WhileFrame((ASTNode.While) stmt));
+        } else if (stmt instanceof ASTNode.For) {
+            ASTNode.For forStmt = (ASTNode.For) stmt;
+            coroutine.frames.push(new Coroutine.ForFrame(forStmt, iterate(evaluate(forStmt.iterable))));
+        } else if (stmt instanceof ASTNode.Block) {
+            coroutine.frames.push(new Coroutine.BlockFrame(((ASTNode.Block) stmt).statements));
+        } else if (stmt instanceof ASTNode.ExpressionStmt && ((ASTNode.ExpressionStmt) stmt).expression instanceof ASTNode.Call) {
+            stepCall(coroutine, (ASTNode.Call) ((ASTNode.ExpressionStmt) stmt).expression, null, false);
+        } else if (stmt instanceof ASTNode.Let && ((ASTNode.Let) stmt).initializer instanceof ASTNode.Call) {
+            ASTNode.Let let = (ASTNode.Let) stmt;
+            stepCall(coroutine, (ASTNode.Call) let.initializer, let.name, true);
+        } else if (stmt instanceof ASTNode.Assignment && ((ASTNode.Assignment) stmt).value instanceof ASTNode.Call) {
+            ASTNode.Assignment assign = (ASTNode.Assignment) stmt;
+            stepCall(coroutine, (ASTNode.Call) assign.value, assign.name, false);
+        } else {
+            execute(stmt);
+        }
+    }
+
+    private void stepCall(Coroutine coroutine, ASTNode.Call call, Token target, boolean define) {
+        Value callee = evaluate(call.callee);
+        if (callee.type != Value.Type.FUNCTION) {
+            Value result = invoke(callee, call);
+            if (target != null) store(target, result, define);
+            return;
+        }
+        Environment funcEnv = bindArguments((ASTNode.Function) callee.data, call);
+        coroutine.frames.push(new Coroutine.CallFrame(environment, target, define));
+        coroutine.frames.push(new Coroutine.BlockFrame(((ASTNode.Function) callee.data).body()));
+        environment = funcEnv;
+    }
+
+    // Unwinds to the innermost call and hands its caller the result
+    private void finishCall(Coroutine coroutine, Value result) {
+        while (!coroutine.frames.isEmpty()) {
+            Coroutine.Frame frame = coroutine.frames.pop();
+            if (!(frame instanceof Coroutine.CallFrame)) continue;
+            Coroutine.CallFrame call = (Coroutine.CallFrame) frame;
+            environment.release(result);
+            if (call.caller == null) break;
+            environment = call.caller;
+            if (call.target != null) store(call.target, result, call.define);
+            return;
+        }
+        // Returned from the coroutine's entry call, or from the top level of the program
+        coroutine.frames.clear();
+        coroutine.state = Coroutine.State.DONE;
+    }
+
+    private void store(Token target, Value value, boolean define) {
+        value = value.share();
+        if (define) {
+            environment.define(target.lexeme, value);
+        } else {
+            environment.set(target.lexeme, value);
         }
     }
 
+    private void spawn(ASTNode.Call call) {
+        Value callee = evaluate(call.callee);
+        if (callee.type != Value.Type.FUNCTION) {
+            invoke(callee, call);
+            return;
+        }
+        ASTNode.Function function = (ASTNode.Function) callee.data;
+        Coroutine coroutine = new Coroutine(bindArguments(function, call));
+        coroutine.frames.push(new Coroutine.CallFrame(null, null, false));
+        coroutine.frames.push(new Coroutine.BlockFrame(function.body()));
+        scheduler.spawn(coroutine);
+    }
+
     private void execute(ASTNode.Stmt stmt) {
         if (isReturning) return;
 
         if (stmt instanceof ASTNode.GameStart) {
             ASTNode.GameStart game = (ASTNode.GameStart) stmt;
-            gameWindow = new GameWindow(game.width, game.height);
+            gameWindow = new GameWindow(game.width, game.height, input);
             for (ASTNode.Stmt s : game.body) {
                 execute(s);
                 if (isReturning) break;
             }
         } else if (stmt instanceof ASTNode.Let) {
             ASTNode.Let let = (ASTNode.Let) stmt;
-            environment.define(let.name.lexeme, evaluate(let.initializer));
+            environment.define(let.name.lexeme, evaluate(let.initializer).share());
         } else if (stmt instanceof ASTNode.Assignment) {
             ASTNode.Assignment assign = (ASTNode.Assignment) stmt;
-            environment.set(assign.name.lexeme, evaluate(assign.value));
+            environment.set(assign.name.lexeme, evaluate(assign.value).share());
+        } else if (stmt instanceof ASTNode.SetIndex) {
+            ASTNode.SetIndex set = (ASTNode.SetIndex) stmt;
+            Value target = evaluateTarget(set.object);
+            if (target.type == Value.Type.MAP) {
+                target.asMap().put(evaluate(set.index), evaluate(set.value).share());
+            } else {
+                int index = (int) evaluate(set.index).asNumber();
+                target.asArray().set(index, evaluate(set.value).share());
+            }
+        } else if (stmt instanceof ASTNode.SetField) {
+            ASTNode.SetField set = (ASTNode.SetField) stmt;
+            Value object = evaluate(set.target.object);
+            if (object.type == Value.Type.MODULE) {
+                Module module = (Module) object.data;
+                member(module, set.target.field);
+                module.environment.define(set.target.field, evaluate(set.value).share());
+                return;
+            }
+            Record record = object.asRecord();
+            int slot = fieldSlot(record.getType(), set.target);
+            if (isNumeric(set.value)) {
+                // p.x = p.x + p.vx * dt stays in doubles from the fields read to the field written
+                double number = evaluateNumber(set.value);
+                if (nonNumber == null) {
+                    record.setNumber(slot, number);
+                } else {
+                    record.set(slot, takeNonNumber().share());
+                }
+            } else {
+                record.set(slot, evaluate(set.value).share());
+            }
+        } else if (stmt instanceof ASTNode.Record) {
+            ASTNode.Record decl = (ASTNode.Record) stmt;
+            String[] fields = new String[decl.fields.size()];
+            for (int i = 0; i < fields.length; i++) fields[i] = decl.fields.get(i).lexeme;
+            RecordType type = new RecordType(decl.name.lexeme, fields);
+            environment.define(decl.name.lexeme, Value.nativeFunction(args -> Value.record(type.construct(args))));
         } else if (stmt instanceof ASTNode.Function) {
             ASTNode.Function func = (ASTNode.Function) stmt;
+            Environment home = environment.global();
+            if (home != globals) homes.put(func, home);
             environment.define(func.name.lexeme, Value.function(func));
         } else if (stmt instanceof ASTNode.Return) {
             ASTNode.Return ret = (ASTNode.Return) stmt;
@@ -82,16 +320,34 @@ public class Interpreter {
         } else if (stmt instanceof ASTNode.For) {
             ASTNode.For forStmt = (ASTNode.For) stmt;
             Value iterable = evaluate(forStmt.iterable);
-            if (iterable.type == Value.Type.ARRAY) {
-                for (Value element : iterable.asArray()) {
-                    environment.define(forStmt.variable.lexeme, element);
+            String variable = forStmt.variable.lexeme;
+            if (iterable.type == Value.Type.RANGE) {
+                // Counted loop straight over the range's bounds, no iterator
+                Range range = iterable.asRange();
+                for (int i = 0, n = range.size(); i < n && !isReturning; i++) {
+                    environment.define(variable, Value.number(range.start + i * range.step));
+                    for (ASTNode.Stmt s : forStmt.body) {
+                        execute(s);
+                        if (isReturning) break;
+                    }
+                }
+            } else {
+                java.util.Iterator<Value> elements = iterate(iterable);
+                while (elements.hasNext() && !isReturning) {
+                    environment.define(variable, elements.next().share());
                     for (ASTNode.Stmt s : forStmt.body) {
                         execute(s);
                         if (isReturning) break;
                     }
-                    if (isReturning) break;
                 }
             }
+        } else if (stmt instanceof ASTNode.Import) {
+            ASTNode.Import imp = (ASTNode.Import) stmt;
+            Path target = modules != null ? modules.resolve(currentModule, imp.path) : null;
+            if (target == null) {
+                throw new RuntimeException("Can't import " + imp.path + " here; imports only work at the top level of a script");
+            }
+            environment.define(imp.name.lexeme, Value.module(instances.computeIfAbsent(target, this::instantiate)));
         } else if (stmt instanceof ASTNode.Load) {
             ASTNode.Load load = (ASTNode.Load) stmt;
             try {
@@ -116,7 +372,7 @@ public class Interpreter {
                 gameWindow.drawText(show.text, x, y, show.alignment);
             }
         } else if (stmt instanceof ASTNode.Play) {
-            System.out.println("♪ Playing: " + ((ASTNode.Play) stmt).path);
+            playSound(((ASTNode.Play) stmt).path);
         } else if (stmt instanceof ASTNode.Print) {
             ASTNode.Print print = (ASTNode.Print) stmt;
             System.out.println(evaluate(print.expression).asString());
@@ -126,12 +382,50 @@ public class Interpreter {
                 execute(s);
                 if (isReturning) break;
             }
+        } else if (stmt instanceof ASTNode.Spawn) {
+            spawn(((ASTNode.Spawn) stmt).call);
+        } else if (stmt instanceof ASTNode.Timer) {
+            ASTNode.Timer timer = (ASTNode.Timer) stmt;
+            double delay = evaluate(timer.delay).asNumber();
+            environment.capture();
+            long handle = scheduler.schedule(delay, timer.repeat ? delay : 0, environment, timer.body);
+            if (timer.name != null) environment.define(timer.name.lexeme, Value.number(handle));
+        } else if (stmt instanceof ASTNode.Cancel) {
+            Value timer = evaluate(((ASTNode.Cancel) stmt).timer);
+            if (timer.type != Value.Type.NULL) scheduler.cancel((long) timer.asNumber());
+        } else if (stmt instanceof ASTNode.Wait || stmt instanceof ASTNode.Yield) {
+            // Only reachable through a function called from inside an expression, which runs on the Java stack
+            throw new RuntimeException("Can't wait inside a function called from an expression; call it as its own statement");
         } else if (stmt instanceof ASTNode.ExpressionStmt) {
             ASTNode.ExpressionStmt exprStmt = (ASTNode.ExpressionStmt) stmt;
             evaluate(exprStmt.expression);
         }
     }
 
+    private void playSound(String path) {
+        if (audio == null) {
+            audio = AudioMixer.create();
+        }
+        // Already-loaded clips are keyed by the script's path string, so replays allocate nothing
+        Integer clip = audio.clipId(path);
+        if (clip != null) {
+            audio.play(clip, 1f);
+            return;
+        }
+        File file = new File("assets/" + path);
+        try {
+            if (file.length() > AudioMixer.STREAM_THRESHOLD_BYTES) {
+                audio.playMusic(file);
+                System.out.println("♪ Streaming: " + path);
+            } else {
+                audio.play(audio.load(path, file), 1f);
+                System.out.println("♪ Playing: " + path);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to play: " + path);
+        }
+    }
+
     private void executeDraw(ASTNode.Draw draw) {
         java.util.List<ASTNode.Expr> args = draw.args;
         String type = draw.type;
@@ -152,8 +446,24 @@ public class Interpreter {
             int x = (int) evaluate(args.get(1)).asNumber();
             int y = (int) evaluate(args.get(2)).asNumber();
             if (img.type == Value.Type.IMAGE) {
-                gameWindow.drawImage(img.asImage(), x, y);
+                if (draw.isTransformed()) {
+                    double angle = draw.rotation != null ? evaluate(draw.rotation).asNumber() : 0;
+                    double scale = draw.scale != null ? evaluate(draw.scale).asNumber() : 1;
+                    gameWindow.drawSprite(img.asImage(), x, y, angle, scale, draw.flipX, draw.flipY, draw.tint);
+                } else {
+                    gameWindow.drawImage(img.asImage(), x, y);
+                }
+            }
+        } else if ("tilemap".equals(type) && args.size() >= 3) {
+            Value map = evaluate(args.get(0));
+            int x = (int) evaluate(args.get(1)).asNumber();
+            int y = (int) evaluate(args.get(2)).asNumber();
+            if (map.type == Value.Type.TILEMAP) {
+                gameWindow.drawTilemap(map.asTilemap(), x, y);
             }
+        } else if ("particles".equals(type) && args.size() >= 1) {
+            Value system = evaluate(args.get(0));
+            gameWindow.drawParticles(system.asObject(ParticleSystem.class, "particle system"));
         } else if ("line".equals(type) && args.size() >= 4) {
             int x1 = (int) evaluate(args.get(0)).asNumber();
             int y1 = (int) evaluate(args.get(1)).asNumber();
@@ -181,48 +491,261 @@ public class Interpreter {
         } else if (expr instanceof ASTNode.Index) {
             ASTNode.Index index = (ASTNode.Index) expr;
             Value arr = evaluate(index.object);
+            if (arr.type == Value.Type.MAP) return arr.asMap().get(evaluate(index.index));
             int idx = (int) evaluate(index.index).asNumber();
+            if (arr.type == Value.Type.RANGE) return Value.number(arr.asRange().get(idx));
             return arr.asArray().get(idx);
+        } else if (expr instanceof ASTNode.Get) {
+            ASTNode.Get get = (ASTNode.Get) expr;
+            return field(evaluate(get.object), get);
+        } else if (expr instanceof ASTNode.Slice) {
+            return evaluateSlice((ASTNode.Slice) expr);
+        } else if (expr instanceof ASTNode.MapLiteral) {
+            ASTNode.MapLiteral mapLit = (ASTNode.MapLiteral) expr;
+            KuromiMap map = new KuromiMap(mapLit.keys.size());
+            for (int i = 0; i < mapLit.keys.size(); i++) {
+                map.put(evaluate(mapLit.keys.get(i)), evaluate(mapLit.values.get(i)).share());
+            }
+            return Value.map(map);
         } else if (expr instanceof ASTNode.ArrayLiteral) {
             ASTNode.ArrayLiteral arrLit = (ASTNode.ArrayLiteral) expr;
-            java.util.List<Value> elements = new ArrayList<>();
+            KuromiArray elements = new KuromiArray(arrLit.elements.size());
             for (ASTNode.Expr e : arrLit.elements) {
-                elements.add(evaluate(e));
+                elements.add(evaluate(e).share());
             }
             return Value.array(elements);
         }
         return Value.nil();
     }
 
+    // The array or map a write like grid[y][x] = v lands in. Every enclosing level is made its binding's own
+    // on the way down, so the write can't reach a nested array that another binding shares.
+    private Value evaluateTarget(ASTNode.Expr expr) {
+        if (!(expr instanceof ASTNode.Index)) return evaluate(expr);
+        ASTNode.Index index = (ASTNode.Index) expr;
+        Value outer = evaluateTarget(index.object);
+        if (outer.type == Value.Type.MAP) return outer.asMap().getForWrite(evaluate(index.index));
+        int idx = (int) evaluate(index.index).asNumber();
+        if (outer.type == Value.Type.ARRAY && outer.data instanceof KuromiArray) {
+            return ((KuromiArray) outer.data).getForWrite(idx);
+        }
+        if (outer.type == Value.Type.RANGE) return Value.number(outer.asRange().get(idx));
+        return outer.asArray().get(idx);
+    }
+
+    private Module instantiate(Path path) {
+        Module module = new Module(path, path.getFileName().toString(), modules.program(path));
+        defineBuiltins(module.environment);
+        return module;
+    }
+
+    // A top-level name of the module, running the module's top level first if this is its first use
+    private Value member(Module module, String name) {
+        if (module.state == Module.State.NEW) initialize(module);
+        Value value = module.environment.getLocal(name);
+        if (value == null) throw new RuntimeException("Module " + module.name + " has no member '" + name + "'");
+        return value;
+    }
+
+    // Runs in the module's own globals, on the Java stack like a function called from an expression. An import
+    // cycle that reaches a module while it is still initializing sees the names defined so far.
+    private void initialize(Module module) {
+        module.state = Module.State.INITIALIZING;
+        Environment previous = environment;
+        Path previousModule = currentModule;
+        environment = module.environment;
+        currentModule = module.path;
+        try {
+            for (ASTNode.Stmt stmt : module.program.decode()) {
+                execute(stmt);
+                if (isReturning) break;
+            }
+        } finally {
+            isReturning = false;
+            environment = previous;
+            currentModule = previousModule;
+            module.state = Module.State.READY;
+        }
+    }
+
+    // Last record type seen at a field access site and the field's slot in it
+    private static final class FieldCache {
+        final RecordType type;
+        final int slot;
+
+        FieldCache(RecordType type, int slot) {
+            this.type = type;
+            this.slot = slot;
+        }
+    }
+
+    // The parse-time hint is right whenever records agree on the field's position, which makes the
+    // common case one reference comparison; otherwise the site's inline cache, then a lookup
+    private int fieldSlot(RecordType type, ASTNode.Get get) {
+        int hint = get.slotHint;
+        if (hint >= 0 && hint < type.size() && type.field(hint) == get.field) return hint;
+        Object cached = get.cache;
+        if (cached != null && ((FieldCache) cached).type == type) return ((FieldCache) cached).slot;
+        int slot = type.slot(get.field);
+        if (slot < 0) throw new RuntimeException("Record " + type.getName() + " has no field '" + get.field + "'");
+        get.cache = new FieldCache(type, slot);
+        return slot;
+    }
+
+    // Negative bounds count from the end; out-of-range bounds are clamped like in most scripting languages
+    private Value evaluateSlice(ASTNode.Slice slice) {
+        Value target = evaluate(slice.object);
+        int length;
+        if (target.type == Value.Type.STRING) {
+            length = target.asString().length();
+        } else if (target.type == Value.Type.RANGE) {
+            length = target.asRange().size();
+        } else {
+            length = target.asArray().size();
+        }
+        int start = sliceBound(slice.start, 0, length);
+        int end = Math.max(start, sliceBound(slice.end, length, length));
+
+        if (target.type == Value.Type.STRING) {
+            return Value.string(target.asString().substring(start, end));
+        } else if (target.type == Value.Type.RANGE) {
+            return Value.range(target.asRange().slice(start, end));
+        }
+        java.util.List<Value> elements = target.asArray();
+        if (elements instanceof KuromiArray) {
+            return Value.array(((KuromiArray) elements).slice(start, end));
+        }
+        // Native list views (entity columns and the like) are copied out
+        return Value.array(KuromiArray.copyOf(elements.subList(start, end)));
+    }
+
+    private int sliceBound(ASTNode.Expr bound, int fallback, int length) {
+        if (bound == null) return fallback;
+        int value = (int) evaluate(bound).asNumber();
+        if (value < 0) value += length;
+        return Math.max(0, Math.min(length, value));
+    }
+
+    private Value field(Value object, ASTNode.Get get) {
+        if (object.type == Value.Type.MODULE) return member((Module) object.data, get.field);
+        Record record = object.asRecord();
+        return record.get(fieldSlot(record.getType(), get));
+    }
+
+    private static boolean isArithmetic(TokenType op) {
+        return op == TokenType.PLUS || op == TokenType.MINUS || op == TokenType.STAR
+                || op == TokenType.SLASH || op == TokenType.PERCENT;
+    }
+
+    // Expressions evaluateNumber computes without boxing when their operands are numbers
+    private static boolean isNumeric(ASTNode.Expr expr) {
+        if (expr instanceof ASTNode.Binary) return isArithmetic(((ASTNode.Binary) expr).operator.type);
+        if (expr instanceof ASTNode.Unary) return ((ASTNode.Unary) expr).operator.type == TokenType.MINUS;
+        return expr instanceof ASTNode.Get || expr instanceof ASTNode.Literal;
+    }
+
+    // Evaluates expr as a double, reading record number fields and literals without boxing. When the
+    // value isn't a number, e.g. a string concatenation, it is left in nonNumber and the result is 0.
+    private double evaluateNumber(ASTNode.Expr expr) {
+        if (expr instanceof ASTNode.Literal) {
+            Object value = ((ASTNode.Literal) expr).value;
+            if (value instanceof Double) return (Double) value;
+        } else if (expr instanceof ASTNode.Get) {
+            ASTNode.Get get = (ASTNode.Get) expr;
+            Value object = evaluate(get.object);
+            if (object.type == Value.Type.RECORD) {
+                Record record = (Record) object.data;
+                int slot = fieldSlot(record.getType(), get);
+                if (record.holdsNumber(slot)) return record.getNumber(slot);
+            }
+            return unbox(field(object, get));
+        } else if (expr instanceof ASTNode.Binary && isArithmetic(((ASTNode.Binary) expr).operator.type)) {
+            ASTNode.Binary binary = (ASTNode.Binary) expr;
+            TokenType op = binary.operator.type;
+            double left = evaluateNumber(binary.left);
+            if (nonNumber != null) {
+                Value value = takeNonNumber();
+                nonNumber = arithmetic(op, value, evaluate(binary.right));
+                return 0;
+            }
+            double right = evaluateNumber(binary.right);
+            if (nonNumber != null) {
+                nonNumber = arithmetic(op, Value.number(left), takeNonNumber());
+                return 0;
+            }
+            return arithmetic(op, left, right);
+        } else if (expr instanceof ASTNode.Unary && ((ASTNode.Unary) expr).operator.type == TokenType.MINUS) {
+            double right = evaluateNumber(((ASTNode.Unary) expr).right);
+            if (nonNumber != null) return -takeNonNumber().asNumber();
+            return -right;
+        }
+        return unbox(evaluate(expr));
+    }
+
+    private double unbox(Value value) {
+        if (value.type == Value.Type.NUMBER) return value.asNumber();
+        nonNumber = value;
+        return 0;
+    }
+
+    private Value takeNonNumber() {
+        Value value = nonNumber;
+        nonNumber = null;
+        return value;
+    }
+
+    // An operand of a comparison, which only takes numbers
+    private double operand(ASTNode.Expr expr) {
+        double number = evaluateNumber(expr);
+        return nonNumber != null ? takeNonNumber().asNumber() : number;
+    }
+
+    private static double arithmetic(TokenType op, double left, double right) {
+        switch (op) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            case SLASH:
+                if (right == 0) throw new RuntimeException("Division by zero");
+                return left / right;
+            default:
+                return left % right;
+        }
+    }
+
+    private static Value arithmetic(TokenType op, Value left, Value right) {
+        if (op == TokenType.PLUS && (left.type == Value.Type.STRING || right.type == Value.Type.STRING)) {
+            return Value.string(left.asString() + right.asString());
+        }
+        return Value.number(arithmetic(op, left.asNumber(), right.asNumber()));
+    }
+
     private Value evaluateBinary(ASTNode.Binary binary) {
-        Value left = evaluate(binary.left);
-        Value right = evaluate(binary.right);
         TokenType op = binary.operator.type;
-
         switch (op) {
             case PLUS:
-                if (left.type == Value.Type.STRING || right.type == Value.Type.STRING) {
-                    return Value.string(left.asString() + right.asString());
-                }
-                return Value.number(left.asNumber() + right.asNumber());
             case MINUS:
-                return Value.number(left.asNumber() - right.asNumber());
             case STAR:
-                return Value.number(left.asNumber() * right.asNumber());
             case SLASH:
-                double divisor = right.asNumber();
-                if (divisor == 0) throw new RuntimeException("Division by zero");
-                return Value.number(left.asNumber() / divisor);
             case PERCENT:
-                return Value.number(left.asNumber() % right.asNumber());
+                double number = evaluateNumber(binary);
+                return nonNumber != null ? takeNonNumber() : Value.number(number);
             case LESS:
-                return Value.bool(left.asNumber() < right.asNumber());
+                return Value.bool(operand(binary.left) < operand(binary.right));
             case LESS_EQUAL:
-                return Value.bool(left.asNumber() <= right.asNumber());
+                return Value.bool(operand(binary.left) <= operand(binary.right));
             case GREATER:
-                return Value.bool(left.asNumber() > right.asNumber());
+                return Value.bool(operand(binary.left) > operand(binary.right));
             case GREATER_EQUAL:
-                return Value.bool(left.asNumber() >= right.asNumber());
+                return Value.bool(operand(binary.left) >= operand(binary.right));
+        }
+
+        Value left = evaluate(binary.left);
+        Value right = evaluate(binary.right);
+        switch (op) {
             case EQUAL_EQUAL:
                 return Value.bool(isEqual(left, right));
             case BANG_EQUAL:
@@ -252,24 +775,28 @@ public class Interpreter {
     }
 
     private Value evaluateCall(ASTNode.Call call) {
-        Value callee = evaluate(call.callee);
+        return invoke(evaluate(call.callee), call);
+    }
+
+    private Value invoke(Value callee, ASTNode.Call call) {
+        if (callee.type == Value.Type.NATIVE) {
+            Value[] args = new Value[call.arguments.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = evaluate(call.arguments.get(i));
+            }
+            return ((BuiltInFunctions.Function) callee.data).call(args);
+        }
         if (callee.type != Value.Type.FUNCTION) {
             throw new RuntimeException("Not a function");
         }
 
         ASTNode.Function function = (ASTNode.Function) callee.data;
-        Environment funcEnv = new Environment(globals);
-
-        for (int i = 0; i < function.params.size(); i++) {
-            Value arg = i < call.arguments.size() ? evaluate(call.arguments.get(i)) : Value.nil();
-            funcEnv.define(function.params.get(i).lexeme, arg);
-        }
-
+        Environment funcEnv = bindArguments(function, call);
         Environment previous = environment;
         environment = funcEnv;
 
         isReturning = false;
-        for (ASTNode.Stmt stmt : function.body) {
+        for (ASTNode.Stmt stmt : function.body()) {
             execute(stmt);
             if (isReturning) break;
         }
@@ -277,11 +804,53 @@ public class Interpreter {
         Value result = isReturning ? returnValue : Value.nil();
         returnValue = Value.nil();
         isReturning = false;
+        funcEnv.release(result);
         environment = previous;
 
         return result;
     }
 
+    // Iteration protocol shared by both for-loop paths: every iterable yields Values lazily
+    private java.util.Iterator<Value> iterate(Value iterable) {
+        switch (iterable.type) {
+            case ARRAY:
+                return iterable.asArray().iterator();
+            case RANGE:
+                return iterable.asRange().iterator();
+            case MAP:
+                return iterable.asMap().iterator();
+            case STRING:
+                String text = iterable.asString();
+                return new java.util.Iterator<Value>() {
+                    private int offset = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return offset < text.length();
+                    }
+
+                    @Override
+                    public Value next() {
+                        if (offset >= text.length()) throw new java.util.NoSuchElementException();
+                        int codePoint = text.codePointAt(offset);
+                        offset += Character.charCount(codePoint);
+                        return Value.string(new String(Character.toChars(codePoint)));
+                    }
+                };
+            default:
+                throw new RuntimeException("Can't iterate over " + iterable.type.name().toLowerCase());
+        }
+    }
+
+    private Environment bindArguments(ASTNode.Function function, ASTNode.Call call) {
+        Environment funcEnv = new Environment(homes.isEmpty() ? globals : homes.getOrDefault(function, globals));
+        for (int i = 0; i < function.params.size(); i++) {
+            Value arg = i < call.arguments.size() ? evaluate(call.arguments.get(i)).share() : Value.nil();
+            funcEnv.define(function.params.get(i).lexeme, arg);
+        }
+        return funcEnv;
+    }
+
     private boolean isEqual(Value a, Value b) {
         if (a.type != b.type) return false;
         if (a.type == Value.Type.NULL) return true;
@@ -299,17 +868,20 @@ public class Interpreter {
 
     public static class GameWindow extends JFrame {
         private final Canvas canvas;
-        private boolean isClosing = false;
+        private volatile boolean isClosing = false;
 
-        public GameWindow(int width, int height) {
+        public GameWindow(int width, int height, InputState input) {
             setTitle("KuromiScript Game");
             setSize(width, height);
             // CRITICAL FIX: Don't exit the entire application when window closes
             setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
             setResizable(false);
             canvas = new Canvas(width, height);
+            canvas.setFocusable(true);
+            input.attach(canvas);
             add(canvas);
             setVisible(true);
+            canvas.requestFocusInWindow();
 
             // Add window listener to handle closing gracefully
             addWindowListener(new java.awt.event.WindowAdapter() {
@@ -321,6 +893,10 @@ public class Interpreter {
             });
         }
 
+        public boolean isClosing() {
+            return isClosing;
+        }
+
         public void fillRect(int x, int y, int w, int h, String color) {
             canvas.fillRect(x, y, w, h, parseColor(color));
         }
@@ -333,6 +909,20 @@ public class Interpreter {
             canvas.drawImage(img, x, y);
         }
 
+        public void drawSprite(BufferedImage img, int x, int y, double angle, double scale,
+                               boolean flipX, boolean flipY, String tint) {
+            int tintRgb = tint != null ? parseColor(tint).getRGB() & 0xFFFFFF : SpriteCache.NO_TINT;
+            canvas.drawSprite(img, x, y, angle, scale, flipX, flipY, tintRgb);
+        }
+
+        public void drawTilemap(Tilemap map, int x, int y) {
+            canvas.drawTilemap(map, x, y);
+        }
+
+        public void drawParticles(ParticleSystem system) {
+            canvas.drawParticles(system);
+        }
+
         public void drawText(String text, int x, int y, String alignment) {
             canvas.drawText(text, x, y, alignment);
         }
@@ -341,7 +931,7 @@ public class Interpreter {
             canvas.drawLine(x1, y1, x2, y2, parseColor(color));
         }
 
-        private Color parseColor(String colorName) {
+        public static Color parseColor(String colorName) {
             return switch (colorName.toLowerCase()) {
                 case "red" -> Color.RED;
                 case "green" -> Color.GREEN;
@@ -360,9 +950,13 @@ public class Interpreter {
     public static class Canvas extends JPanel {
         private final BufferedImage buffer;
         private final Graphics2D g2d;
+        private final SpriteCache sprites = new SpriteCache(16L * 1024 * 1024);
+        // Direct view of the INT_RGB buffer for per-pixel fast paths
+        private final int[] pixels;
 
         public Canvas(int width, int height) {
             buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((java.awt.image.DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
             g2d = buffer.createGraphics();
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g2d.setColor(Color.BLACK);
@@ -386,6 +980,26 @@ public class Interpreter {
             repaint();
         }
 
+        // Transformed sprites are centred where the untransformed image's centre would be
+        public void drawSprite(BufferedImage img, int x, int y, double angle, double scale,
+                               boolean flipX, boolean flipY, int tint) {
+            BufferedImage sprite = sprites.get(img, angle, scale, flipX, flipY, tint);
+            int cx = x + img.getWidth() / 2;
+            int cy = y + img.getHeight() / 2;
+            g2d.drawImage(sprite, cx - sprite.getWidth() / 2, cy - sprite.getHeight() / 2, null);
+            repaint();
+        }
+
+        public void drawTilemap(Tilemap map, int x, int y) {
+            map.render(g2d, x, y, buffer.getWidth(), buffer.getHeight());
+            repaint();
+        }
+
+        public void drawParticles(ParticleSystem system) {
+            system.render(pixels, buffer.getWidth(), buffer.getHeight());
+            repaint();
+        }
+
         public void drawText(String text, int x, int y, String alignment) {
             g2d.setColor(Color.WHITE);
             g2d.setFont(new Font("Arial", Font.PLAIN, 16));
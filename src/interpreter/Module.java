@@ -0,0 +1,28 @@
+// src/interpreter/Module.java
+package interpreter;
+
+import parser.FlatAST;
+import java.nio.file.Path;
+
+// An imported script with its own global namespace. Its top level runs the first time one of its members
+// is read or written, not when it is imported, so an import that is never used costs nothing at startup.
+public final class Module {
+    enum State { NEW, INITIALIZING, READY }
+
+    final Path path;
+    final String name;
+    final FlatAST program;
+    final Environment environment = new Environment();
+    State state = State.NEW;
+
+    Module(Path path, String name, FlatAST program) {
+        this.path = path;
+        this.name = name;
+        this.program = program;
+    }
+
+    @Override
+    public String toString() {
+        return "<module " + name + ">";
+    }
+}
@@ -0,0 +1,114 @@
+// src/interpreter/Scheduler.java
+package interpreter;
+
+import parser.ASTNode;
+import runtime.TimingWheel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives every coroutine of a script on the interpreter's thread. Each pass fires due timers, runs
+// whatever is ready, then parks until the next frame boundary or the next timer, whichever comes first.
+// Sleeping coroutines and script timers share one timing wheel ticking in milliseconds.
+class Scheduler {
+    static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final long TICK_NANOS = 1_000_000;
+
+    private final ArrayDeque<Coroutine> ready = new ArrayDeque<>();
+    private final ArrayDeque<Coroutine> frameWaiters = new ArrayDeque<>();
+    private final TimingWheel<Object> timers = new TimingWheel<>(0);
+    private final long origin = System.nanoTime();
+
+    // Body of an after/every statement, run as a fresh coroutine each time it fires
+    private static final class ScriptTimer {
+        final Environment environment;
+        final List<ASTNode.Stmt> body;
+
+        ScriptTimer(Environment environment, List<ASTNode.Stmt> body) {
+            this.environment = environment;
+            this.body = body;
+        }
+    }
+
+    void spawn(Coroutine coroutine) {
+        coroutine.state = Coroutine.State.READY;
+        ready.add(coroutine);
+    }
+
+    void sleep(Coroutine coroutine, double millis) {
+        coroutine.state = Coroutine.State.SUSPENDED;
+        advanceClock();
+        timers.schedule(toTicks(millis), coroutine);
+    }
+
+    // yield and wait frame both resume on the next frame, after everything else has had its turn
+    void waitFrame(Coroutine coroutine) {
+        coroutine.state = Coroutine.State.SUSPENDED;
+        frameWaiters.add(coroutine);
+    }
+
+    // Returns a handle for cancel; a zero period fires once
+    long schedule(double delayMillis, double periodMillis, Environment environment, List<ASTNode.Stmt> body) {
+        advanceClock();
+        long period = periodMillis > 0 ? toTicks(periodMillis) : 0;
+        return timers.schedule(toTicks(delayMillis), period, new ScriptTimer(environment, body));
+    }
+
+    void cancel(long handle) {
+        timers.cancel(handle);
+    }
+
+    int size() {
+        return ready.size() + frameWaiters.size() + timers.size();
+    }
+
+    void run(Interpreter interpreter) {
+        long nextFrameAt = System.nanoTime() + FRAME_NANOS;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= nextFrameAt) {
+                ready.addAll(frameWaiters);
+                frameWaiters.clear();
+                nextFrameAt = Math.max(nextFrameAt + FRAME_NANOS, now);
+            }
+            advanceClock();
+            // Suspending always moves a coroutine off the ready queue, so this drains
+            while (!ready.isEmpty()) {
+                interpreter.resume(ready.poll());
+            }
+
+            if (frameWaiters.isEmpty() && timers.isEmpty()) return;
+            if (interpreter.isWindowClosed()) return;
+
+            long wakeAt = Long.MAX_VALUE;
+            if (!frameWaiters.isEmpty()) wakeAt = nextFrameAt;
+            long timerTick = timers.nextWakeTick();
+            if (timerTick != Long.MAX_VALUE) wakeAt = Math.min(wakeAt, origin + timerTick * TICK_NANOS);
+            for (long remaining = wakeAt - System.nanoTime(); remaining > 0; remaining = wakeAt - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+                // Interrupting the interpreter thread stops the script
+                if (Thread.currentThread().isInterrupted()) return;
+            }
+        }
+    }
+
+    // Brings the wheel up to the current millisecond so new timers are measured from now
+    private void advanceClock() {
+        timers.advance((System.nanoTime() - origin) / TICK_NANOS, this::expired);
+    }
+
+    private void expired(long handle, Object payload) {
+        if (payload instanceof Coroutine) {
+            ready.add((Coroutine) payload);
+        } else {
+            ScriptTimer timer = (ScriptTimer) payload;
+            Coroutine coroutine = new Coroutine(timer.environment);
+            coroutine.frames.push(new Coroutine.BlockFrame(timer.body));
+            ready.add(coroutine);
+        }
+    }
+
+    private static long toTicks(double millis) {
+        return (long) Math.ceil(Math.max(0, millis));
+    }
+}
@@ -0,0 +1,291 @@
+// src/lexer/ColumnarLexer.java
+package lexer;
+
+import java.util.Map;
+
+// Same language as Lexer, but writes into a TokenStream instead of allocating a Token and a substring
+// per token. Number literals are parsed straight from the source and identifiers are interned by char
+// range, so a name that appears ten thousand times is one String; keywords are preloaded in the same table.
+// The source is any CharSequence; StreamingLexer runs this scanner over a window of a Reader. length() is
+// re-read on every check, so a source may grow it as the scanner advances.
+public class ColumnarLexer {
+    // Powers of ten that are exact doubles; a literal with at most 15 digits scaled by one of these rounds
+    // exactly like Double.parseDouble, anything longer takes the slow path
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_FAST_DIGITS = 15;
+    // Characters after a token's end the scanner may read to decide where the token ends: a number peeks
+    // at the '.' and the digit after it. A token is only lexed the same again if these are unchanged.
+    public static final int LOOKAHEAD = 2;
+
+    private final CharSequence source;
+    private final TokenStream tokens;
+    private final NameTable names = new NameTable();
+    private final ErrorReporter errors;
+    private int start = 0;
+    private int current = 0;
+    private int line = 1;
+
+    public ColumnarLexer(CharSequence source) {
+        this(source, 0, 1, source.length() / 5, ErrorReporter.STDERR);
+    }
+
+    // Lexes from offset onwards, numbering lines from line; used to re-lex part of an edited document
+    public ColumnarLexer(CharSequence source, int offset, int line, ErrorReporter errors) {
+        this(source, offset, line, 64, errors);
+    }
+
+    private ColumnarLexer(CharSequence source, int offset, int line, int expectedTokens, ErrorReporter errors) {
+        this.source = source;
+        this.tokens = new TokenStream(source, expectedTokens);
+        this.errors = errors;
+        this.current = offset;
+        this.line = line;
+        for (Map.Entry<String, TokenType> keyword : Lexer.keywords().entrySet()) {
+            names.intern(keyword.getKey(), keyword.getValue());
+        }
+    }
+
+    public TokenStream scanTokens() {
+        while (scanNext()) {
+        }
+        return tokens;
+    }
+
+    // Scans until one more token is in the stream; false once that token is EOF
+    public boolean scanNext() {
+        int count = tokens.size();
+        while (current < source.length()) {
+            start = current;
+            scanToken();
+            if (tokens.size() > count) return true;
+        }
+        tokens.add(TokenType.EOF, current, 0, line, 0, null);
+        return false;
+    }
+
+    public TokenStream tokens() {
+        return tokens;
+    }
+
+    private void scanToken() {
+        char c = source.charAt(current++);
+        switch (c) {
+            case '(': add(TokenType.LEFT_PAREN); break;
+            case ')': add(TokenType.RIGHT_PAREN); break;
+            case '{': add(TokenType.LEFT_BRACE); break;
+            case '}': add(TokenType.RIGHT_BRACE); break;
+            case '[': add(TokenType.LEFT_BRACKET); break;
+            case ']': add(TokenType.RIGHT_BRACKET); break;
+            case ',': add(TokenType.COMMA); break;
+            case '.': add(TokenType.DOT); break;
+            case ':': add(TokenType.COLON); break;
+            case ';': add(TokenType.SEMICOLON); break;
+            case '+': add(TokenType.PLUS); break;
+            case '-': add(TokenType.MINUS); break;
+            case '*': add(TokenType.STAR); break;
+            case '%': add(TokenType.PERCENT); break;
+            case '/':
+                if (peek() == '/') {
+                    while (current < source.length() && source.charAt(current) != '\n') current++;
+                } else {
+                    add(TokenType.SLASH);
+                }
+                break;
+            case '=':
+                add(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
+                break;
+            case '!':
+                add(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
+                break;
+            case '<':
+                add(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
+                break;
+            case '>':
+                add(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
+                break;
+            case '"': scanString(); break;
+            case ' ':
+            case '\r':
+            case '\t': break;
+            case '\n':
+                line++;
+                break;
+            default:
+                if (isDigit(c)) {
+                    scanNumber();
+                } else if (isAlpha(c)) {
+                    scanIdentifier();
+                } else {
+                    errors.report(line, "Error: Unexpected character '" + c + "'");
+                }
+                break;
+        }
+    }
+
+    private void scanString() {
+        while (current < source.length() && source.charAt(current) != '"') {
+            if (source.charAt(current) == '\n') line++;
+            current++;
+        }
+        if (current >= source.length()) {
+            errors.report(line, "Error: Unterminated string");
+            return;
+        }
+        current++;
+        tokens.add(TokenType.STRING, start, current - start, line, 0, null);
+    }
+
+    private void scanNumber() {
+        long mantissa = source.charAt(start) - '0';
+        int digits = mantissa == 0 ? 0 : 1;
+        int scale = 0;
+        while (isDigit(peek())) {
+            int digit = source.charAt(current++) - '0';
+            if (digits > 0 || digit != 0) digits++;
+            if (digits <= MAX_FAST_DIGITS) mantissa = mantissa * 10 + digit;
+        }
+        if (peek() == '.' && isDigit(peekNext())) {
+            current++;
+            while (isDigit(peek())) {
+                int digit = source.charAt(current++) - '0';
+                if (digits > 0 || digit != 0) digits++;
+                if (digits <= MAX_FAST_DIGITS) mantissa = mantissa * 10 + digit;
+                scale++;
+            }
+        }
+        double value;
+        if (digits <= MAX_FAST_DIGITS && scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[scale];
+        } else {
+            value = Double.parseDouble(source.subSequence(start, current).toString());
+        }
+        tokens.add(TokenType.NUMBER, start, current - start, line, value, null);
+    }
+
+    private void scanIdentifier() {
+        int hash = source.charAt(start);
+        while (isAlphaNumeric(peek())) {
+            hash = 31 * hash + source.charAt(current++);
+        }
+        int entry = names.find(source, start, current, hash);
+        tokens.add(names.type(entry), start, current - start, line, 0, names.name(entry));
+    }
+
+    private void add(TokenType type) {
+        tokens.add(type, start, current - start, line, 0, null);
+    }
+
+    private boolean match(char expected) {
+        if (current >= source.length() || source.charAt(current) != expected) return false;
+        current++;
+        return true;
+    }
+
+    private char peek() {
+        return current < source.length() ? source.charAt(current) : '\0';
+    }
+
+    private char peekNext() {
+        return current + 1 < source.length() ? source.charAt(current + 1) : '\0';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || isDigit(c);
+    }
+
+    // Open-addressing intern table looked up by a range of the source; the hash is String.hashCode of the
+    // range, computed while scanning, so a hit compares characters in place and allocates nothing
+    private static final class NameTable {
+        private String[] strings = new String[256];
+        private int[] hashes = new int[256];
+        private TokenType[] types = new TokenType[256];
+        private int size = 0;
+
+        int find(CharSequence source, int from, int to, int hash) {
+            int mask = strings.length - 1;
+            int length = to - from;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                String existing = strings[slot];
+                if (existing == null) {
+                    return insert(slot, source.subSequence(from, to).toString(), hash, TokenType.IDENTIFIER);
+                }
+                if (hashes[slot] == hash && existing.length() == length && matches(existing, source, from)) {
+                    return slot;
+                }
+            }
+        }
+
+        private static boolean matches(String existing, CharSequence source, int from) {
+            for (int i = 0; i < existing.length(); i++) {
+                if (existing.charAt(i) != source.charAt(from + i)) return false;
+            }
+            return true;
+        }
+
+        void intern(String name, TokenType type) {
+            int hash = name.hashCode();
+            int mask = strings.length - 1;
+            int slot = spread(hash) & mask;
+            while (strings[slot] != null && !strings[slot].equals(name)) slot = (slot + 1) & mask;
+            insert(slot, name, hash, type);
+        }
+
+        String name(int slot) {
+            return strings[slot];
+        }
+
+        TokenType type(int slot) {
+            return types[slot];
+        }
+
+        // Grows before the table passes half full; the returned slot is valid in the grown table
+        private int insert(int slot, String name, int hash, TokenType type) {
+            if ((size + 1) * 2 > strings.length) {
+                grow();
+                int mask = strings.length - 1;
+                slot = spread(hash) & mask;
+                while (strings[slot] != null) slot = (slot + 1) & mask;
+            }
+            strings[slot] = name;
+            hashes[slot] = hash;
+            types[slot] = type;
+            size++;
+            return slot;
+        }
+
+        private void grow() {
+            String[] oldStrings = strings;
+            int[] oldHashes = hashes;
+            TokenType[] oldTypes = types;
+            int capacity = oldStrings.length * 2;
+            strings = new String[capacity];
+            hashes = new int[capacity];
+            types = new TokenType[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldStrings.length; i++) {
+                if (oldStrings[i] == null) continue;
+                int slot = spread(oldHashes[i]) & mask;
+                while (strings[slot] != null) slot = (slot + 1) & mask;
+                strings[slot] = oldStrings[i];
+                hashes[slot] = oldHashes[i];
+                types[slot] = oldTypes[i];
+            }
+        }
+
+        private static int spread(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
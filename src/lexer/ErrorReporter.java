@@ -0,0 +1,12 @@
+// src/lexer/ErrorReporter.java
+package lexer;
+
+// Where the lexer and parser send syntax errors. Batch runs print them; the editor's live analysis
+// collects them instead so they don't flood the console on every keystroke.
+@FunctionalInterface
+public interface ErrorReporter {
+    ErrorReporter STDERR = (line, message) -> System.err.println("[Line " + line + "] " + message);
+    ErrorReporter IGNORE = (line, message) -> { };
+
+    void report(int line, String message);
+}
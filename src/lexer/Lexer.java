@@ -32,6 +32,18 @@ public class Lexer {
         keywords.put("show", TokenType.SHOW);
         keywords.put("play", TokenType.PLAY);
         keywords.put("print", TokenType.PRINT);
+        keywords.put("wait", TokenType.WAIT);
+        keywords.put("yield", TokenType.YIELD);
+        keywords.put("spawn", TokenType.SPAWN);
+        keywords.put("after", TokenType.AFTER);
+        keywords.put("every", TokenType.EVERY);
+        keywords.put("cancel", TokenType.CANCEL);
+        keywords.put("record", TokenType.RECORD);
+        keywords.put("import", TokenType.IMPORT);
+    }
+
+    public static Map<String, TokenType> keywords() {
+        return Collections.unmodifiableMap(keywords);
     }
 
     public Lexer(String source) {
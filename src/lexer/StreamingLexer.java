@@ -0,0 +1,226 @@
+// src/lexer/StreamingLexer.java
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Runs ColumnarLexer over a window of a Reader and produces tokens only as the parser asks for them, so
+// neither the whole source nor the whole token list is ever held in memory. Each token is materialized as
+// soon as it is scanned and the characters before it are dropped; only a small window of recent tokens is
+// kept, since the parser never looks further back than one token.
+public class StreamingLexer implements TokenSource, AutoCloseable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int WINDOW = 16;
+    private static final int MAP_WINDOW = 64 * 1024 * 1024;
+    // Offsets into the window are ints, so past this the lexer is restarted with offsets counted from
+    // the current token
+    private static final int REBASE = 1 << 30;
+
+    private final SourceWindow source;
+    private final ErrorReporter errors;
+    private ColumnarLexer lexer;
+
+    private final Token[] window = new Token[WINDOW];
+    private int produced = 0;
+    private boolean finished = false;
+
+    public StreamingLexer(Reader reader) {
+        this(reader, ErrorReporter.STDERR);
+    }
+
+    public StreamingLexer(Reader reader, ErrorReporter errors) {
+        this.source = new SourceWindow(reader);
+        this.errors = errors;
+        this.lexer = new ColumnarLexer(source, 0, 1, errors);
+    }
+
+    // Reads a UTF-8 file through memory-mapped windows instead of the heap
+    public static StreamingLexer open(Path path) throws IOException {
+        return open(path, ErrorReporter.STDERR);
+    }
+
+    public static StreamingLexer open(Path path, ErrorReporter errors) throws IOException {
+        return new StreamingLexer(new MappedReader(FileChannel.open(path, StandardOpenOption.READ)), errors);
+    }
+
+    @Override
+    public TokenType type(int index) {
+        return token(index).type;
+    }
+
+    @Override
+    public int line(int index) {
+        return token(index).line;
+    }
+
+    @Override
+    public Token token(int index) {
+        while (index >= produced && !finished) scanToken();
+        if (index >= produced) index = produced - 1;
+        if (index < produced - WINDOW) {
+            throw new IllegalStateException("Token " + index + " is no longer buffered");
+        }
+        return window[index % WINDOW];
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.reader.close();
+    }
+
+    private void scanToken() {
+        finished = !lexer.scanNext();
+        TokenStream tokens = lexer.tokens();
+        Token token = tokens.token(0);
+        int end = tokens.start(0) + tokens.length(0);
+        window[produced % WINDOW] = token;
+        produced++;
+        tokens.clear();
+        source.release(end);
+        if (end > REBASE && !finished) {
+            source.rebase(end);
+            lexer = new ColumnarLexer(source, 0, token.line, errors);
+        }
+    }
+
+    // The source as ColumnarLexer sees it: characters are decoded from the reader as they are asked for,
+    // and those before the released offset may be dropped. Until the reader is exhausted, length() keeps
+    // LOOKAHEAD + 1 characters decoded past the furthest one read, which is enough for every check the
+    // scanner makes to answer the same as it would against the whole text.
+    private static final class SourceWindow implements CharSequence {
+        private final Reader reader;
+        private char[] chars = new char[CHUNK_SIZE];
+        // Index in the sequence of chars[0]; goes negative after a rebase until the next compaction
+        private int offset = 0;
+        private int filled = 0;
+        private int released = 0;
+        private int furthest = 0;
+        private boolean endOfInput = false;
+
+        SourceWindow(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int length() {
+            fill(furthest + ColumnarLexer.LOOKAHEAD + 1);
+            return offset + filled;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= offset + filled) fill(index + 1);
+            if (index < offset || index >= offset + filled) {
+                throw new IndexOutOfBoundsException("Index " + index + " is outside the buffered window");
+            }
+            if (index > furthest) furthest = index;
+            return chars[index - offset];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start - offset, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, filled);
+        }
+
+        void release(int index) {
+            released = index;
+        }
+
+        // Renumbers the sequence so that index becomes 0
+        void rebase(int index) {
+            offset -= index;
+            released -= index;
+            furthest -= index;
+        }
+
+        // Decodes until the sequence reaches end or the reader runs out. A full buffer first drops the
+        // released characters, and doubles if that frees less than half of it.
+        private void fill(int end) {
+            while (offset + filled < end && !endOfInput) {
+                if (filled == chars.length) {
+                    int drop = released - offset;
+                    if (drop > 0) {
+                        System.arraycopy(chars, drop, chars, 0, filled - drop);
+                        filled -= drop;
+                        offset = released;
+                    }
+                    if (filled > chars.length / 2) chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+                try {
+                    int read = reader.read(chars, filled, chars.length - filled);
+                    if (read < 0) endOfInput = true; else filled += read;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    // Decodes UTF-8 from a file mapped one window at a time, so files past 2 GB work and only the pages
+    // being lexed need to be resident. A character split across windows is finished from the next one.
+    private static final class MappedReader extends Reader {
+        private final FileChannel channel;
+        private final long size;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private MappedByteBuffer buffer;
+        private long bufferStart = 0;
+        private boolean flushed = false;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        @Override
+        public int read(char[] target, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (flushed) return -1;
+            CharBuffer out = CharBuffer.wrap(target, offset, length);
+            while (out.position() == offset) {
+                boolean last = bufferStart + buffer.limit() >= size;
+                CoderResult result = decoder.decode(buffer, out, last);
+                if (result.isOverflow()) break;
+                if (!last) {
+                    map(bufferStart + buffer.position());
+                } else {
+                    if (!flushed) {
+                        decoder.flush(out);
+                        flushed = true;
+                    }
+                    break;
+                }
+            }
+            int read = out.position() - offset;
+            return read == 0 ? -1 : read;
+        }
+
+        private void map(long start) throws IOException {
+            bufferStart = start;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_WINDOW, size - start));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+// src/lexer/TokenSource.java
+package lexer;
+
+import java.util.List;
+
+// What the parser reads tokens through. Types can be checked by index without creating Token objects,
+// which a columnar stream only materializes on request. The last token is always EOF, and indexes past it
+// read as that EOF, so a source that lexes on demand never has to know its length up front.
+public interface TokenSource {
+    TokenType type(int index);
+
+    int line(int index);
+
+    Token token(int index);
+
+    static TokenSource of(List<Token> tokens) {
+        return new TokenSource() {
+            @Override
+            public TokenType type(int index) {
+                return token(index).type;
+            }
+
+            @Override
+            public int line(int index) {
+                return token(index).line;
+            }
+
+            @Override
+            public Token token(int index) {
+                return tokens.get(Math.min(index, tokens.size() - 1));
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+// src/lexer/TokenStream.java
+package lexer;
+
+import java.util.Arrays;
+
+// Tokens as parallel columns over the source text: type ordinal, start offset, length and line, plus the
+// parsed value of number literals and the interned name of identifiers and keywords. Token objects are
+// built on first request and cached, so punctuation the parser only type-checks never becomes an object.
+public final class TokenStream implements TokenSource {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private double[] numbers;
+    private String[] names;
+    private Token[] materialized;
+    private int size = 0;
+
+    // Scripts average a token every five or six characters, so callers lexing a whole file pass
+    // length / 5 and avoid most regrowth
+    TokenStream(CharSequence source, int expectedTokens) {
+        this.source = source;
+        int capacity = Math.max(64, expectedTokens);
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        numbers = new double[capacity];
+        names = new String[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line, double number, String name) {
+        if (size == types.length) {
+            int capacity = size + (size >> 1);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        numbers[size] = number;
+        names[size] = name;
+        size++;
+    }
+
+    // Drops every token but keeps the columns' capacity, for a lexer that hands tokens on as it goes
+    void clear() {
+        size = 0;
+        materialized = null;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public TokenType type(int index) {
+        return TYPES[types[Math.min(index, size - 1)]];
+    }
+
+    @Override
+    public int line(int index) {
+        return lines[Math.min(index, size - 1)];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public double number(int index) {
+        return numbers[index];
+    }
+
+    // Interned name of an identifier or keyword, null for other tokens
+    public String name(int index) {
+        return names[index];
+    }
+
+    // Callers on different threads may race to create the same token; Token is immutable, so losing
+    // one of the copies is harmless
+    @Override
+    public Token token(int index) {
+        if (materialized == null) materialized = new Token[size];
+        index = Math.min(index, size - 1);
+        Token token = materialized[index];
+        if (token == null) {
+            token = create(index);
+            materialized[index] = token;
+        }
+        return token;
+    }
+
+    private Token create(int index) {
+        TokenType type = type(index);
+        int start = starts[index];
+        int end = start + lengths[index];
+        String lexeme = names[index] != null ? names[index] : source.subSequence(start, end).toString();
+        Object literal = null;
+        if (type == TokenType.NUMBER) {
+            literal = numbers[index];
+        } else if (type == TokenType.STRING) {
+            literal = source.subSequence(start + 1, end - 1).toString();
+        }
+        return new Token(type, lexeme, literal, lines[index]);
+    }
+}
@@ -23,6 +23,9 @@ public enum TokenType {
     IF, ELSE, WHILE, FOR, IN,
     GAME, LET, FN, RETURN,
     LOAD, DRAW, SHOW, PLAY, PRINT,
+    WAIT, YIELD, SPAWN,
+    AFTER, EVERY, CANCEL,
+    RECORD, IMPORT,
 
     EOF
 }
\ No newline at end of file
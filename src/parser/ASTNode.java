@@ -63,6 +63,44 @@ public abstract class ASTNode {
         }
     }
 
+    // object[start:end]; either bound may be null
+    public static class Slice implements Expr {
+        public final Expr object;
+        public final Expr start;
+        public final Expr end;
+        public Slice(Expr object, Expr start, Expr end) {
+            this.object = object;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // { key: value, ... }; bare identifier keys are stored as string literals
+    public static class MapLiteral implements Expr {
+        public final List<Expr> keys;
+        public final List<Expr> values;
+        public MapLiteral(List<Expr> keys, List<Expr> values) {
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    // object.field. slotHint is the field's slot when every record declared before this point
+    // agrees on it, else -1; cache is the interpreter's inline cache for the last record type seen.
+    public static class Get implements Expr {
+        public final Expr object;
+        public final Token name;
+        public final String field;
+        public final int slotHint;
+        public volatile Object cache;
+        public Get(Expr object, Token name, int slotHint) {
+            this.object = object;
+            this.name = name;
+            this.field = name.lexeme.intern();
+            this.slotHint = slotHint;
+        }
+    }
+
     public static class ArrayLiteral implements Expr {
         public final List<Expr> elements;
         public ArrayLiteral(List<Expr> elements) {
@@ -102,14 +140,45 @@ public abstract class ASTNode {
     }
 
     public static class Function implements Stmt {
+        // A body the parser only brace-matched; parse() turns its tokens into statements
+        public interface LazyBody {
+            List<Stmt> parse();
+        }
+
         public final Token name;
         public final List<Token> params;
-        public final List<Stmt> body;
+        private volatile List<Stmt> body;
+        private LazyBody lazyBody;
         public Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
             this.params = params;
             this.body = body;
         }
+        public Function(Token name, List<Token> params, LazyBody lazyBody) {
+            this.name = name;
+            this.params = params;
+            this.lazyBody = lazyBody;
+        }
+
+        // Parses a lazy body on first use. Threads calling it together wait for a single parse.
+        public List<Stmt> body() {
+            List<Stmt> parsed = body;
+            if (parsed == null) {
+                synchronized (this) {
+                    parsed = body;
+                    if (parsed == null) {
+                        parsed = lazyBody.parse();
+                        body = parsed;
+                        lazyBody = null;
+                    }
+                }
+            }
+            return parsed;
+        }
+
+        public boolean isParsed() {
+            return body != null;
+        }
     }
 
     public static class Return implements Stmt {
@@ -163,10 +232,29 @@ public abstract class ASTNode {
         public final String type;
         public final List<Expr> args;
         public final String color;
+        // Optional sprite transform for "draw image"; null/false when absent
+        public final Expr rotation;
+        public final Expr scale;
+        public final boolean flipX;
+        public final boolean flipY;
+        public final String tint;
         public Draw(String type, List<Expr> args, String color) {
+            this(type, args, color, null, null, false, false, null);
+        }
+        public Draw(String type, List<Expr> args, String color, Expr rotation, Expr scale,
+                    boolean flipX, boolean flipY, String tint) {
             this.type = type;
             this.args = args;
             this.color = color;
+            this.rotation = rotation;
+            this.scale = scale;
+            this.flipX = flipX;
+            this.flipY = flipY;
+            this.tint = tint;
+        }
+
+        public boolean isTransformed() {
+            return rotation != null || scale != null || flipX || flipY || tint != null;
         }
     }
 
@@ -204,6 +292,88 @@ public abstract class ASTNode {
         }
     }
 
+    // wait MS, or wait frame when millis is null
+    public static class Wait implements Stmt {
+        public final Expr millis;
+        public Wait(Expr millis) {
+            this.millis = millis;
+        }
+    }
+
+    public static class Yield implements Stmt {
+    }
+
+    // spawn fn(args): runs the call as its own coroutine
+    public static class Spawn implements Stmt {
+        public final Call call;
+        public Spawn(Call call) {
+            this.call = call;
+        }
+    }
+
+    // after MS [as name] { ... } runs once, every MS [as name] { ... } repeats
+    public static class Timer implements Stmt {
+        public final Expr delay;
+        public final boolean repeat;
+        public final Token name;
+        public final List<Stmt> body;
+        public Timer(Expr delay, boolean repeat, Token name, List<Stmt> body) {
+            this.delay = delay;
+            this.repeat = repeat;
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    public static class Cancel implements Stmt {
+        public final Expr timer;
+        public Cancel(Expr timer) {
+            this.timer = timer;
+        }
+    }
+
+    // object[index] = value
+    public static class SetIndex implements Stmt {
+        public final Expr object;
+        public final Expr index;
+        public final Expr value;
+        public SetIndex(Expr object, Expr index, Expr value) {
+            this.object = object;
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    // record Name { field, ... }
+    public static class Record implements Stmt {
+        public final Token name;
+        public final List<Token> fields;
+        public Record(Token name, List<Token> fields) {
+            this.name = name;
+            this.fields = fields;
+        }
+    }
+
+    // import "path" [as name]; without a name the module is bound to its file name minus the extension
+    public static class Import implements Stmt {
+        public final Token name;
+        public final String path;
+        public Import(Token name, String path) {
+            this.name = name;
+            this.path = path;
+        }
+    }
+
+    // object.field = value
+    public static class SetField implements Stmt {
+        public final Get target;
+        public final Expr value;
+        public SetField(Get target, Expr value) {
+            this.target = target;
+            this.value = value;
+        }
+    }
+
     public static class ExpressionStmt implements Stmt {
         public final Expr expression;
         public ExpressionStmt(Expr expression) {
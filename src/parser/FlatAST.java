@@ -0,0 +1,479 @@
+// src/parser/FlatAST.java
+package parser;
+
+import lexer.Token;
+import lexer.TokenType;
+import java.util.*;
+
+// Pointer-free encoding of a parsed program. Every node is a short record in one int[] arena: a header
+// packing the kind (low byte) and source line, followed by its operands. Operands are arena offsets of
+// child nodes, offsets of child lists (stored inline as [count, items...]), constant indexes into a side
+// table holding each name and string once, or plain ints; number literals keep their bits inline. NONE
+// marks an absent child or constant. Children are written before their parent.
+public final class FlatAST {
+    public static final int NONE = -1;
+
+    // Node kinds, with the operands of each record in order
+    public static final int LITERAL = 0;      // value; strings, booleans and null
+    public static final int NUMBER = 1;       // high and low int of the value's raw double bits
+    public static final int VARIABLE = 2;     // name
+    public static final int NAME = 3;         // name; a declared identifier such as a parameter or record field
+    public static final int BINARY = 4;       // operator type ordinal, operator lexeme, left, right
+    public static final int UNARY = 5;        // operator type ordinal, operator lexeme, right
+    public static final int CALL = 6;         // callee, argument list
+    public static final int INDEX = 7;        // object, index
+    public static final int SLICE = 8;        // object, start, end
+    public static final int MAP = 9;          // key list, value list
+    public static final int GET = 10;         // object, field name, slot hint
+    public static final int ARRAY = 11;       // element list
+    public static final int GAME = 12;        // width, height, body list
+    public static final int LET = 13;         // name, initializer
+    public static final int ASSIGN = 14;      // name, value
+    public static final int FUNCTION = 15;    // name, parameter list of NAME nodes, body list
+    public static final int RETURN = 16;      // value
+    public static final int IF = 17;          // condition, then list, else list
+    public static final int WHILE = 18;       // condition, body list
+    public static final int FOR = 19;         // variable NAME node, iterable, body list
+    public static final int LOAD = 20;        // NAME node, path
+    public static final int DRAW = 21;        // shape, argument list, color, rotation, scale, flip flags, tint
+    public static final int SHOW = 22;        // text, x, y, alignment
+    public static final int PLAY = 23;        // path
+    public static final int PRINT = 24;       // expression
+    public static final int BLOCK = 25;       // statement list
+    public static final int WAIT = 26;        // millis
+    public static final int YIELD = 27;
+    public static final int SPAWN = 28;       // call
+    public static final int TIMER = 29;       // delay, repeat (0 or 1), NAME node, body list
+    public static final int CANCEL = 30;      // timer
+    public static final int SET_INDEX = 31;   // object, index, value
+    public static final int RECORD = 32;      // name, field list of NAME nodes
+    public static final int SET_FIELD = 33;   // GET target, value
+    public static final int EXPRESSION = 34;  // expression
+    public static final int IMPORT = 35;      // NAME node, path
+
+    public static final int FLIP_X = 1;
+    public static final int FLIP_Y = 2;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private int[] arena = new int[256];
+    private int size = 0;
+    private int nodes = 0;
+    private Object[] constants = new Object[64];
+    private int constantCount = 0;
+    private Map<Object, Integer> constantIndex = new HashMap<>();
+    private int[] roots = new int[16];
+    private int rootCount = 0;
+    private int statements = NONE;
+
+    FlatAST() {
+    }
+
+    // A program read back from its serialized form
+    FlatAST(int[] arena, Object[] constants, int statements, int nodes) {
+        this.arena = arena;
+        this.size = arena.length;
+        this.constants = constants;
+        this.constantCount = constants.length;
+        this.statements = statements;
+        this.nodes = nodes;
+        this.constantIndex = null;
+        this.roots = null;
+    }
+
+    public static FlatAST encode(List<ASTNode.Stmt> statements) {
+        FlatAST ast = new FlatAST();
+        for (ASTNode.Stmt stmt : statements) ast.addStatement(stmt);
+        return ast.finish();
+    }
+
+    // Offset of the top-level statement list
+    public int statements() {
+        return statements;
+    }
+
+    public boolean isEmpty() {
+        return count(statements) == 0;
+    }
+
+    public int kind(int node) {
+        return arena[node] & 0xFF;
+    }
+
+    public int line(int node) {
+        return arena[node] >>> 8;
+    }
+
+    public int operand(int node, int i) {
+        return arena[node + 1 + i];
+    }
+
+    public int count(int list) {
+        return arena[list];
+    }
+
+    public int item(int list, int i) {
+        return arena[list + 1 + i];
+    }
+
+    public Object constant(int index) {
+        return index == NONE ? null : constants[index];
+    }
+
+    public String string(int index) {
+        return (String) constant(index);
+    }
+
+    public double number(int node) {
+        return Double.longBitsToDouble(((long) operand(node, 0) << 32) | (operand(node, 1) & 0xFFFFFFFFL));
+    }
+
+    public int nodeCount() {
+        return nodes;
+    }
+
+    public int arenaSize() {
+        return size;
+    }
+
+    public int constantCount() {
+        return constantCount;
+    }
+
+    // Rebuilds the object tree, for consumers that attach state to nodes such as the interpreter's inline caches.
+    // Function bodies are decoded on first use, like the parser's lazy bodies.
+    public List<ASTNode.Stmt> decode() {
+        return decodeStatements(statements);
+    }
+
+    // The sealed arena and constant table, for KuromicFormat
+    int[] arena() {
+        return arena;
+    }
+
+    Object[] constants() {
+        return constants;
+    }
+
+    // Appends one top-level statement; finish() seals the program
+    void addStatement(ASTNode.Stmt stmt) {
+        int node = stmt(stmt);
+        if (rootCount == roots.length) roots = Arrays.copyOf(roots, rootCount * 2);
+        roots[rootCount++] = node;
+    }
+
+    FlatAST finish() {
+        statements = list(roots, rootCount);
+        arena = Arrays.copyOf(arena, size);
+        constants = Arrays.copyOf(constants, constantCount);
+        constantIndex = null;
+        roots = null;
+        return this;
+    }
+
+    // ENCODING
+
+    private int stmt(ASTNode.Stmt stmt) {
+        if (stmt instanceof ASTNode.GameStart) {
+            ASTNode.GameStart game = (ASTNode.GameStart) stmt;
+            return node(GAME, 0, game.width, game.height, stmts(game.body));
+        } else if (stmt instanceof ASTNode.Let) {
+            ASTNode.Let let = (ASTNode.Let) stmt;
+            return node(LET, let.name.line, constant(let.name.lexeme), expr(let.initializer));
+        } else if (stmt instanceof ASTNode.Assignment) {
+            ASTNode.Assignment assign = (ASTNode.Assignment) stmt;
+            return node(ASSIGN, assign.name.line, constant(assign.name.lexeme), expr(assign.value));
+        } else if (stmt instanceof ASTNode.Function) {
+            ASTNode.Function func = (ASTNode.Function) stmt;
+            return node(FUNCTION, func.name.line, constant(func.name.lexeme), names(func.params), stmts(func.body()));
+        } else if (stmt instanceof ASTNode.Return) {
+            return node(RETURN, 0, expr(((ASTNode.Return) stmt).value));
+        } else if (stmt instanceof ASTNode.If) {
+            ASTNode.If ifStmt = (ASTNode.If) stmt;
+            return node(IF, 0, expr(ifStmt.condition), stmts(ifStmt.thenBranch), stmts(ifStmt.elseBranch));
+        } else if (stmt instanceof ASTNode.While) {
+            ASTNode.While whileStmt = (ASTNode.While) stmt;
+            return node(WHILE, 0, expr(whileStmt.condition), stmts(whileStmt.body));
+        } else if (stmt instanceof ASTNode.For) {
+            ASTNode.For forStmt = (ASTNode.For) stmt;
+            return node(FOR, 0, name(forStmt.variable), expr(forStmt.iterable), stmts(forStmt.body));
+        } else if (stmt instanceof ASTNode.Load) {
+            ASTNode.Load load = (ASTNode.Load) stmt;
+            return node(LOAD, 0, name(load.name), constant(load.path));
+        } else if (stmt instanceof ASTNode.Draw) {
+            ASTNode.Draw draw = (ASTNode.Draw) stmt;
+            int flags = (draw.flipX ? FLIP_X : 0) | (draw.flipY ? FLIP_Y : 0);
+            return node(DRAW, 0, constant(draw.type), exprs(draw.args), constant(draw.color),
+                    expr(draw.rotation), expr(draw.scale), flags, constant(draw.tint));
+        } else if (stmt instanceof ASTNode.Show) {
+            ASTNode.Show show = (ASTNode.Show) stmt;
+            return node(SHOW, 0, constant(show.text), expr(show.x), expr(show.y), constant(show.alignment));
+        } else if (stmt instanceof ASTNode.Play) {
+            return node(PLAY, 0, constant(((ASTNode.Play) stmt).path));
+        } else if (stmt instanceof ASTNode.Print) {
+            return node(PRINT, 0, expr(((ASTNode.Print) stmt).expression));
+        } else if (stmt instanceof ASTNode.Block) {
+            return node(BLOCK, 0, stmts(((ASTNode.Block) stmt).statements));
+        } else if (stmt instanceof ASTNode.Wait) {
+            return node(WAIT, 0, expr(((ASTNode.Wait) stmt).millis));
+        } else if (stmt instanceof ASTNode.Yield) {
+            return node(YIELD, 0);
+        } else if (stmt instanceof ASTNode.Spawn) {
+            return node(SPAWN, 0, expr(((ASTNode.Spawn) stmt).call));
+        } else if (stmt instanceof ASTNode.Timer) {
+            ASTNode.Timer timer = (ASTNode.Timer) stmt;
+            return node(TIMER, 0, expr(timer.delay), timer.repeat ? 1 : 0, name(timer.name), stmts(timer.body));
+        } else if (stmt instanceof ASTNode.Cancel) {
+            return node(CANCEL, 0, expr(((ASTNode.Cancel) stmt).timer));
+        } else if (stmt instanceof ASTNode.SetIndex) {
+            ASTNode.SetIndex set = (ASTNode.SetIndex) stmt;
+            return node(SET_INDEX, 0, expr(set.object), expr(set.index), expr(set.value));
+        } else if (stmt instanceof ASTNode.Record) {
+            ASTNode.Record record = (ASTNode.Record) stmt;
+            return node(RECORD, record.name.line, constant(record.name.lexeme), names(record.fields));
+        } else if (stmt instanceof ASTNode.SetField) {
+            ASTNode.SetField set = (ASTNode.SetField) stmt;
+            return node(SET_FIELD, 0, expr(set.target), expr(set.value));
+        } else if (stmt instanceof ASTNode.Import) {
+            ASTNode.Import imp = (ASTNode.Import) stmt;
+            return node(IMPORT, 0, name(imp.name), constant(imp.path));
+        } else if (stmt instanceof ASTNode.ExpressionStmt) {
+            return node(EXPRESSION, 0, expr(((ASTNode.ExpressionStmt) stmt).expression));
+        }
+        throw new RuntimeException("Unknown statement: " + stmt.getClass().getSimpleName());
+    }
+
+    private int expr(ASTNode.Expr expr) {
+        if (expr == null) {
+            return NONE;
+        } else if (expr instanceof ASTNode.Literal) {
+            Object value = ((ASTNode.Literal) expr).value;
+            if (value instanceof Double) {
+                long bits = Double.doubleToRawLongBits((Double) value);
+                return node(NUMBER, 0, (int) (bits >>> 32), (int) bits);
+            }
+            return node(LITERAL, 0, constant(value));
+        } else if (expr instanceof ASTNode.Variable) {
+            Token name = ((ASTNode.Variable) expr).name;
+            return node(VARIABLE, name.line, constant(name.lexeme));
+        } else if (expr instanceof ASTNode.Binary) {
+            ASTNode.Binary binary = (ASTNode.Binary) expr;
+            int left = expr(binary.left);
+            int right = expr(binary.right);
+            return node(BINARY, binary.operator.line, binary.operator.type.ordinal(),
+                    constant(binary.operator.lexeme), left, right);
+        } else if (expr instanceof ASTNode.Unary) {
+            ASTNode.Unary unary = (ASTNode.Unary) expr;
+            return node(UNARY, unary.operator.line, unary.operator.type.ordinal(),
+                    constant(unary.operator.lexeme), expr(unary.right));
+        } else if (expr instanceof ASTNode.Call) {
+            ASTNode.Call call = (ASTNode.Call) expr;
+            int callee = expr(call.callee);
+            return node(CALL, 0, callee, exprs(call.arguments));
+        } else if (expr instanceof ASTNode.Index) {
+            ASTNode.Index index = (ASTNode.Index) expr;
+            int object = expr(index.object);
+            return node(INDEX, 0, object, expr(index.index));
+        } else if (expr instanceof ASTNode.Slice) {
+            ASTNode.Slice slice = (ASTNode.Slice) expr;
+            int object = expr(slice.object);
+            int start = expr(slice.start);
+            return node(SLICE, 0, object, start, expr(slice.end));
+        } else if (expr instanceof ASTNode.MapLiteral) {
+            ASTNode.MapLiteral map = (ASTNode.MapLiteral) expr;
+            int keys = exprs(map.keys);
+            return node(MAP, 0, keys, exprs(map.values));
+        } else if (expr instanceof ASTNode.Get) {
+            ASTNode.Get get = (ASTNode.Get) expr;
+            return node(GET, get.name.line, expr(get.object), constant(get.name.lexeme), get.slotHint);
+        } else if (expr instanceof ASTNode.ArrayLiteral) {
+            return node(ARRAY, 0, exprs(((ASTNode.ArrayLiteral) expr).elements));
+        }
+        throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+    }
+
+    private int stmts(List<ASTNode.Stmt> statements) {
+        int[] items = new int[statements.size()];
+        for (int i = 0; i < items.length; i++) items[i] = stmt(statements.get(i));
+        return list(items, items.length);
+    }
+
+    private int exprs(List<ASTNode.Expr> expressions) {
+        int[] items = new int[expressions.size()];
+        for (int i = 0; i < items.length; i++) items[i] = expr(expressions.get(i));
+        return list(items, items.length);
+    }
+
+    private int names(List<Token> names) {
+        int[] items = new int[names.size()];
+        for (int i = 0; i < items.length; i++) items[i] = name(names.get(i));
+        return list(items, items.length);
+    }
+
+    private int name(Token name) {
+        return name == null ? NONE : node(NAME, name.line, constant(name.lexeme));
+    }
+
+    private int node(int kind, int line, int... operands) {
+        reserve(1 + operands.length);
+        int node = size;
+        arena[size++] = kind | (line << 8);
+        for (int operand : operands) arena[size++] = operand;
+        nodes++;
+        return node;
+    }
+
+    private int list(int[] items, int count) {
+        reserve(1 + count);
+        int list = size;
+        arena[size++] = count;
+        System.arraycopy(items, 0, arena, size, count);
+        size += count;
+        return list;
+    }
+
+    private void reserve(int ints) {
+        if (size + ints > arena.length) arena = Arrays.copyOf(arena, Math.max(arena.length * 2, size + ints));
+    }
+
+    private int constant(Object value) {
+        if (value == null) return NONE;
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+        if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+
+    // DECODING
+
+    private List<ASTNode.Stmt> decodeStatements(int list) {
+        List<ASTNode.Stmt> statements = new ArrayList<>(count(list));
+        for (int i = 0; i < count(list); i++) statements.add(decodeStmt(item(list, i)));
+        return statements;
+    }
+
+    private List<ASTNode.Expr> decodeExprs(int list) {
+        List<ASTNode.Expr> expressions = new ArrayList<>(count(list));
+        for (int i = 0; i < count(list); i++) expressions.add(decodeExpr(item(list, i)));
+        return expressions;
+    }
+
+    private List<Token> decodeNames(int list) {
+        List<Token> names = new ArrayList<>(count(list));
+        for (int i = 0; i < count(list); i++) names.add(decodeName(item(list, i)));
+        return names;
+    }
+
+    private Token decodeName(int node) {
+        return node == NONE ? null : identifier(operand(node, 0), line(node));
+    }
+
+    private Token identifier(int name, int line) {
+        return new Token(TokenType.IDENTIFIER, string(name), null, line);
+    }
+
+    private ASTNode.Stmt decodeStmt(int node) {
+        switch (kind(node)) {
+            case GAME:
+                return new ASTNode.GameStart(operand(node, 0), operand(node, 1), decodeStatements(operand(node, 2)));
+            case LET:
+                return new ASTNode.Let(identifier(operand(node, 0), line(node)), decodeExpr(operand(node, 1)));
+            case ASSIGN:
+                return new ASTNode.Assignment(identifier(operand(node, 0), line(node)), decodeExpr(operand(node, 1)));
+            case FUNCTION: {
+                int body = operand(node, 2);
+                return new ASTNode.Function(identifier(operand(node, 0), line(node)),
+                        decodeNames(operand(node, 1)), () -> decodeStatements(body));
+            }
+            case RETURN:
+                return new ASTNode.Return(decodeExpr(operand(node, 0)));
+            case IF:
+                return new ASTNode.If(decodeExpr(operand(node, 0)),
+                        decodeStatements(operand(node, 1)), decodeStatements(operand(node, 2)));
+            case WHILE:
+                return new ASTNode.While(decodeExpr(operand(node, 0)), decodeStatements(operand(node, 1)));
+            case FOR:
+                return new ASTNode.For(decodeName(operand(node, 0)), decodeExpr(operand(node, 1)),
+                        decodeStatements(operand(node, 2)));
+            case LOAD:
+                return new ASTNode.Load(decodeName(operand(node, 0)), string(operand(node, 1)));
+            case DRAW: {
+                int flags = operand(node, 5);
+                return new ASTNode.Draw(string(operand(node, 0)), decodeExprs(operand(node, 1)),
+                        string(operand(node, 2)), decodeExpr(operand(node, 3)), decodeExpr(operand(node, 4)),
+                        (flags & FLIP_X) != 0, (flags & FLIP_Y) != 0, string(operand(node, 6)));
+            }
+            case SHOW:
+                return new ASTNode.Show(string(operand(node, 0)), decodeExpr(operand(node, 1)),
+                        decodeExpr(operand(node, 2)), string(operand(node, 3)));
+            case PLAY:
+                return new ASTNode.Play(string(operand(node, 0)));
+            case PRINT:
+                return new ASTNode.Print(decodeExpr(operand(node, 0)));
+            case BLOCK:
+                return new ASTNode.Block(decodeStatements(operand(node, 0)));
+            case WAIT:
+                return new ASTNode.Wait(decodeExpr(operand(node, 0)));
+            case YIELD:
+                return new ASTNode.Yield();
+            case SPAWN:
+                return new ASTNode.Spawn((ASTNode.Call) decodeExpr(operand(node, 0)));
+            case TIMER:
+                return new ASTNode.Timer(decodeExpr(operand(node, 0)), operand(node, 1) != 0,
+                        decodeName(operand(node, 2)), decodeStatements(operand(node, 3)));
+            case CANCEL:
+                return new ASTNode.Cancel(decodeExpr(operand(node, 0)));
+            case SET_INDEX:
+                return new ASTNode.SetIndex(decodeExpr(operand(node, 0)), decodeExpr(operand(node, 1)),
+                        decodeExpr(operand(node, 2)));
+            case RECORD:
+                return new ASTNode.Record(identifier(operand(node, 0), line(node)), decodeNames(operand(node, 1)));
+            case SET_FIELD:
+                return new ASTNode.SetField((ASTNode.Get) decodeExpr(operand(node, 0)), decodeExpr(operand(node, 1)));
+            case EXPRESSION:
+                return new ASTNode.ExpressionStmt(decodeExpr(operand(node, 0)));
+            case IMPORT:
+                return new ASTNode.Import(decodeName(operand(node, 0)), string(operand(node, 1)));
+            default:
+                throw new RuntimeException("Not a statement node: kind " + kind(node));
+        }
+    }
+
+    private ASTNode.Expr decodeExpr(int node) {
+        if (node == NONE) return null;
+        switch (kind(node)) {
+            case LITERAL:
+                return new ASTNode.Literal(constant(operand(node, 0)));
+            case NUMBER:
+                return new ASTNode.Literal(number(node));
+            case VARIABLE:
+                return new ASTNode.Variable(identifier(operand(node, 0), line(node)));
+            case BINARY:
+                return new ASTNode.Binary(decodeExpr(operand(node, 2)), operator(node), decodeExpr(operand(node, 3)));
+            case UNARY:
+                return new ASTNode.Unary(operator(node), decodeExpr(operand(node, 2)));
+            case CALL:
+                return new ASTNode.Call(decodeExpr(operand(node, 0)), decodeExprs(operand(node, 1)));
+            case INDEX:
+                return new ASTNode.Index(decodeExpr(operand(node, 0)), decodeExpr(operand(node, 1)));
+            case SLICE:
+                return new ASTNode.Slice(decodeExpr(operand(node, 0)), decodeExpr(operand(node, 1)),
+                        decodeExpr(operand(node, 2)));
+            case MAP:
+                return new ASTNode.MapLiteral(decodeExprs(operand(node, 0)), decodeExprs(operand(node, 1)));
+            case GET:
+                return new ASTNode.Get(decodeExpr(operand(node, 0)), identifier(operand(node, 1), line(node)),
+                        operand(node, 2));
+            case ARRAY:
+                return new ASTNode.ArrayLiteral(decodeExprs(operand(node, 0)));
+            default:
+                throw new RuntimeException("Not an expression node: kind " + kind(node));
+        }
+    }
+
+    private Token operator(int node) {
+        return new Token(TOKEN_TYPES[operand(node, 0)], string(operand(node, 1)), null, line(node));
+    }
+}
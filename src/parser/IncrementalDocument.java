@@ -0,0 +1,437 @@
+// src/parser/IncrementalDocument.java
+package parser;
+
+import lexer.ColumnarLexer;
+import lexer.ErrorReporter;
+import lexer.Token;
+import lexer.TokenSource;
+import lexer.TokenStream;
+import lexer.TokenType;
+import java.util.*;
+
+// Token list and AST of an editor buffer, kept up to date edit by edit. An edit re-lexes from the first
+// token whose lookahead reaches it until a new token starts exactly where an old one now starts; the
+// lexer carries no state between tokens, so everything after that point would come out the same.
+// Statements are tracked as segments of the token list, with the bodies of game blocks and functions
+// split into their own statements, and only the innermost statement list holding the damage is
+// re-parsed, again until the parse lands on the start of an untouched statement. While re-parsing, any
+// statement starting after the damage is taken from the old tree instead of parsed, so even an unclosed
+// brace that swallows the rest of the file costs one step per following statement. All other statements
+// keep their AST nodes. Reused tokens keep the line they were lexed on; lineOf gives current lines.
+public class IncrementalDocument {
+    private static final class Segment implements Parser.Parsed {
+        int from;
+        int to;
+        ASTNode.Stmt stmt;
+        Segment parent;
+        List<Segment> children;
+        // Shift not yet applied to the children; pushed down when someone looks at them, so an edit
+        // only touches the subtrees it passes through
+        int pending;
+
+        Segment(int from, int to, ASTNode.Stmt stmt, Segment parent) {
+            this.from = from;
+            this.to = to;
+            this.stmt = stmt;
+            this.parent = parent;
+        }
+
+        List<Segment> children() {
+            if (pending != 0 && children != null) {
+                for (Segment child : children) {
+                    if (child.from >= 0) child.from += pending;
+                    child.to += pending;
+                    child.pending += pending;
+                }
+                pending = 0;
+            }
+            return children;
+        }
+
+        @Override
+        public ASTNode.Stmt statement() {
+            return stmt;
+        }
+
+        @Override
+        public int end() {
+            return to;
+        }
+    }
+
+    private static final class Parsed {
+        final int start;
+        final int end;
+        final ASTNode.Stmt stmt;
+
+        Parsed(int start, int end, ASTNode.Stmt stmt) {
+            this.start = start;
+            this.end = end;
+            this.stmt = stmt;
+        }
+    }
+
+    private final ErrorReporter errors;
+    private String text = "";
+    private final ArrayList<Token> tokens = new ArrayList<>();
+    private int[] starts = new int[64];
+    private int[] newlines = new int[64];
+    private int newlineCount = 0;
+
+    private final List<ASTNode.Stmt> statements = new ArrayList<>();
+    private final Segment root = new Segment(0, 0, null, null);
+    private final Map<List<ASTNode.Stmt>, List<Parsed>> blocks = new IdentityHashMap<>();
+    private List<Parsed> nested;
+    private final Map<Integer, Segment> reused = new HashMap<>();
+    // Reused segments and their new parents, applied once a re-parse succeeds
+    private final List<Segment> adopted = new ArrayList<>();
+    private final List<Segment> adoptedBy = new ArrayList<>();
+    // Token indexes after which the tree from before the current edit is still valid
+    private int reuseFrom = Integer.MAX_VALUE;
+
+    public IncrementalDocument() {
+        this(ErrorReporter.IGNORE);
+    }
+
+    public IncrementalDocument(ErrorReporter errors) {
+        this.errors = errors;
+        setText("");
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<Token> tokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    // Top-level statements; statements that failed to parse are left out, as in Parser.parse
+    public List<ASTNode.Stmt> statements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    public int lineOf(int offset) {
+        int low = 0;
+        int high = newlineCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (newlines[mid] < offset) low = mid + 1; else high = mid;
+        }
+        return low + 1;
+    }
+
+    public void setText(String source) {
+        text = source;
+        newlineCount = 0;
+        indexNewlines(source, 0, 0);
+        tokens.clear();
+        TokenStream stream = new ColumnarLexer(source, 0, 1, errors).scanTokens();
+        starts = new int[Math.max(64, stream.size())];
+        for (int i = 0; i < stream.size(); i++) {
+            tokens.add(stream.token(i));
+            starts[i] = stream.start(i);
+        }
+        root.to = tokens.size();
+        root.children = new ArrayList<>();
+        reuseFrom = Integer.MAX_VALUE;
+        reparse(root, 0, tokens.size() - 1);
+    }
+
+    public void insert(int offset, String inserted) {
+        edit(offset, 0, inserted);
+    }
+
+    public void remove(int offset, int length) {
+        edit(offset, length, "");
+    }
+
+    // Replaces length characters at offset with replacement
+    public void edit(int offset, int length, String replacement) {
+        if (offset < 0 || length < 0 || offset + length > text.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + length + " outside document of " + text.length());
+        }
+        int shift = replacement.length() - length;
+        text = new StringBuilder(text.length() + shift)
+                .append(text, 0, offset).append(replacement).append(text, offset + length, text.length())
+                .toString();
+        updateNewlines(offset, length, replacement);
+
+        // First token whose lookahead reaches the edit; it may grow, shrink or merge with new text
+        int first = firstEndingAtOrAfter(offset - (ColumnarLexer.LOOKAHEAD - 1));
+        int lexFrom = first > 0 ? end(first - 1) : 0;
+        int oldCount = tokens.size();
+        int next = first;
+        while (next < oldCount && starts[next] < offset + length) next++;
+
+        ColumnarLexer lexer = new ColumnarLexer(text, lexFrom, lineOf(lexFrom), errors);
+        TokenStream stream = lexer.tokens();
+        int resync = oldCount;
+        boolean more = true;
+        while (more) {
+            more = lexer.scanNext();
+            int start = stream.start(stream.size() - 1);
+            while (next < oldCount && starts[next] + shift < start) next++;
+            if (next < oldCount && starts[next] + shift == start) {
+                resync = next;
+                break;
+            }
+        }
+        int fresh = resync == oldCount ? stream.size() : stream.size() - 1;
+        replaceTokens(first, resync, stream, fresh, shift);
+
+        int delta = fresh - (resync - first);
+        if (fresh == 0 && resync == first) return;
+        shiftSegments(root, first, resync, delta);
+
+        int damageEnd = first + fresh;
+        reuseFrom = damageEnd;
+        Segment owner = innermostOwner(first, damageEnd);
+        int from = first;
+        int to = damageEnd;
+        while (!reparse(owner, from, to)) {
+            from = owner.from;
+            to = owner.to;
+            owner = owner.parent;
+        }
+    }
+
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(mid) < offset) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    private int end(int index) {
+        return starts[index] + tokens.get(index).lexeme.length();
+    }
+
+    private void replaceTokens(int first, int resync, TokenStream stream, int fresh, int shift) {
+        int oldCount = tokens.size();
+        int newCount = oldCount - (resync - first) + fresh;
+        int[] target = newCount > starts.length ? new int[newCount + (newCount >> 1)] : starts;
+        if (target != starts) System.arraycopy(starts, 0, target, 0, first);
+        System.arraycopy(starts, resync, target, first + fresh, oldCount - resync);
+        for (int i = first + fresh; i < newCount; i++) target[i] += shift;
+        List<Token> created = new ArrayList<>(fresh);
+        for (int i = 0; i < fresh; i++) {
+            target[first + i] = stream.start(i);
+            created.add(stream.token(i));
+        }
+        starts = target;
+        List<Token> damaged = tokens.subList(first, resync);
+        damaged.clear();
+        damaged.addAll(created);
+    }
+
+    // Moves segment boundaries to the new token indexes. A segment starting inside the replaced
+    // tokens is marked with -1 so it can never be mistaken for a resync point. Segments ending before
+    // the damage are untouched and skipped, segments after it hand the shift to their children lazily.
+    private void shiftSegments(Segment segment, int first, int resync, int delta) {
+        if (segment.from >= resync && segment != root) {
+            segment.from += delta;
+            segment.to += delta;
+            segment.pending += delta;
+            return;
+        }
+        if (segment.from >= first && segment != root) segment.from = -1;
+        if (segment.to >= resync) segment.to += delta;
+        else if (segment.to > first) segment.to = resync + delta;
+        List<Segment> children = segment.children();
+        if (children != null) {
+            for (int i = firstEndingAfter(children, first); i < children.size(); i++) {
+                shiftSegments(children.get(i), first, resync, delta);
+            }
+        }
+    }
+
+    // Children are ordered and their ends never decrease, even across the -1 marks
+    private static int firstEndingAfter(List<Segment> children, int index) {
+        int low = 0;
+        int high = children.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (children.get(mid).to <= index) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    // Deepest game or fn whose body strictly contains the damaged tokens, leaving its braces intact
+    private Segment innermostOwner(int from, int to) {
+        Segment owner = root;
+        while (true) {
+            List<Segment> children = owner.children();
+            int index = firstEndingAfter(children, from);
+            if (index == children.size()) return owner;
+            Segment child = children.get(index);
+            if (child.stmt == null || child.children == null || child.from < 0 || child.from >= from
+                    || bodyStart(child) > from || to > child.to - 1) {
+                return owner;
+            }
+            owner = child;
+        }
+    }
+
+    private int bodyStart(Segment segment) {
+        int index = segment.from;
+        int last = tokens.size() - 1;
+        while (index < last && tokens.get(index).type != TokenType.LEFT_BRACE) index++;
+        return index + 1;
+    }
+
+    // Re-parses owner's statements from the first one touching [from, to) until the parse lands on an
+    // untouched statement or the end of the body. False if the body's shape changed, e.g. a '}' was
+    // added or removed, in which case the owner itself has to be re-parsed by its parent.
+    private boolean reparse(Segment owner, int from, int to) {
+        List<Segment> children = owner.children();
+        int close = owner == root ? tokens.size() - 1 : owner.to - 1;
+        int first = firstEndingAfter(children, from - 1);
+        int position = from;
+        if (first < children.size() && children.get(first).from >= 0) {
+            position = Math.min(position, children.get(first).from);
+        }
+
+        Parser parser = new Parser(TokenSource.of(tokens), errors);
+        parser.setBlockListener((block, start, end, stmt) ->
+                blocks.computeIfAbsent(block, b -> new ArrayList<>()).add(new Parsed(start, end, stmt)));
+        parser.setStatementCache(this::reusable);
+        List<Segment> parsed = new ArrayList<>();
+        int resume = first;
+        while (true) {
+            while (resume < children.size() && children.get(resume).from < position) resume++;
+            if (position >= to && resume < children.size() && children.get(resume).from == position) break;
+            if (position == close) {
+                resume = children.size();
+                break;
+            }
+            if (position > close || (owner != root && tokens.get(position).type == TokenType.RIGHT_BRACE)) {
+                blocks.clear();
+                nested = null;
+                reused.clear();
+                adopted.clear();
+                adoptedBy.clear();
+                return false;
+            }
+            int start = position;
+            ASTNode.Stmt stmt = parser.parseStatementAt(position);
+            position = parser.position();
+            parsed.add(segment(start, position, stmt, owner));
+            blocks.clear();
+            nested = null;
+            reused.clear();
+        }
+
+        for (int i = 0; i < adopted.size(); i++) adopted.get(i).parent = adoptedBy.get(i);
+        adopted.clear();
+        adoptedBy.clear();
+        List<Segment> replaced = children.subList(first, resume);
+        replaced.clear();
+        replaced.addAll(parsed);
+        List<ASTNode.Stmt> body = owner == root ? statements : bodyOf(owner.stmt);
+        body.clear();
+        for (Segment child : children) {
+            if (child.stmt != null) body.add(child.stmt);
+        }
+        return true;
+    }
+
+    // Old statement starting at index, if every token it was parsed from lies after the damage. The
+    // statement's end also depends on the token following it, which then lies after the damage too.
+    private Segment reusable(int index) {
+        if (index < reuseFrom) return null;
+        Segment owner = root;
+        while (owner.children != null) {
+            List<Segment> children = owner.children();
+            int low = firstEndingAfter(children, index);
+            if (low == children.size()) return null;
+            Segment child = children.get(low);
+            if (child.from == index) {
+                reused.put(index, child);
+                return child;
+            }
+            if (child.from < 0 || child.from > index) return null;
+            owner = child;
+        }
+        return null;
+    }
+
+    private Segment segment(int from, int to, ASTNode.Stmt stmt, Segment parent) {
+        Segment old = reused.get(from);
+        if (old != null && old.to == to && old.stmt == stmt) {
+            adopted.add(old);
+            adoptedBy.add(parent);
+            return old;
+        }
+        Segment segment = new Segment(from, to, stmt, parent);
+        List<ASTNode.Stmt> body = bodyOf(stmt);
+        if (body != null) {
+            segment.children = new ArrayList<>();
+            for (Parsed child : blocks.getOrDefault(body, Collections.emptyList())) {
+                segment.children.add(segment(child.start, child.end, child.stmt, segment));
+            }
+        } else if (stmt == null && !blocks.isEmpty()) {
+            // A statement that failed to parse can still hold well-formed ones, e.g. every function after
+            // an unclosed brace. The outermost are kept so the next re-parse can reuse them once the
+            // brace is fixed; nothing else looks inside an erroneous statement.
+            if (nested == null) {
+                nested = new ArrayList<>();
+                for (List<Parsed> block : blocks.values()) nested.addAll(block);
+                nested.sort(Comparator.comparingInt(p -> p.start));
+            }
+            segment.children = new ArrayList<>();
+            int low = 0;
+            int high = nested.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (nested.get(mid).start < from) low = mid + 1; else high = mid;
+            }
+            int end = from;
+            for (int i = low; i < nested.size() && nested.get(i).start < to; i++) {
+                Parsed child = nested.get(i);
+                if (child.start < end || child.end > to || (child.start == from && child.end == to)) continue;
+                segment.children.add(segment(child.start, child.end, child.stmt, segment));
+                end = child.end;
+            }
+        }
+        return segment;
+    }
+
+    private static List<ASTNode.Stmt> bodyOf(ASTNode.Stmt stmt) {
+        if (stmt instanceof ASTNode.GameStart) return ((ASTNode.GameStart) stmt).body;
+        if (stmt instanceof ASTNode.Function) return ((ASTNode.Function) stmt).body();
+        return null;
+    }
+
+    private void updateNewlines(int offset, int length, String replacement) {
+        int low = lineOf(offset) - 1;
+        int high = lineOf(offset + length) - 1;
+        int shift = replacement.length() - length;
+        int added = 0;
+        for (int i = 0; i < replacement.length(); i++) {
+            if (replacement.charAt(i) == '\n') added++;
+        }
+        int tail = newlineCount - high;
+        int count = low + added + tail;
+        int[] target = count > newlines.length ? new int[count + (count >> 1)] : newlines;
+        if (target != newlines) System.arraycopy(newlines, 0, target, 0, low);
+        System.arraycopy(newlines, high, target, low + added, tail);
+        for (int i = low + added; i < count; i++) target[i] += shift;
+        newlines = target;
+        newlineCount = low;
+        indexNewlines(replacement, offset, low);
+        newlineCount = count;
+    }
+
+    // Writes the offsets of source's newlines, shifted by base, from newlines[index] on
+    private void indexNewlines(String source, int base, int index) {
+        for (int i = source.indexOf('\n'); i >= 0; i = source.indexOf('\n', i + 1)) {
+            if (index == newlines.length) newlines = Arrays.copyOf(newlines, index * 2);
+            newlines[index++] = base + i;
+        }
+        newlineCount = Math.max(newlineCount, index);
+    }
+}
@@ -0,0 +1,154 @@
+// src/parser/KuromicFormat.java
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// The .kuromic precompiled script: a FlatAST written out as-is, so loading one is a bulk copy instead of a
+// lex and parse. Big-endian throughout.
+//   header, 64 bytes: magic "KRMC", format version, hash of the engine version, SHA-256 of the source
+//                     (32 bytes), arena length in ints, offset of the statement list, node count,
+//                     constant count, CRC32 of the body
+//   body:             the arena ints, then each constant as a tag byte: 'S' plus int length plus UTF-8
+//                     bytes, or 'T' / 'F' for booleans
+// The header is checked before anything else is read. A file from another format or engine version, for
+// another source, or with a damaged body reads as null, and the caller parses the source again.
+public final class KuromicFormat {
+    public static final String ENGINE_VERSION = "1.0.0";
+    public static final String EXTENSION = ".kuromic";
+
+    // Bump whenever FlatAST's node layout or this file layout changes
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x4B524D43;
+    private static final int HEADER_SIZE = 64;
+    private static final int HASH_SIZE = 32;
+
+    private static final byte STRING = 'S';
+    private static final byte TRUE = 'T';
+    private static final byte FALSE = 'F';
+
+    private KuromicFormat() {
+    }
+
+    public static byte[] encode(FlatAST program, byte[] sourceHash) {
+        int[] arena = program.arena();
+        Object[] constants = program.constants();
+        byte[][] strings = new byte[constants.length][];
+        int constantBytes = 0;
+        for (int i = 0; i < constants.length; i++) {
+            if (constants[i] instanceof String) {
+                strings[i] = ((String) constants[i]).getBytes(StandardCharsets.UTF_8);
+                constantBytes += 1 + 4 + strings[i].length;
+            } else if (constants[i] instanceof Boolean) {
+                constantBytes += 1;
+            } else {
+                throw new RuntimeException("Can't serialize constant " + constants[i]);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + arena.length * 4 + constantBytes);
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().put(arena);
+        buffer.position(HEADER_SIZE + arena.length * 4);
+        for (int i = 0; i < constants.length; i++) {
+            if (strings[i] != null) {
+                buffer.put(STRING).putInt(strings[i].length).put(strings[i]);
+            } else {
+                buffer.put((Boolean) constants[i] ? TRUE : FALSE);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.capacity() - HEADER_SIZE);
+        buffer.position(0);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(ENGINE_VERSION.hashCode());
+        buffer.put(sourceHash, 0, HASH_SIZE);
+        buffer.putInt(arena.length).putInt(program.statements()).putInt(program.nodeCount())
+                .putInt(constants.length).putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    // Writes to a temporary file first, so a concurrent reader sees the old file or the new one, never a torn one
+    public static void write(FlatAST program, byte[] sourceHash, Path path) throws IOException {
+        // Each writer gets its own temporary file, so daemon threads storing the same entry can't interleave
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, encode(program, sourceHash));
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Maps the file rather than reading it onto the heap; the arena is bulk-copied out of the mapping.
+    // sourceHash may be null to accept a program for any source.
+    public static FlatAST read(Path path, byte[] sourceHash) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buffer, sourceHash);
+        }
+    }
+
+    public static FlatAST decode(ByteBuffer buffer, byte[] sourceHash) {
+        if (buffer.remaining() < HEADER_SIZE) return null;
+        ByteBuffer in = buffer.slice();
+        if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION || in.getInt() != ENGINE_VERSION.hashCode()) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_SIZE];
+        in.get(hash);
+        if (sourceHash != null && !Arrays.equals(hash, sourceHash)) return null;
+        int arenaLength = in.getInt();
+        int statements = in.getInt();
+        int nodes = in.getInt();
+        int constantCount = in.getInt();
+        int checksum = in.getInt();
+        if (arenaLength < 0 || constantCount < 0 || (long) arenaLength * 4 > in.capacity() - HEADER_SIZE) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate().position(HEADER_SIZE));
+        if ((int) crc.getValue() != checksum) return null;
+
+        int[] arena = new int[arenaLength];
+        in.position(HEADER_SIZE);
+        in.asIntBuffer().get(arena);
+        in.position(HEADER_SIZE + arenaLength * 4);
+        Object[] constants = new Object[constantCount];
+        try {
+            for (int i = 0; i < constantCount; i++) {
+                byte tag = in.get();
+                if (tag == STRING) {
+                    byte[] bytes = new byte[in.getInt()];
+                    in.get(bytes);
+                    constants[i] = new String(bytes, StandardCharsets.UTF_8);
+                } else if (tag == TRUE || tag == FALSE) {
+                    constants[i] = tag == TRUE;
+                } else {
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Lengths that run past the end; the checksum makes this unlikely but not impossible
+            return null;
+        }
+        return new FlatAST(arena, constants, statements, nodes);
+    }
+}
@@ -0,0 +1,73 @@
+// src/parser/ModuleCache.java
+package parser;
+
+import lexer.ColumnarLexer;
+import lexer.ErrorReporter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Parsed modules by canonical path, each kept with the hash of the source it was parsed from. A module is
+// re-read and re-hashed on every lookup, but only re-parsed when its hash changed; a miss here is tried
+// against the on-disk ProgramCache before parsing. Safe to share between threads and between runs.
+public final class ModuleCache {
+    private static final class Entry {
+        final byte[] hash;
+        final FlatAST program;
+
+        Entry(byte[] hash, FlatAST program) {
+            this.hash = hash;
+            this.program = program;
+        }
+    }
+
+    private final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final ProgramCache disk;
+
+    // disk may be null to keep modules in memory only
+    public ModuleCache(ProgramCache disk) {
+        this.disk = disk;
+    }
+
+    // path must be canonical, as from Path.toRealPath, so one module has one entry however it is imported
+    public FlatAST get(Path path) throws IOException {
+        byte[] source = Files.readAllBytes(path);
+        byte[] hash = ProgramCache.hash(source);
+        Entry entry = entries.get(path);
+        if (entry != null && Arrays.equals(entry.hash, hash)) return entry.program;
+
+        FlatAST program = null;
+        if (disk != null) {
+            try {
+                program = disk.load(hash);
+            } catch (IOException e) {
+                // An unreadable entry is just a miss
+            }
+        }
+        if (program == null) {
+            program = parse(path, new String(source));
+            if (disk != null) {
+                try {
+                    disk.store(hash, program);
+                } catch (IOException e) {
+                    System.err.println("⚠️  Could not write parse cache: " + e.getMessage());
+                }
+            }
+        }
+        entries.put(path, new Entry(hash, program));
+        return program;
+    }
+
+    // Modules are parsed on pool threads, so their errors travel in the exception to whoever asked for them
+    private static FlatAST parse(Path path, String source) {
+        String file = path.getFileName().toString();
+        StringBuilder report = new StringBuilder();
+        ErrorReporter errors = (line, message) ->
+                report.append("\n[").append(file).append(", line ").append(line).append("] ").append(message);
+        FlatAST program = new Parser(new ColumnarLexer(source, 0, 1, errors).scanTokens(), errors).parseFlat();
+        if (report.length() > 0) throw new RuntimeException("Syntax errors in " + path + report);
+        return program;
+    }
+}
@@ -0,0 +1,144 @@
+// src/parser/ModuleGraph.java
+package parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every module a script reaches through its imports, and what each import resolved to. Only top-level
+// imports count, so the graph is known before anything runs. Modules are parsed in parallel as they are
+// discovered: each one's imports are queued as soon as its own parse is done, so independent branches of
+// the import tree never wait on each other, and a module imported from several places is parsed once.
+public final class ModuleGraph {
+    private final Path root;
+    private final Map<Path, FlatAST> programs;
+    private final Map<Path, Map<String, Path>> imports;
+    // Reachable from the root, depth-first in import order, so output built from it is deterministic
+    private final List<Path> modules = new ArrayList<>();
+
+    public ModuleGraph(Path root, Map<Path, FlatAST> programs, Map<Path, Map<String, Path>> imports) {
+        this.root = root;
+        this.programs = programs;
+        this.imports = imports;
+        Set<Path> visited = new HashSet<>();
+        visited.add(root);
+        ArrayDeque<Path> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Path module = pending.pop();
+            if (!module.equals(root)) modules.add(module);
+            List<Path> targets = new ArrayList<>(imports.getOrDefault(module, Map.of()).values());
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                if (visited.add(targets.get(i))) pending.push(targets.get(i));
+            }
+        }
+    }
+
+    // Loads everything script imports, given the import paths of its top level (see imports())
+    public static ModuleGraph load(Path script, List<String> paths, ModuleCache cache) throws IOException {
+        Path root = script.toRealPath();
+        ConcurrentHashMap<Path, CompletableFuture<FlatAST>> loading = new ConcurrentHashMap<>();
+        ConcurrentHashMap<Path, Map<String, Path>> imports = new ConcurrentHashMap<>();
+        imports.put(root, resolve(root, paths, cache, loading, imports));
+
+        // A module's imports are queued before its own future completes, so once every future seen so far
+        // is done and no new ones appeared meanwhile, the whole graph is loaded
+        int seen;
+        do {
+            seen = loading.size();
+            try {
+                CompletableFuture.allOf(loading.values().toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        } while (loading.size() != seen);
+        if (loading.containsKey(root)) {
+            throw new RuntimeException("A module imports the main script " + root.getFileName() + "; move what it shares into a module");
+        }
+
+        Map<Path, FlatAST> programs = new HashMap<>();
+        for (Map.Entry<Path, CompletableFuture<FlatAST>> module : loading.entrySet()) {
+            programs.put(module.getKey(), module.getValue().join());
+        }
+        return new ModuleGraph(root, programs, imports);
+    }
+
+    private static Map<String, Path> resolve(Path importer, List<String> paths, ModuleCache cache,
+                                             ConcurrentHashMap<Path, CompletableFuture<FlatAST>> loading,
+                                             ConcurrentHashMap<Path, Map<String, Path>> imports) throws IOException {
+        Map<String, Path> targets = new LinkedHashMap<>();
+        for (String path : paths) {
+            Path target = resolveImport(importer, path);
+            targets.put(path, target);
+            loading.computeIfAbsent(target, module -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    FlatAST program = cache.get(module);
+                    imports.put(module, resolve(module, imports(program), cache, loading, imports));
+                    return program;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        return targets;
+    }
+
+    // The canonical path of the module an import in importer names; importer must be canonical too
+    public static Path resolveImport(Path importer, String path) throws IOException {
+        Path target = importer.getParent().resolve(path);
+        if (!Files.isRegularFile(target)) {
+            throw new RuntimeException("Module not found: " + path + " (imported by " + importer.getFileName() + ")");
+        }
+        return target.toRealPath();
+    }
+
+    // Paths of the top-level imports of a program
+    public static List<String> imports(List<ASTNode.Stmt> statements) {
+        List<String> paths = new ArrayList<>();
+        for (ASTNode.Stmt stmt : statements) {
+            if (stmt instanceof ASTNode.Import) paths.add(((ASTNode.Import) stmt).path);
+        }
+        return paths;
+    }
+
+    public static List<String> imports(FlatAST program) {
+        List<String> paths = new ArrayList<>();
+        int statements = program.statements();
+        for (int i = 0; i < program.count(statements); i++) {
+            int stmt = program.item(statements, i);
+            if (program.kind(stmt) == FlatAST.IMPORT) paths.add(program.string(program.operand(stmt, 1)));
+        }
+        return paths;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    // Every imported module, not including the root
+    public List<Path> modules() {
+        return modules;
+    }
+
+    public FlatAST program(Path module) {
+        return programs.get(module);
+    }
+
+    // Each import path of importer and the module it resolved to, in source order
+    public Map<String, Path> imports(Path importer) {
+        return Collections.unmodifiableMap(imports.getOrDefault(importer, Map.of()));
+    }
+
+    // The module an import in importer refers to, or null when that import isn't in the graph
+    public Path resolve(Path importer, String path) {
+        Map<String, Path> targets = imports.get(importer);
+        return targets != null ? targets.get(path) : null;
+    }
+}
@@ -1,16 +1,152 @@
 // src/parser/Parser.java
 package parser;
 
+import lexer.ErrorReporter;
+import lexer.Lexer;
 import lexer.Token;
+import lexer.TokenSource;
 import lexer.TokenType;
 import java.util.*;
 
 public class Parser {
-    private final List<Token> tokens;
+    // Told where each statement of a block starts and ends (token indexes, end exclusive); stmt is null
+    // after a syntax error. IncrementalDocument uses it to re-parse one statement of a body on its own.
+    public interface BlockListener {
+        void statement(List<ASTNode.Stmt> block, int start, int end, ASTNode.Stmt stmt);
+    }
+
+    // Hands back statements from an earlier parse whose tokens are unchanged, so the parser can skip them
+    public interface StatementCache {
+        Parsed lookup(int index);
+    }
+
+    public interface Parsed {
+        ASTNode.Stmt statement();
+
+        int end();
+    }
+
+    private final TokenSource tokens;
+    private final ErrorReporter errors;
+    private BlockListener blockListener;
+    private StatementCache statementCache;
     private int current = 0;
+    // Slot of each field name across the records declared so far, -1 where two records disagree.
+    // Replaced rather than updated, so a deferred function body can keep the map as of its declaration.
+    private Map<String, Integer> fieldSlots = new HashMap<>();
+    private boolean lazyFunctionBodies = false;
+
+    // Expression parsing is table-driven: everything an expression can start with or continue with is
+    // looked up by TokenType ordinal, so a literal costs one array load and one call.
+    private interface PrefixParselet {
+        // Called with the token already consumed
+        ASTNode.Expr parse(Parser parser);
+    }
+
+    private interface PostfixParselet {
+        ASTNode.Expr parse(Parser parser, ASTNode.Expr left);
+    }
+
+    // Binding power of a token in operator position; 0 means it ends the expression
+    private static final int PREC_LOWEST = 1;
+    private static final int PREC_OR = 1;
+    private static final int PREC_AND = 2;
+    private static final int PREC_EQUALITY = 3;
+    private static final int PREC_COMPARISON = 4;
+    private static final int PREC_TERM = 5;
+    private static final int PREC_FACTOR = 6;
+    private static final int PREC_UNARY = 7;
+    private static final int PREC_POSTFIX = 8;
+
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+    private static final boolean[] UNARY_OPERATOR = new boolean[TokenType.values().length];
+    private static final PrefixParselet[] PREFIX = new PrefixParselet[TokenType.values().length];
+    private static final PostfixParselet[] POSTFIX = new PostfixParselet[TokenType.values().length];
+
+    static {
+        PREFIX[TokenType.TRUE.ordinal()] = parser -> new ASTNode.Literal(true);
+        PREFIX[TokenType.FALSE.ordinal()] = parser -> new ASTNode.Literal(false);
+        PREFIX[TokenType.NULL.ordinal()] = parser -> new ASTNode.Literal(null);
+        PREFIX[TokenType.NUMBER.ordinal()] = parser -> new ASTNode.Literal(parser.previous().literal);
+        PREFIX[TokenType.STRING.ordinal()] = parser -> new ASTNode.Literal(parser.previous().literal);
+        PREFIX[TokenType.IDENTIFIER.ordinal()] = parser -> new ASTNode.Variable(parser.previous());
+        PREFIX[TokenType.LEFT_BRACKET.ordinal()] = Parser::arrayLiteral;
+        PREFIX[TokenType.LEFT_BRACE.ordinal()] = Parser::mapLiteral;
+
+        UNARY_OPERATOR[TokenType.BANG.ordinal()] = true;
+        UNARY_OPERATOR[TokenType.MINUS.ordinal()] = true;
+        UNARY_OPERATOR[TokenType.NOT.ordinal()] = true;
+
+        PRECEDENCE[TokenType.OR.ordinal()] = PREC_OR;
+        PRECEDENCE[TokenType.AND.ordinal()] = PREC_AND;
+        PRECEDENCE[TokenType.BANG_EQUAL.ordinal()] = PREC_EQUALITY;
+        PRECEDENCE[TokenType.EQUAL_EQUAL.ordinal()] = PREC_EQUALITY;
+        PRECEDENCE[TokenType.GREATER.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.GREATER_EQUAL.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.LESS.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.LESS_EQUAL.ordinal()] = PREC_COMPARISON;
+        PRECEDENCE[TokenType.MINUS.ordinal()] = PREC_TERM;
+        PRECEDENCE[TokenType.PLUS.ordinal()] = PREC_TERM;
+        PRECEDENCE[TokenType.SLASH.ordinal()] = PREC_FACTOR;
+        PRECEDENCE[TokenType.STAR.ordinal()] = PREC_FACTOR;
+        PRECEDENCE[TokenType.PERCENT.ordinal()] = PREC_FACTOR;
+
+        postfix(TokenType.LEFT_PAREN, Parser::call);
+        postfix(TokenType.LEFT_BRACKET, Parser::index);
+        postfix(TokenType.DOT, Parser::field);
+    }
+
+    private static void postfix(TokenType type, PostfixParselet parselet) {
+        PRECEDENCE[type.ordinal()] = PREC_POSTFIX;
+        POSTFIX[type.ordinal()] = parselet;
+    }
+
+    // Operator stack for expression(), kept as parallel arrays and reused across expressions
+    private static final byte FRAME_UNARY = 0;
+    private static final byte FRAME_BINARY = 1;
+    private static final byte FRAME_GROUP = 2;
+    private byte[] frameKinds = new byte[16];
+    private int[] frameFloors = new int[16];
+    private ASTNode.Expr[] frameOperands = new ASTNode.Expr[16];
+    private Token[] frameOperators = new Token[16];
+    private int frames = 0;
 
     public Parser(List<Token> tokens) {
+        this(TokenSource.of(tokens));
+    }
+
+    public Parser(TokenSource tokens) {
+        this(tokens, ErrorReporter.STDERR);
+    }
+
+    public Parser(TokenSource tokens, ErrorReporter errors) {
         this.tokens = tokens;
+        this.errors = errors;
+    }
+
+    public void setBlockListener(BlockListener blockListener) {
+        this.blockListener = blockListener;
+    }
+
+    public void setStatementCache(StatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    // Pre-parse mode: function bodies are only brace-matched, and parsed when ASTNode.Function.body() is
+    // first called. Syntax errors inside a body surface then. Needs a token source that keeps every token,
+    // so not a StreamingLexer.
+    public void setLazyFunctionBodies(boolean lazyFunctionBodies) {
+        this.lazyFunctionBodies = lazyFunctionBodies;
+    }
+
+    // Parses the single statement starting at token index; position() is where it ended
+    public ASTNode.Stmt parseStatementAt(int index) {
+        current = index;
+        return statement();
+    }
+
+    public int position() {
+        return current;
     }
 
     public List<ASTNode.Stmt> parse() {
@@ -24,7 +160,27 @@ public class Parser {
         return statements;
     }
 
+    // parse() into the flat encoding; each top-level statement is encoded as soon as it is parsed,
+    // so the object tree of only one statement is alive at a time
+    public FlatAST parseFlat() {
+        FlatAST ast = new FlatAST();
+        while (!isAtEnd()) {
+            ASTNode.Stmt stmt = statement();
+            if (stmt != null) {
+                ast.addStatement(stmt);
+            }
+        }
+        return ast.finish();
+    }
+
     private ASTNode.Stmt statement() {
+        if (statementCache != null) {
+            Parsed parsed = statementCache.lookup(current);
+            if (parsed != null) {
+                current = parsed.end();
+                return parsed.statement();
+            }
+        }
         try {
             if (match(TokenType.GAME)) return gameStatement();
             if (match(TokenType.LET)) return letStatement();
@@ -38,13 +194,21 @@ public class Parser {
             if (match(TokenType.SHOW)) return showStatement();
             if (match(TokenType.PLAY)) return playStatement();
             if (match(TokenType.PRINT)) return printStatement();
+            if (match(TokenType.WAIT)) return waitStatement();
+            if (match(TokenType.YIELD)) return yieldStatement();
+            if (match(TokenType.SPAWN)) return spawnStatement();
+            if (match(TokenType.AFTER)) return timerStatement(false);
+            if (match(TokenType.EVERY)) return timerStatement(true);
+            if (match(TokenType.CANCEL)) return cancelStatement();
+            if (match(TokenType.RECORD)) return recordStatement();
+            if (match(TokenType.IMPORT)) return importStatement();
             if (match(TokenType.LEFT_BRACE)) return new ASTNode.Block(block());
 
             if (check(TokenType.IDENTIFIER)) {
                 Token name = peek();
-                if (peekNext().type == TokenType.EQUAL) {
-                    advance();
-                    advance();
+                if (peekNextType() == TokenType.EQUAL) {
+                    skip();
+                    skip();
                     ASTNode.Expr value = expression();
                     consumeStatementEnd();
                     return new ASTNode.Assignment(name, value);
@@ -61,14 +225,14 @@ public class Parser {
     private ASTNode.Stmt gameStatement() {
         int width = (int) ((Number) consume(TokenType.NUMBER, "Expect width").literal).doubleValue();
         int height = (int) ((Number) consume(TokenType.NUMBER, "Expect height").literal).doubleValue();
-        consume(TokenType.LEFT_BRACE, "Expect '{'");
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
         List<ASTNode.Stmt> body = block();
         return new ASTNode.GameStart(width, height, body);
     }
 
     private ASTNode.Stmt letStatement() {
         Token name = consume(TokenType.IDENTIFIER, "Expect variable name");
-        consume(TokenType.EQUAL, "Expect '='");
+        expect(TokenType.EQUAL, "Expect '='");
         ASTNode.Expr initializer = expression();
         consumeStatementEnd();
         return new ASTNode.Let(name, initializer);
@@ -76,19 +240,74 @@ public class Parser {
 
     private ASTNode.Stmt functionStatement() {
         Token name = consume(TokenType.IDENTIFIER, "Expect function name");
-        consume(TokenType.LEFT_PAREN, "Expect '('");
+        expect(TokenType.LEFT_PAREN, "Expect '('");
         List<Token> params = new ArrayList<>();
         if (!check(TokenType.RIGHT_PAREN)) {
             do {
                 params.add(consume(TokenType.IDENTIFIER, "Expect parameter name"));
             } while (match(TokenType.COMMA));
         }
-        consume(TokenType.RIGHT_PAREN, "Expect ')'");
-        consume(TokenType.LEFT_BRACE, "Expect '{'");
+        expect(TokenType.RIGHT_PAREN, "Expect ')'");
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
+        if (lazyFunctionBodies) return new ASTNode.Function(name, params, deferBody());
         List<ASTNode.Stmt> body = block();
         return new ASTNode.Function(name, params, body);
     }
 
+    // Skips past the brace closing a body. The returned parse reads only the tokens inside the braces and
+    // recovers from errors the way parse() does, so a broken statement is dropped from the body without
+    // affecting the code after the function.
+    private ASTNode.Function.LazyBody deferBody() {
+        int start = current;
+        int depth = 1;
+        while (depth > 0) {
+            TokenType type = tokens.type(current);
+            if (type == TokenType.EOF) throw error("Expect '}'");
+            if (type == TokenType.LEFT_BRACE) {
+                depth++;
+            } else if (type == TokenType.RIGHT_BRACE) {
+                depth--;
+            }
+            current++;
+        }
+        TokenSource body = new BoundedTokens(tokens, current - 1);
+        ErrorReporter reporter = errors;
+        Map<String, Integer> slots = fieldSlots;
+        return () -> {
+            Parser parser = new Parser(body, reporter);
+            parser.fieldSlots = slots;
+            parser.lazyFunctionBodies = true;
+            parser.current = start;
+            return parser.parse();
+        };
+    }
+
+    // The tokens before end, followed by EOF
+    private static final class BoundedTokens implements TokenSource {
+        private final TokenSource tokens;
+        private final int end;
+
+        BoundedTokens(TokenSource tokens, int end) {
+            this.tokens = tokens;
+            this.end = end;
+        }
+
+        @Override
+        public TokenType type(int index) {
+            return index < end ? tokens.type(index) : TokenType.EOF;
+        }
+
+        @Override
+        public int line(int index) {
+            return tokens.line(Math.min(index, end - 1));
+        }
+
+        @Override
+        public Token token(int index) {
+            return index < end ? tokens.token(index) : new Token(TokenType.EOF, "", null, line(index));
+        }
+    }
+
     private ASTNode.Stmt returnStatement() {
         ASTNode.Expr value = null;
         if (!check(TokenType.SEMICOLON) && !check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
@@ -99,40 +318,40 @@ public class Parser {
     }
 
     private ASTNode.Stmt ifStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '('");
+        expect(TokenType.LEFT_PAREN, "Expect '('");
         ASTNode.Expr condition = expression();
-        consume(TokenType.RIGHT_PAREN, "Expect ')'");
-        consume(TokenType.LEFT_BRACE, "Expect '{'");
+        expect(TokenType.RIGHT_PAREN, "Expect ')'");
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
         List<ASTNode.Stmt> thenBranch = block();
         List<ASTNode.Stmt> elseBranch = new ArrayList<>();
         if (match(TokenType.ELSE)) {
-            consume(TokenType.LEFT_BRACE, "Expect '{'");
+            expect(TokenType.LEFT_BRACE, "Expect '{'");
             elseBranch = block();
         }
         return new ASTNode.If(condition, thenBranch, elseBranch);
     }
 
     private ASTNode.Stmt whileStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '('");
+        expect(TokenType.LEFT_PAREN, "Expect '('");
         ASTNode.Expr condition = expression();
-        consume(TokenType.RIGHT_PAREN, "Expect ')'");
-        consume(TokenType.LEFT_BRACE, "Expect '{'");
+        expect(TokenType.RIGHT_PAREN, "Expect ')'");
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
         List<ASTNode.Stmt> body = block();
         return new ASTNode.While(condition, body);
     }
 
     private ASTNode.Stmt forStatement() {
         Token variable = consume(TokenType.IDENTIFIER, "Expect variable name");
-        consume(TokenType.IN, "Expect 'in'");
+        expect(TokenType.IN, "Expect 'in'");
         ASTNode.Expr iterable = expression();
-        consume(TokenType.LEFT_BRACE, "Expect '{'");
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
         List<ASTNode.Stmt> body = block();
         return new ASTNode.For(variable, iterable, body);
     }
 
     private ASTNode.Stmt loadStatement() {
         Token name = consume(TokenType.IDENTIFIER, "Expect variable name");
-        consume(TokenType.COLON, "Expect ':'");
+        expect(TokenType.COLON, "Expect ':'");
         String path = (String) consume(TokenType.STRING, "Expect file path").literal;
         consumeStatementEnd();
         return new ASTNode.Load(name, path);
@@ -162,6 +381,15 @@ public class Parser {
             args.add(new ASTNode.Variable(imgName));
             args.add(expression());
             args.add(expression());
+            return imageTransform(args);
+        } else if ("tilemap".equals(type)) {
+            Token mapName = consume(TokenType.IDENTIFIER, "Expect tilemap name");
+            args.add(new ASTNode.Variable(mapName));
+            args.add(expression());
+            args.add(expression());
+        } else if ("particles".equals(type)) {
+            Token systemName = consume(TokenType.IDENTIFIER, "Expect particle system name");
+            args.add(new ASTNode.Variable(systemName));
         } else if ("line".equals(type)) {
             args.add(expression());
             args.add(expression());
@@ -174,6 +402,39 @@ public class Parser {
         return new ASTNode.Draw(type, args, color);
     }
 
+    // draw image NAME x y [rotate DEG] [scale S] [flip "x"|"y"|"xy"] [tint "color"]
+    private ASTNode.Stmt imageTransform(List<ASTNode.Expr> args) {
+        ASTNode.Expr rotation = null;
+        ASTNode.Expr scale = null;
+        boolean flipX = false;
+        boolean flipY = false;
+        String tint = null;
+
+        while (check(TokenType.IDENTIFIER) && peekNextType() != TokenType.EQUAL) {
+            String modifier = peek().lexeme.toLowerCase();
+            if ("rotate".equals(modifier)) {
+                skip();
+                rotation = expression();
+            } else if ("scale".equals(modifier)) {
+                skip();
+                scale = expression();
+            } else if ("flip".equals(modifier)) {
+                skip();
+                String axis = ((String) consume(TokenType.STRING, "Expect flip axis").literal).toLowerCase();
+                flipX = axis.contains("x");
+                flipY = axis.contains("y");
+            } else if ("tint".equals(modifier)) {
+                skip();
+                tint = (String) consume(TokenType.STRING, "Expect tint color").literal;
+            } else {
+                break;
+            }
+        }
+
+        consumeStatementEnd();
+        return new ASTNode.Draw("image", args, "black", rotation, scale, flipX, flipY, tint);
+    }
+
     private ASTNode.Stmt showStatement() {
         String text = (String) consume(TokenType.STRING, "Expect text").literal;
         ASTNode.Expr x = expression();
@@ -198,8 +459,106 @@ public class Parser {
         return new ASTNode.Print(expr);
     }
 
+    private ASTNode.Stmt waitStatement() {
+        if (check(TokenType.IDENTIFIER) && "frame".equals(peek().lexeme)) {
+            skip();
+            consumeStatementEnd();
+            return new ASTNode.Wait(null);
+        }
+        ASTNode.Expr millis = expression();
+        consumeStatementEnd();
+        return new ASTNode.Wait(millis);
+    }
+
+    private ASTNode.Stmt yieldStatement() {
+        consumeStatementEnd();
+        return new ASTNode.Yield();
+    }
+
+    private ASTNode.Stmt spawnStatement() {
+        ASTNode.Expr expr = expression();
+        if (!(expr instanceof ASTNode.Call)) throw error("Expect a function call after 'spawn'");
+        consumeStatementEnd();
+        return new ASTNode.Spawn((ASTNode.Call) expr);
+    }
+
+    private ASTNode.Stmt timerStatement(boolean repeat) {
+        ASTNode.Expr delay = expression();
+        Token name = null;
+        if (check(TokenType.IDENTIFIER) && "as".equals(peek().lexeme)) {
+            skip();
+            name = consume(TokenType.IDENTIFIER, "Expect timer name after 'as'");
+        }
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
+        List<ASTNode.Stmt> body = block();
+        return new ASTNode.Timer(delay, repeat, name, body);
+    }
+
+    private ASTNode.Stmt recordStatement() {
+        Token name = consume(TokenType.IDENTIFIER, "Expect record name");
+        expect(TokenType.LEFT_BRACE, "Expect '{'");
+        List<Token> fields = new ArrayList<>();
+        if (!check(TokenType.RIGHT_BRACE)) {
+            do {
+                fields.add(consume(TokenType.IDENTIFIER, "Expect field name"));
+            } while (match(TokenType.COMMA));
+        }
+        expect(TokenType.RIGHT_BRACE, "Expect '}'");
+        Map<String, Integer> slots = new HashMap<>(fieldSlots);
+        for (int slot = 0; slot < fields.size(); slot++) {
+            slots.merge(fields.get(slot).lexeme, slot, (a, b) -> a.equals(b) ? a : -1);
+        }
+        fieldSlots = slots;
+        return new ASTNode.Record(name, fields);
+    }
+
+    private ASTNode.Stmt importStatement() {
+        Token path = consume(TokenType.STRING, "Expect module path");
+        Token name;
+        if (check(TokenType.IDENTIFIER) && "as".equals(peek().lexeme)) {
+            skip();
+            name = consume(TokenType.IDENTIFIER, "Expect module name after 'as'");
+        } else {
+            String stem = moduleName((String) path.literal);
+            if (stem == null) throw error("Module file name isn't a valid name; add 'as name'");
+            name = new Token(TokenType.IDENTIFIER, stem, null, path.line);
+        }
+        consumeStatementEnd();
+        return new ASTNode.Import(name, (String) path.literal);
+    }
+
+    // "lib/physics.kuromi" -> "physics", or null when the file name isn't usable as an identifier
+    private static String moduleName(String path) {
+        String name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+        int dot = name.indexOf('.');
+        if (dot >= 0) name = name.substring(0, dot);
+        if (name.isEmpty() || Character.isDigit(name.charAt(0)) || Lexer.keywords().containsKey(name)) return null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_') return null;
+        }
+        return name;
+    }
+
+    private ASTNode.Stmt cancelStatement() {
+        ASTNode.Expr timer = expression();
+        consumeStatementEnd();
+        return new ASTNode.Cancel(timer);
+    }
+
     private ASTNode.Stmt expressionStatement() {
         ASTNode.Expr expr = expression();
+        if (expr instanceof ASTNode.Index && match(TokenType.EQUAL)) {
+            ASTNode.Index target = (ASTNode.Index) expr;
+            ASTNode.Expr value = expression();
+            consumeStatementEnd();
+            return new ASTNode.SetIndex(target.object, target.index, value);
+        }
+        if (expr instanceof ASTNode.Get && match(TokenType.EQUAL)) {
+            ASTNode.Expr value = expression();
+            consumeStatementEnd();
+            return new ASTNode.SetField((ASTNode.Get) expr, value);
+        }
         consumeStatementEnd();
         return new ASTNode.ExpressionStmt(expr);
     }
@@ -207,193 +566,210 @@ public class Parser {
     private List<ASTNode.Stmt> block() {
         List<ASTNode.Stmt> statements = new ArrayList<>();
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+            int start = current;
             ASTNode.Stmt stmt = statement();
             if (stmt != null) {
                 statements.add(stmt);
             }
+            if (blockListener != null) blockListener.statement(statements, start, current, stmt);
         }
-        consume(TokenType.RIGHT_BRACE, "Expect '}'");
+        expect(TokenType.RIGHT_BRACE, "Expect '}'");
         return statements;
     }
 
+    // Precedence climbing over the tables below. Prefix operators, parentheses and binary operators
+    // waiting for their right operand are pushed as frames rather than recursed into, so deep nesting
+    // grows the frame arrays instead of the Java stack; calls, brackets and map literals still recurse.
     private ASTNode.Expr expression() {
-        return logicalOr();
-    }
-
-    private ASTNode.Expr logicalOr() {
-        ASTNode.Expr expr = logicalAnd();
-        while (match(TokenType.OR)) {
-            Token operator = previous();
-            ASTNode.Expr right = logicalAnd();
-            expr = new ASTNode.Binary(expr, operator, right);
+        int base = frames;
+        try {
+            int floor = PREC_LOWEST;
+            operand:
+            while (true) {
+                TokenType type = tokens.type(current);
+                if (UNARY_OPERATOR[type.ordinal()]) {
+                    skip();
+                    push(FRAME_UNARY, floor, null, previous());
+                    floor = PREC_UNARY;
+                    continue;
+                }
+                if (type == TokenType.LEFT_PAREN) {
+                    skip();
+                    push(FRAME_GROUP, floor, null, null);
+                    floor = PREC_LOWEST;
+                    continue;
+                }
+                PrefixParselet prefix = PREFIX[type.ordinal()];
+                if (prefix == null) throw error("Expected expression");
+                skip();
+                ASTNode.Expr expr = prefix.parse(this);
+                while (true) {
+                    int ordinal = tokens.type(current).ordinal();
+                    int precedence = PRECEDENCE[ordinal];
+                    if (precedence >= floor) {
+                        skip();
+                        if (precedence == PREC_POSTFIX) {
+                            expr = POSTFIX[ordinal].parse(this, expr);
+                            continue;
+                        }
+                        push(FRAME_BINARY, floor, expr, previous());
+                        floor = precedence + 1;
+                        continue operand;
+                    }
+                    // Nothing binds tightly enough here: close the innermost frame and retry one level out
+                    if (frames == base) return expr;
+                    int top = --frames;
+                    floor = frameFloors[top];
+                    if (frameKinds[top] == FRAME_UNARY) {
+                        expr = new ASTNode.Unary(frameOperators[top], expr);
+                    } else if (frameKinds[top] == FRAME_BINARY) {
+                        expr = new ASTNode.Binary(frameOperands[top], frameOperators[top], expr);
+                    } else {
+                        expect(TokenType.RIGHT_PAREN, "Expect ')'");
+                    }
+                    frameOperands[top] = null;
+                    frameOperators[top] = null;
+                }
+            }
+        } finally {
+            frames = base;
         }
-        return expr;
     }
 
-    private ASTNode.Expr logicalAnd() {
-        ASTNode.Expr expr = equality();
-        while (match(TokenType.AND)) {
-            Token operator = previous();
-            ASTNode.Expr right = equality();
-            expr = new ASTNode.Binary(expr, operator, right);
+    private void push(byte kind, int floor, ASTNode.Expr operand, Token operator) {
+        if (frames == frameKinds.length) {
+            int capacity = frames * 2;
+            frameKinds = Arrays.copyOf(frameKinds, capacity);
+            frameFloors = Arrays.copyOf(frameFloors, capacity);
+            frameOperands = Arrays.copyOf(frameOperands, capacity);
+            frameOperators = Arrays.copyOf(frameOperators, capacity);
         }
-        return expr;
+        frameKinds[frames] = kind;
+        frameFloors[frames] = floor;
+        frameOperands[frames] = operand;
+        frameOperators[frames] = operator;
+        frames++;
     }
 
-    private ASTNode.Expr equality() {
-        ASTNode.Expr expr = comparison();
-        while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            Token operator = previous();
-            ASTNode.Expr right = comparison();
-            expr = new ASTNode.Binary(expr, operator, right);
+    private ASTNode.Expr arrayLiteral() {
+        List<ASTNode.Expr> elements = new ArrayList<>();
+        if (!check(TokenType.RIGHT_BRACKET)) {
+            do {
+                elements.add(expression());
+            } while (match(TokenType.COMMA));
         }
-        return expr;
+        expect(TokenType.RIGHT_BRACKET, "Expect ']'");
+        return new ASTNode.ArrayLiteral(elements);
     }
 
-    private ASTNode.Expr comparison() {
-        ASTNode.Expr expr = term();
-        while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-            Token operator = previous();
-            ASTNode.Expr right = term();
-            expr = new ASTNode.Binary(expr, operator, right);
+    private ASTNode.Expr mapLiteral() {
+        List<ASTNode.Expr> keys = new ArrayList<>();
+        List<ASTNode.Expr> values = new ArrayList<>();
+        if (!check(TokenType.RIGHT_BRACE)) {
+            do {
+                if (check(TokenType.IDENTIFIER) && peekNextType() == TokenType.COLON) {
+                    keys.add(new ASTNode.Literal(advance().lexeme));
+                } else {
+                    keys.add(expression());
+                }
+                expect(TokenType.COLON, "Expect ':' after map key");
+                values.add(expression());
+            } while (match(TokenType.COMMA));
         }
-        return expr;
+        expect(TokenType.RIGHT_BRACE, "Expect '}'");
+        return new ASTNode.MapLiteral(keys, values);
     }
 
-    private ASTNode.Expr term() {
-        ASTNode.Expr expr = factor();
-        while (match(TokenType.MINUS, TokenType.PLUS)) {
-            Token operator = previous();
-            ASTNode.Expr right = factor();
-            expr = new ASTNode.Binary(expr, operator, right);
+    private ASTNode.Expr call(ASTNode.Expr callee) {
+        List<ASTNode.Expr> arguments = new ArrayList<>();
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                arguments.add(expression());
+            } while (match(TokenType.COMMA));
         }
-        return expr;
+        expect(TokenType.RIGHT_PAREN, "Expect ')'");
+        return new ASTNode.Call(callee, arguments);
     }
 
-    private ASTNode.Expr factor() {
-        ASTNode.Expr expr = unary();
-        while (match(TokenType.SLASH, TokenType.STAR, TokenType.PERCENT)) {
-            Token operator = previous();
-            ASTNode.Expr right = unary();
-            expr = new ASTNode.Binary(expr, operator, right);
+    private ASTNode.Expr index(ASTNode.Expr object) {
+        ASTNode.Expr index = check(TokenType.COLON) ? null : expression();
+        if (match(TokenType.COLON)) {
+            ASTNode.Expr end = check(TokenType.RIGHT_BRACKET) ? null : expression();
+            expect(TokenType.RIGHT_BRACKET, "Expect ']'");
+            return new ASTNode.Slice(object, index, end);
         }
-        return expr;
+        expect(TokenType.RIGHT_BRACKET, "Expect ']'");
+        return new ASTNode.Index(object, index);
     }
 
-    private ASTNode.Expr unary() {
-        if (match(TokenType.BANG, TokenType.MINUS, TokenType.NOT)) {
-            Token operator = previous();
-            ASTNode.Expr right = unary();
-            return new ASTNode.Unary(operator, right);
-        }
-        return postfix();
-    }
-
-    private ASTNode.Expr postfix() {
-        ASTNode.Expr expr = primary();
-        while (true) {
-            if (match(TokenType.LEFT_PAREN)) {
-                List<ASTNode.Expr> arguments = new ArrayList<>();
-                if (!check(TokenType.RIGHT_PAREN)) {
-                    do {
-                        arguments.add(expression());
-                    } while (match(TokenType.COMMA));
-                }
-                consume(TokenType.RIGHT_PAREN, "Expect ')'");
-                expr = new ASTNode.Call(expr, arguments);
-            } else if (match(TokenType.LEFT_BRACKET)) {
-                ASTNode.Expr index = expression();
-                consume(TokenType.RIGHT_BRACKET, "Expect ']'");
-                expr = new ASTNode.Index(expr, index);
-            } else {
-                break;
-            }
-        }
-        return expr;
-    }
-
-    private ASTNode.Expr primary() {
-        if (match(TokenType.TRUE)) return new ASTNode.Literal(true);
-        if (match(TokenType.FALSE)) return new ASTNode.Literal(false);
-        if (match(TokenType.NULL)) return new ASTNode.Literal(null);
-        if (match(TokenType.NUMBER)) return new ASTNode.Literal(previous().literal);
-        if (match(TokenType.STRING)) return new ASTNode.Literal(previous().literal);
-        if (match(TokenType.IDENTIFIER)) return new ASTNode.Variable(previous());
-        if (match(TokenType.LEFT_BRACKET)) {
-            List<ASTNode.Expr> elements = new ArrayList<>();
-            if (!check(TokenType.RIGHT_BRACKET)) {
-                do {
-                    elements.add(expression());
-                } while (match(TokenType.COMMA));
-            }
-            consume(TokenType.RIGHT_BRACKET, "Expect ']'");
-            return new ASTNode.ArrayLiteral(elements);
-        }
-        if (match(TokenType.LEFT_PAREN)) {
-            ASTNode.Expr expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expect ')'");
-            return expr;
-        }
-        throw error("Expected expression");
+    private ASTNode.Expr field(ASTNode.Expr object) {
+        Token name = consume(TokenType.IDENTIFIER, "Expect field name after '.'");
+        return new ASTNode.Get(object, name, fieldSlots.getOrDefault(name.lexeme, -1));
     }
 
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
-            }
-        }
-        return false;
+    private boolean match(TokenType type) {
+        if (!check(type)) return false;
+        skip();
+        return true;
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        skip();
         return previous();
     }
 
+    private void skip() {
+        if (!isAtEnd()) current++;
+    }
+
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.type(current) == TokenType.EOF;
     }
 
+    // Token objects are only requested where the parser keeps or reports them
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
-    private Token peekNext() {
-        if (current + 1 >= tokens.size()) return tokens.get(tokens.size() - 1);
-        return tokens.get(current + 1);
+    private TokenType peekNextType() {
+        return tokens.type(current + 1);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
-        throw error(message);
+        expect(type, message);
+        return previous();
+    }
+
+    // consume() for tokens the AST doesn't keep, such as closing punctuation
+    private void expect(TokenType type, String message) {
+        if (!check(type)) throw error(message);
+        skip();
     }
 
     private void consumeStatementEnd() {
-        if (check(TokenType.SEMICOLON)) advance();
+        if (check(TokenType.SEMICOLON)) skip();
     }
 
     private RuntimeException error(String message) {
         Token token = peek();
-        System.err.println("[Line " + token.line + "] Error at '" + token.lexeme + "': " + message);
+        errors.report(token.line, "Error at '" + token.lexeme + "': " + message);
         return new RuntimeException(message);
     }
 
     private void synchronize() {
-        advance();
+        skip();
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) return;
-            switch (peek().type) {
+            if (tokens.type(current - 1) == TokenType.SEMICOLON) return;
+            switch (tokens.type(current)) {
                 case GAME:
                 case LET:
                 case FN:
@@ -406,9 +782,17 @@ public class Parser {
                 case SHOW:
                 case PLAY:
                 case PRINT:
+                case WAIT:
+                case YIELD:
+                case SPAWN:
+                case AFTER:
+                case EVERY:
+                case CANCEL:
+                case RECORD:
+                case IMPORT:
                     return;
             }
-            advance();
+            skip();
         }
     }
 }
\ No newline at end of file
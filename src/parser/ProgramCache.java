@@ -0,0 +1,83 @@
+// src/parser/ProgramCache.java
+package parser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Directory of .kuromic files named by the SHA-256 of the source they were parsed from, so an unchanged
+// script skips lexing and parsing. Entries are never wrong, only unused: an edited source hashes to a new
+// name, and a file from another engine version fails KuromicFormat's header check and is overwritten.
+public final class ProgramCache {
+    private static final int HASH_WINDOW = 64 * 1024 * 1024;
+
+    private final Path directory;
+
+    public ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // ~/.kuromi/cache, unless the kuromi.cache system property names another directory
+    public static ProgramCache standard() {
+        String configured = System.getProperty("kuromi.cache");
+        return new ProgramCache(configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".kuromi", "cache"));
+    }
+
+    // Hashes the file through memory-mapped windows, so large scripts are never copied onto the heap
+    public static byte[] hash(Path source) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_WINDOW, size - position));
+                digest.update(window);
+            }
+        }
+        return digest.digest();
+    }
+
+    public static byte[] hash(byte[] source) {
+        return sha256().digest(source);
+    }
+
+    // The cached program for this source, or null when there is none this engine can use
+    public FlatAST load(byte[] sourceHash) throws IOException {
+        Path path = pathFor(sourceHash);
+        if (!Files.exists(path)) return null;
+        return KuromicFormat.read(path, sourceHash);
+    }
+
+    public void store(byte[] sourceHash, FlatAST program) throws IOException {
+        Files.createDirectories(directory);
+        KuromicFormat.write(program, sourceHash, pathFor(sourceHash));
+    }
+
+    public Path pathFor(byte[] sourceHash) {
+        return directory.resolve(hex(sourceHash) + KuromicFormat.EXTENSION);
+    }
+
+    public static String hex(byte[] hash) {
+        StringBuilder text = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return text.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+// src/runtime/AudioMixer.java
+package runtime;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// One mixer thread sums every active voice plus streamed music into a single output line
+public class AudioMixer {
+    public static final float SAMPLE_RATE = 44100f;
+    public static final int CHANNELS = 2;
+    public static final int BUFFER_FRAMES = 512;
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
+
+    // Files larger than this are streamed from disk instead of decoded up front
+    public static final long STREAM_THRESHOLD_BYTES = 2L * 1024 * 1024;
+
+    private static final int MAX_VOICES = 32;
+    private static final int COMMAND_CAPACITY = 64;
+
+    public interface Output {
+        void open(AudioFormat format, int bufferBytes) throws Exception;
+        void write(byte[] data, int length);
+        void close();
+    }
+
+    private final Output output;
+    private Thread thread;
+    private volatile boolean running = true;
+
+    // Preloaded clips as interleaved 16-bit stereo; published by replacing the array
+    private volatile short[][] clips = new short[0][];
+    private final Map<String, Integer> clipIds = new HashMap<>();
+
+    // Trigger commands: single producer (script thread), single consumer (mixer thread)
+    private final int[] commandClip = new int[COMMAND_CAPACITY];
+    private final float[] commandGain = new float[COMMAND_CAPACITY];
+    private final AtomicLong commandHead = new AtomicLong();
+    private final AtomicLong commandTail = new AtomicLong();
+
+    // Voice state is only touched by the mixer thread
+    private final short[][] voiceData = new short[MAX_VOICES][];
+    private final int[] voicePosition = new int[MAX_VOICES];
+    private final float[] voiceGain = new float[MAX_VOICES];
+
+    private volatile File pendingMusic;
+    private volatile boolean stopMusic;
+    private AudioInputStream music;
+    private final byte[] musicBytes = new byte[BUFFER_FRAMES * CHANNELS * 2];
+
+    private final int[] mix = new int[BUFFER_FRAMES * CHANNELS];
+    private final byte[] out = new byte[BUFFER_FRAMES * CHANNELS * 2];
+
+    public AudioMixer(Output output) throws Exception {
+        this.output = output;
+        output.open(FORMAT, out.length * 2);
+    }
+
+    public AudioMixer start() {
+        thread = new Thread(this::run, "kuromi-audio-mixer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+        return this;
+    }
+
+    // Picks the output from -Dkuromi.audio=line|null|file:PATH, falling back to null when no device exists
+    public static AudioMixer create() {
+        String mode = System.getProperty("kuromi.audio", "line");
+        try {
+            if (mode.startsWith("file:")) return new AudioMixer(new FileOutput(new File(mode.substring(5)))).start();
+            if (mode.equals("null")) return new AudioMixer(new NullOutput(true)).start();
+            return new AudioMixer(new LineOutput()).start();
+        } catch (Exception e) {
+            System.err.println("Audio device unavailable (" + e.getMessage() + "), sound is muted");
+            try {
+                return new AudioMixer(new NullOutput(true)).start();
+            } catch (Exception unreachable) {
+                throw new RuntimeException(unreachable);
+            }
+        }
+    }
+
+    // Loads a clip into memory once; later plays under the same key reuse its id
+    public int load(String key, File file) throws Exception {
+        Integer id = clipIds.get(key);
+        if (id != null) return id;
+
+        short[] samples = decode(file);
+        short[][] grown = java.util.Arrays.copyOf(clips, clips.length + 1);
+        grown[clips.length] = samples;
+        clips = grown;
+        clipIds.put(key, clips.length - 1);
+        return clips.length - 1;
+    }
+
+    public Integer clipId(String key) {
+        return clipIds.get(key);
+    }
+
+    // Allocation-free trigger; the sound is dropped if the command queue is full
+    public boolean play(int clipId, float gain) {
+        long tail = commandTail.get();
+        if (tail - commandHead.get() >= COMMAND_CAPACITY) return false;
+        int slot = (int) (tail & (COMMAND_CAPACITY - 1));
+        commandClip[slot] = clipId;
+        commandGain[slot] = gain;
+        commandTail.lazySet(tail + 1);
+        return true;
+    }
+
+    public void playMusic(File file) {
+        pendingMusic = file;
+    }
+
+    public void stopMusic() {
+        stopMusic = true;
+    }
+
+    public void shutdown() {
+        running = false;
+        if (thread == null) {
+            output.close();
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Mixes one buffer; call directly instead of start() to drive the mixer synchronously
+    public void mixBuffer() {
+        drainCommands();
+        java.util.Arrays.fill(mix, 0);
+
+        for (int v = 0; v < MAX_VOICES; v++) {
+            short[] data = voiceData[v];
+            if (data == null) continue;
+            int pos = voicePosition[v];
+            int n = Math.min(mix.length, data.length - pos);
+            int gain = (int) (voiceGain[v] * 256);
+            for (int i = 0; i < n; i++) {
+                mix[i] += (data[pos + i] * gain) >> 8;
+            }
+            pos += n;
+            if (pos >= data.length) {
+                voiceData[v] = null;
+            } else {
+                voicePosition[v] = pos;
+            }
+        }
+
+        mixMusic();
+
+        for (int i = 0, b = 0; i < mix.length; i++, b += 2) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            out[b] = (byte) sample;
+            out[b + 1] = (byte) (sample >> 8);
+        }
+        output.write(out, out.length);
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                mixBuffer();
+            }
+        } finally {
+            closeMusic();
+            output.close();
+        }
+    }
+
+    private void drainCommands() {
+        long head = commandHead.get();
+        long tail = commandTail.get();
+        short[][] loaded = clips;
+        for (; head < tail; head++) {
+            int slot = (int) (head & (COMMAND_CAPACITY - 1));
+            int clip = commandClip[slot];
+            if (clip < 0 || clip >= loaded.length) continue;
+            int voice = freeVoice();
+            voiceData[voice] = loaded[clip];
+            voicePosition[voice] = 0;
+            voiceGain[voice] = commandGain[slot];
+        }
+        commandHead.lazySet(tail);
+    }
+
+    // Reuses an idle voice, or steals the one closest to finishing
+    private int freeVoice() {
+        int best = 0;
+        int bestRemaining = Integer.MAX_VALUE;
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (voiceData[v] == null) return v;
+            int remaining = voiceData[v].length - voicePosition[v];
+            if (remaining < bestRemaining) {
+                bestRemaining = remaining;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private void mixMusic() {
+        if (stopMusic) {
+            stopMusic = false;
+            closeMusic();
+        }
+        File next = pendingMusic;
+        if (next != null) {
+            pendingMusic = null;
+            closeMusic();
+            try {
+                music = openStream(next);
+            } catch (Exception e) {
+                System.err.println("Failed to stream: " + next + " (" + e.getMessage() + ")");
+            }
+        }
+        if (music == null) return;
+
+        try {
+            int read = 0;
+            while (read < musicBytes.length) {
+                int n = music.read(musicBytes, read, musicBytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            for (int i = 0, b = 0; b + 1 < read; i++, b += 2) {
+                mix[i] += (short) ((musicBytes[b] & 0xFF) | (musicBytes[b + 1] << 8));
+            }
+            if (read < musicBytes.length) closeMusic();
+        } catch (IOException e) {
+            closeMusic();
+        }
+    }
+
+    private void closeMusic() {
+        if (music == null) return;
+        try {
+            music.close();
+        } catch (IOException ignored) {
+        }
+        music = null;
+    }
+
+    private static AudioInputStream openStream(File file) throws Exception {
+        AudioInputStream source = AudioSystem.getAudioInputStream(file);
+        AudioFormat from = source.getFormat();
+        AudioFormat pcm = new AudioFormat(from.getSampleRate(), 16, CHANNELS, true, false);
+        AudioInputStream converted = AudioSystem.getAudioInputStream(pcm, source);
+        if (from.getSampleRate() != SAMPLE_RATE) {
+            converted = AudioSystem.getAudioInputStream(FORMAT, converted);
+        }
+        return converted;
+    }
+
+    private static short[] decode(File file) throws Exception {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(file)) {
+            AudioFormat from = source.getFormat();
+            AudioFormat pcm = new AudioFormat(from.getSampleRate(), 16, CHANNELS, true, false);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (AudioInputStream converted = AudioSystem.getAudioInputStream(pcm, source)) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = converted.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, n);
+                }
+            }
+            byte[] raw = bytes.toByteArray();
+            short[] samples = new short[raw.length / 2];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) ((raw[2 * i] & 0xFF) | (raw[2 * i + 1] << 8));
+            }
+            return from.getSampleRate() == SAMPLE_RATE ? samples : resample(samples, from.getSampleRate());
+        }
+    }
+
+    // Linear resampling of interleaved stereo to the mixer rate
+    private static short[] resample(short[] samples, float rate) {
+        int frames = samples.length / CHANNELS;
+        int outFrames = (int) ((long) frames * SAMPLE_RATE / rate);
+        short[] result = new short[outFrames * CHANNELS];
+        double step = rate / SAMPLE_RATE;
+        for (int f = 0; f < outFrames; f++) {
+            double pos = f * step;
+            int i = (int) pos;
+            double frac = pos - i;
+            int j = Math.min(i + 1, frames - 1);
+            for (int c = 0; c < CHANNELS; c++) {
+                double a = samples[i * CHANNELS + c];
+                double b = samples[j * CHANNELS + c];
+                result[f * CHANNELS + c] = (short) (a + (b - a) * frac);
+            }
+        }
+        return result;
+    }
+
+    public static class LineOutput implements Output {
+        private SourceDataLine line;
+
+        @Override
+        public void open(AudioFormat format, int bufferBytes) throws Exception {
+            line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+            line.open(format, bufferBytes);
+            line.start();
+        }
+
+        @Override
+        public void write(byte[] data, int length) {
+            line.write(data, 0, length);
+        }
+
+        @Override
+        public void close() {
+            line.drain();
+            line.close();
+        }
+    }
+
+    // Discards audio; when paced it sleeps like a real device so game timing stays realistic
+    public static class NullOutput implements Output {
+        private final boolean paced;
+        private long bufferNanos;
+        private long deadline;
+
+        public NullOutput(boolean paced) {
+            this.paced = paced;
+        }
+
+        @Override
+        public void open(AudioFormat format, int bufferBytes) {
+            bufferNanos = (long) (BUFFER_FRAMES * 1_000_000_000.0 / format.getSampleRate());
+            deadline = System.nanoTime();
+        }
+
+        @Override
+        public void write(byte[] data, int length) {
+            if (!paced) return;
+            deadline += bufferNanos;
+            long wait = deadline - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Writes a 16-bit PCM WAV file; the header sizes are patched in on close. Paced like a real device, so
+    // the file holds as much audio as the script ran for rather than as much as the disk could take.
+    public static class FileOutput implements Output {
+        private final File file;
+        private final NullOutput pacing = new NullOutput(true);
+        private RandomAccessFile raf;
+        private long dataBytes;
+
+        public FileOutput(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void open(AudioFormat format, int bufferBytes) throws IOException {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            raf.write(new byte[44]);
+            pacing.open(format, bufferBytes);
+        }
+
+        @Override
+        public void write(byte[] data, int length) {
+            try {
+                raf.write(data, 0, length);
+                dataBytes += length;
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+            pacing.write(data, length);
+        }
+
+        @Override
+        public void close() {
+            try {
+                raf.seek(0);
+                int byteRate = (int) SAMPLE_RATE * CHANNELS * 2;
+                raf.writeBytes("RIFF");
+                raf.writeInt(Integer.reverseBytes((int) (36 + dataBytes)));
+                raf.writeBytes("WAVEfmt ");
+                raf.writeInt(Integer.reverseBytes(16));
+                raf.writeShort(Short.reverseBytes((short) 1));
+                raf.writeShort(Short.reverseBytes((short) CHANNELS));
+                raf.writeInt(Integer.reverseBytes((int) SAMPLE_RATE));
+                raf.writeInt(Integer.reverseBytes(byteRate));
+                raf.writeShort(Short.reverseBytes((short) (CHANNELS * 2)));
+                raf.writeShort(Short.reverseBytes((short) 16));
+                raf.writeBytes("data");
+                raf.writeInt(Integer.reverseBytes((int) dataBytes));
+                raf.close();
+            } catch (IOException e) {
+                System.err.println("Failed to finish " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+// src/runtime/BuildDaemon.java
+package runtime;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps one warm engine resident behind a Unix domain socket, so run, web, jar and build commands sent by
+// DaemonClient skip JVM startup and JIT warmup, and share the parsed-module cache between them. Each
+// connection is one command, handled on its own thread while others run. Whatever a command prints goes
+// back to its own client only: System.out and System.err are replaced for the daemon's lifetime by streams
+// that write to the client whose command the current thread is running. Threads a command starts, such as
+// the parse cache writer or a project build's workers, inherit its client. Output from any other thread goes
+// to the daemon's own console.
+//
+// Protocol, in DataOutputStream encoding. The client sends its working directory and its arguments:
+//   UTF cwd, int count, count * UTF arg
+// and the daemon answers with frames until the command is done:
+//   byte STDOUT or STDERR, int length, length bytes
+//   byte EXIT, int status
+public class BuildDaemon {
+    static final byte STDOUT = 'o';
+    static final byte STDERR = 'e';
+    static final byte EXIT = 'x';
+
+    // Runs one command as Main would, resolving relative paths against workingDirectory; returns the exit status
+    public interface Handler {
+        int handle(String[] args, Path workingDirectory) throws Exception;
+    }
+
+    private static final ThreadLocal<PrintStream> OUT = new InheritableThreadLocal<>();
+    private static final ThreadLocal<PrintStream> ERR = new InheritableThreadLocal<>();
+
+    private final Path socket;
+    private final long idleNanos;
+    private final Handler handler;
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile long lastActive = System.nanoTime();
+
+    public BuildDaemon(Path socket, long idleSeconds, Handler handler) {
+        this.socket = socket;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.handler = handler;
+    }
+
+    // ~/.kuromi/daemon.sock, unless the kuromi.socket system property names another path
+    public static Path defaultSocket() {
+        String configured = System.getProperty("kuromi.socket");
+        return configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".kuromi", "daemon.sock");
+    }
+
+    // Serves until no command has been running for the idle timeout
+    public void serve() throws IOException {
+        if (isListening(socket)) {
+            throw new RuntimeException("A daemon is already listening on " + socket);
+        }
+        Path parent = socket.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        // Left behind by a daemon that didn't shut down cleanly
+        Files.deleteIfExists(socket);
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(new PrintStream(new Routed(OUT, stdout), true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new Routed(ERR, stderr), true, StandardCharsets.UTF_8));
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            stdout.println("🛰️  Daemon listening on " + socket + " (idle timeout " + idleNanos / 1_000_000_000L + " s)");
+
+            while (true) {
+                selector.select(1000);
+                selector.selectedKeys().clear();
+                SocketChannel client;
+                while ((client = server.accept()) != null) {
+                    active.incrementAndGet();
+                    SocketChannel connection = client;
+                    workers.execute(() -> serve(connection));
+                }
+                if (active.get() == 0 && System.nanoTime() - lastActive > idleNanos) break;
+            }
+            stdout.println("💤 Daemon idle, shutting down");
+        } finally {
+            Files.deleteIfExists(socket);
+            workers.shutdown();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            Path workingDirectory = Paths.get(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) args[i] = in.readUTF();
+
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+            OUT.set(new PrintStream(new Framed(out, STDOUT), true, StandardCharsets.UTF_8));
+            ERR.set(new PrintStream(new Framed(out, STDERR), true, StandardCharsets.UTF_8));
+            int status;
+            try {
+                status = handler.handle(args, workingDirectory);
+            } catch (Exception e) {
+                System.err.println("❌ Error: " + e.getMessage());
+                status = 1;
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                OUT.remove();
+                ERR.remove();
+            }
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; there is no one left to tell
+        } finally {
+            lastActive = System.nanoTime();
+            active.decrementAndGet();
+        }
+    }
+
+    static boolean isListening(Path socket) {
+        if (!Files.exists(socket)) return false;
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Writes to the current command's stream, or to the daemon's own when no command is running on this thread
+    private static final class Routed extends OutputStream {
+        private final ThreadLocal<PrintStream> target;
+        private final PrintStream fallback;
+
+        Routed(ThreadLocal<PrintStream> target, PrintStream fallback) {
+            this.target = target;
+            this.fallback = fallback;
+        }
+
+        private PrintStream stream() {
+            PrintStream stream = target.get();
+            return stream != null ? stream : fallback;
+        }
+
+        @Override
+        public void write(int b) {
+            stream().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            stream().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            stream().flush();
+        }
+    }
+
+    // One frame per write; both streams of a command share the connection, so frames are written whole
+    private static final class Framed extends OutputStream {
+        private final DataOutputStream out;
+        private final byte kind;
+
+        Framed(DataOutputStream out, byte kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (out) {
+                out.writeByte(kind);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
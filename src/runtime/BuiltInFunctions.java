@@ -0,0 +1,457 @@
+// src/runtime/BuiltInFunctions.java
+package runtime;
+
+import interpreter.Interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class BuiltInFunctions {
+    private final Map<String, Function> functions = new HashMap<>();
+    private final Interpreter interpreter;
+
+    @FunctionalInterface
+    public interface Function {
+        Value call(Value[] arguments);
+    }
+
+    public BuiltInFunctions(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        registerFunctions();
+    }
+
+    public Map<String, Function> getFunctions() {
+        return functions;
+    }
+
+    private void registerFunctions() {
+        // Lazy number sequences for for-loops: range(end), range(start, end) or range(start, end, step)
+        functions.put("range", (Value[] args) -> {
+            if (args.length < 1 || args.length > 3) throw new RuntimeException("range(start, end, step) expects 1 to 3 arguments.");
+            if (args.length == 1) return Value.range(new Range(0, args[0].asNumber(), 1));
+            double step = args.length == 3 ? args[2].asNumber() : 1;
+            return Value.range(new Range(args[0].asNumber(), args[1].asNumber(), step));
+        });
+
+        // Maps
+        functions.put("has", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("has(map, key) expects 2 arguments.");
+            return Value.bool(args[0].asMap().containsKey(args[1]));
+        });
+
+        functions.put("remove", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("remove(map, key) expects 2 arguments.");
+            return args[0].asMap().remove(args[1]);
+        });
+
+        functions.put("keys", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("keys(map) expects 1 argument.");
+            return Value.array(args[0].asMap().keys());
+        });
+
+        functions.put("values", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("values(map) expects 1 argument.");
+            return Value.array(args[0].asMap().values());
+        });
+
+        // Tilemaps
+        functions.put("tilemap", (Value[] args) -> {
+            if (args.length < 3 || args.length > 4) {
+                throw new RuntimeException("tilemap(cols, rows, tileSize, tileset) expects 3 or 4 arguments.");
+            }
+            java.awt.image.BufferedImage tileset = args.length == 4 && args[3].type == Value.Type.IMAGE
+                    ? args[3].asImage() : null;
+            return Value.tilemap(new Tilemap((int) args[0].asNumber(), (int) args[1].asNumber(),
+                    (int) args[2].asNumber(), tileset));
+        });
+
+        functions.put("setTile", (Value[] args) -> {
+            if (args.length != 4) throw new RuntimeException("setTile(map, col, row, tile) expects 4 arguments.");
+            args[0].asTilemap().set((int) args[1].asNumber(), (int) args[2].asNumber(), (int) args[3].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("getTile", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("getTile(map, col, row) expects 3 arguments.");
+            return Value.number(args[0].asTilemap().get((int) args[1].asNumber(), (int) args[2].asNumber()));
+        });
+
+        // Particles
+        functions.put("particles", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("particles(capacity) expects 1 argument.");
+            return Value.object(new ParticleSystem((int) args[0].asNumber()));
+        });
+
+        functions.put("emit", (Value[] args) -> {
+            if (args.length != 7) {
+                throw new RuntimeException("emit(system, x, y, count, speed, life, color) expects 7 arguments.");
+            }
+            ParticleSystem system = args[0].asObject(ParticleSystem.class, "particle system");
+            int rgb = Interpreter.GameWindow.parseColor(args[6].asString()).getRGB();
+            return Value.number(system.emit((float) args[1].asNumber(), (float) args[2].asNumber(),
+                    (int) args[3].asNumber(), (float) args[4].asNumber(), (float) args[5].asNumber(), rgb));
+        });
+
+        functions.put("particleGravity", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("particleGravity(system, gx, gy) expects 3 arguments.");
+            args[0].asObject(ParticleSystem.class, "particle system")
+                    .setGravity((float) args[1].asNumber(), (float) args[2].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("updateParticles", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("updateParticles(system, dt) expects 2 arguments.");
+            args[0].asObject(ParticleSystem.class, "particle system").update((float) args[1].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("particleCount", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("particleCount(system) expects 1 argument.");
+            return Value.number(args[0].asObject(ParticleSystem.class, "particle system").getCount());
+        });
+
+        // Input, read from the snapshot taken by pollInput() once per frame
+        functions.put("pollInput", (Value[] args) -> {
+            interpreter.getInput().snapshot();
+            return Value.nil();
+        });
+
+        functions.put("isKeyPressed", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("isKeyPressed(key) expects 1 argument.");
+            InputState input = interpreter.getInput();
+            return Value.bool(input.isKeyDown(input.keyCode(args[0].asString())));
+        });
+
+        functions.put("isKeyJustPressed", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("isKeyJustPressed(key) expects 1 argument.");
+            InputState input = interpreter.getInput();
+            return Value.bool(input.wasKeyPressed(input.keyCode(args[0].asString())));
+        });
+
+        functions.put("isKeyReleased", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("isKeyReleased(key) expects 1 argument.");
+            InputState input = interpreter.getInput();
+            return Value.bool(input.wasKeyReleased(input.keyCode(args[0].asString())));
+        });
+
+        functions.put("isMouseDown", (Value[] args) -> {
+            int button = args.length > 0 ? (int) args[0].asNumber() : 1;
+            return Value.bool(interpreter.getInput().isButtonDown(button));
+        });
+
+        functions.put("isMouseClicked", (Value[] args) -> {
+            int button = args.length > 0 ? (int) args[0].asNumber() : 1;
+            return Value.bool(interpreter.getInput().wasButtonPressed(button));
+        });
+
+        functions.put("mouseX", (Value[] args) -> Value.number(interpreter.getInput().getMouseX()));
+
+        functions.put("mouseY", (Value[] args) -> Value.number(interpreter.getInput().getMouseY()));
+
+        functions.put("readText", (Value[] args) -> Value.string(interpreter.getInput().readText()));
+
+        // Spatial index for collision queries
+        functions.put("spatialGrid", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("spatialGrid(cellSize) expects 1 argument.");
+            return Value.object(new SpatialHashGrid((float) args[0].asNumber()));
+        });
+
+        functions.put("spatialTree", (Value[] args) -> {
+            if (args.length != 4) throw new RuntimeException("spatialTree(x, y, w, h) expects 4 arguments.");
+            return Value.object(new QuadTree((float) args[0].asNumber(), (float) args[1].asNumber(),
+                    (float) args[2].asNumber(), (float) args[3].asNumber()));
+        });
+
+        functions.put("spatialInsert", (Value[] args) -> {
+            if (args.length != 6) throw new RuntimeException("spatialInsert(index, id, x, y, w, h) expects 6 arguments.");
+            spatial(args[0]).insert((int) args[1].asNumber(), (float) args[2].asNumber(), (float) args[3].asNumber(),
+                    (float) args[4].asNumber(), (float) args[5].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("spatialMove", (Value[] args) -> {
+            if (args.length != 6) throw new RuntimeException("spatialMove(index, id, x, y, w, h) expects 6 arguments.");
+            spatial(args[0]).move((int) args[1].asNumber(), (float) args[2].asNumber(), (float) args[3].asNumber(),
+                    (float) args[4].asNumber(), (float) args[5].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("spatialRemove", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("spatialRemove(index, id) expects 2 arguments.");
+            spatial(args[0]).remove((int) args[1].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("spatialQuery", (Value[] args) -> {
+            if (args.length != 5) throw new RuntimeException("spatialQuery(index, x, y, w, h) expects 5 arguments.");
+            IntList hits = new IntList();
+            spatial(args[0]).queryRect((float) args[1].asNumber(), (float) args[2].asNumber(),
+                    (float) args[3].asNumber(), (float) args[4].asNumber(), hits);
+            return numberArray(hits);
+        });
+
+        functions.put("spatialQueryCircle", (Value[] args) -> {
+            if (args.length != 4) throw new RuntimeException("spatialQueryCircle(index, x, y, r) expects 4 arguments.");
+            IntList hits = new IntList();
+            spatial(args[0]).queryCircle((float) args[1].asNumber(), (float) args[2].asNumber(),
+                    (float) args[3].asNumber(), hits);
+            return numberArray(hits);
+        });
+
+        functions.put("spatialPairs", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("spatialPairs(index) expects 1 argument.");
+            IntList pairs = new IntList();
+            spatial(args[0]).queryPairs(pairs);
+            return numberArray(pairs);
+        });
+
+        // Rigid-body physics; body positions are centres
+        functions.put("physicsWorld", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("physicsWorld(gravityX, gravityY) expects 2 arguments.");
+            return Value.object(new PhysicsWorld((float) args[0].asNumber(), (float) args[1].asNumber()));
+        });
+
+        functions.put("physicsDeterministic", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("physicsDeterministic(world, enabled) expects 2 arguments.");
+            physics(args[0]).setDeterministic(args[1].asBoolean());
+            return Value.nil();
+        });
+
+        functions.put("addCircle", (Value[] args) -> {
+            if (args.length != 5) throw new RuntimeException("addCircle(world, x, y, radius, mass) expects 5 arguments.");
+            return Value.number(physics(args[0]).addCircle((float) args[1].asNumber(), (float) args[2].asNumber(),
+                    (float) args[3].asNumber(), (float) args[4].asNumber()));
+        });
+
+        functions.put("addBox", (Value[] args) -> {
+            if (args.length != 6) throw new RuntimeException("addBox(world, x, y, w, h, mass) expects 6 arguments.");
+            return Value.number(physics(args[0]).addBox((float) args[1].asNumber(), (float) args[2].asNumber(),
+                    (float) args[3].asNumber(), (float) args[4].asNumber(), (float) args[5].asNumber()));
+        });
+
+        functions.put("addPolygon", (Value[] args) -> {
+            if (args.length != 5) throw new RuntimeException("addPolygon(world, x, y, vertices, mass) expects 5 arguments.");
+            java.util.List<Value> points = args[3].asArray();
+            float[] vertices = new float[points.size()];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = (float) points.get(i).asNumber();
+            }
+            return Value.number(physics(args[0]).addPolygon((float) args[1].asNumber(), (float) args[2].asNumber(),
+                    vertices, (float) args[4].asNumber()));
+        });
+
+        functions.put("physicsStep", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("physicsStep(world, seconds) expects 2 arguments.");
+            return Value.number(physics(args[0]).update((float) args[1].asNumber()));
+        });
+
+        functions.put("setVelocity", (Value[] args) -> {
+            if (args.length != 4) throw new RuntimeException("setVelocity(world, body, vx, vy) expects 4 arguments.");
+            physics(args[0]).setVelocity((int) args[1].asNumber(), (float) args[2].asNumber(), (float) args[3].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("bodyX", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("bodyX(world, body) expects 2 arguments.");
+            return Value.number(physics(args[0]).getX((int) args[1].asNumber()));
+        });
+
+        functions.put("bodyY", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("bodyY(world, body) expects 2 arguments.");
+            return Value.number(physics(args[0]).getY((int) args[1].asNumber()));
+        });
+
+        // Grid pathfinding; paths come back as flat x, y pairs from start to goal, or null when unreachable
+        functions.put("navGrid", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("navGrid(width, height) expects 2 arguments.");
+            return Value.object(new NavGrid((int) args[0].asNumber(), (int) args[1].asNumber()));
+        });
+
+        functions.put("setBlocked", (Value[] args) -> {
+            if (args.length != 4) throw new RuntimeException("setBlocked(grid, x, y, blocked) expects 4 arguments.");
+            navGrid(args[0]).setBlocked((int) args[1].asNumber(), (int) args[2].asNumber(), args[3].asBoolean());
+            return Value.nil();
+        });
+
+        functions.put("findPath", (Value[] args) -> {
+            if (args.length != 5) throw new RuntimeException("findPath(grid, sx, sy, gx, gy) expects 5 arguments.");
+            IntList path = new IntList();
+            boolean found = navGrid(args[0]).findPath((int) args[1].asNumber(), (int) args[2].asNumber(),
+                    (int) args[3].asNumber(), (int) args[4].asNumber(), path);
+            return found ? numberArray(path) : Value.nil();
+        });
+
+        functions.put("jumpPath", (Value[] args) -> {
+            if (args.length != 5) throw new RuntimeException("jumpPath(grid, sx, sy, gx, gy) expects 5 arguments.");
+            IntList path = new IntList();
+            boolean found = navGrid(args[0]).jumpPath((int) args[1].asNumber(), (int) args[2].asNumber(),
+                    (int) args[3].asNumber(), (int) args[4].asNumber(), path);
+            return found ? numberArray(path) : Value.nil();
+        });
+
+        functions.put("findPaths", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("findPaths(grid, queries) expects 2 arguments.");
+            java.util.List<Value> queries = args[1].asArray();
+            int[] packed = new int[queries.size()];
+            for (int i = 0; i < packed.length; i++) {
+                packed[i] = (int) queries.get(i).asNumber();
+            }
+            IntList[] paths = navGrid(args[0]).findPaths(packed, true);
+            java.util.List<Value> results = new java.util.ArrayList<>(paths.length);
+            for (IntList path : paths) {
+                results.add(path == null ? Value.nil() : numberArray(path));
+            }
+            return Value.array(results);
+        });
+
+        functions.put("flowField", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("flowField(grid, tx, ty) expects 3 arguments.");
+            return Value.object(navGrid(args[0]).flowField((int) args[1].asNumber(), (int) args[2].asNumber()));
+        });
+
+        functions.put("flowDir", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("flowDir(field, x, y) expects 3 arguments.");
+            FlowField field = args[0].asObject(FlowField.class, "flow field");
+            int x = (int) args[1].asNumber();
+            int y = (int) args[2].asNumber();
+            java.util.List<Value> step = new java.util.ArrayList<>(2);
+            step.add(Value.number(field.directionX(x, y)));
+            step.add(Value.number(field.directionY(x, y)));
+            return Value.array(step);
+        });
+
+        // Entities; components are named numbers stored column-wise per archetype
+        functions.put("entityWorld", (Value[] args) -> {
+            if (args.length != 0) throw new RuntimeException("entityWorld() expects no arguments.");
+            return Value.object(new EntityWorld());
+        });
+
+        functions.put("spawnEntity", (Value[] args) -> {
+            if (args.length != 1) throw new RuntimeException("spawnEntity(world) expects 1 argument.");
+            return Value.number(entities(args[0]).spawn());
+        });
+
+        functions.put("destroyEntity", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("destroyEntity(world, entity) expects 2 arguments.");
+            entities(args[0]).destroy((int) args[1].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("setComponent", (Value[] args) -> {
+            if (args.length != 4) throw new RuntimeException("setComponent(world, entity, name, value) expects 4 arguments.");
+            entities(args[0]).set((int) args[1].asNumber(), args[2].asString(), args[3].asNumber());
+            return Value.nil();
+        });
+
+        functions.put("getComponent", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("getComponent(world, entity, name) expects 3 arguments.");
+            return Value.number(entities(args[0]).get((int) args[1].asNumber(), args[2].asString()));
+        });
+
+        functions.put("hasComponent", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("hasComponent(world, entity, name) expects 3 arguments.");
+            return Value.bool(entities(args[0]).has((int) args[1].asNumber(), args[2].asString()));
+        });
+
+        functions.put("removeComponent", (Value[] args) -> {
+            if (args.length != 3) throw new RuntimeException("removeComponent(world, entity, name) expects 3 arguments.");
+            entities(args[0]).remove((int) args[1].asNumber(), args[2].asString());
+            return Value.nil();
+        });
+
+        // Returns [ids, column, column, ...] as dense views over every entity that has all the components
+        functions.put("query", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("query(world, components) expects 2 arguments.");
+            EntityWorld.Query query = entities(args[0]).query(names(args[1]));
+            java.util.List<Value> result = new java.util.ArrayList<>();
+            for (java.util.List<Value> view : query.views()) {
+                result.add(Value.array(view));
+            }
+            return Value.array(result);
+        });
+
+        functions.put("addSystem", (Value[] args) -> {
+            if (args.length < 3) throw new RuntimeException("addSystem(world, kind, target, ...) expects at least 3 arguments.");
+            addEntitySystem(entities(args[0]), args);
+            return Value.nil();
+        });
+
+        functions.put("runSystems", (Value[] args) -> {
+            if (args.length != 2) throw new RuntimeException("runSystems(world, dt) expects 2 arguments.");
+            entities(args[0]).runSystems(args[1].asNumber());
+            return Value.nil();
+        });
+    }
+
+    // Native systems scripts can schedule; each declares what it writes and reads so
+    // independent ones run on separate cores
+    private static void addEntitySystem(EntityWorld world, Value[] args) {
+        String kind = args[1].asString();
+        String target = args[2].asString();
+        switch (kind) {
+            case "integrate" -> {
+                // target += source * dt, e.g. position from velocity
+                if (args.length != 4) throw new RuntimeException("addSystem(world, \"integrate\", target, source) expects 4 arguments.");
+                world.addSystem(kind, new String[] {target}, new String[] {args[3].asString()},
+                        (count, ids, columns, dt) -> {
+                            double[] out = columns[0];
+                            double[] rate = columns[1];
+                            for (int i = 0; i < count; i++) out[i] += rate[i] * dt;
+                        });
+            }
+            case "damp" -> {
+                // target shrinks by factor per second
+                if (args.length != 4) throw new RuntimeException("addSystem(world, \"damp\", target, factor) expects 4 arguments.");
+                double factor = args[3].asNumber();
+                world.addSystem(kind, new String[] {target}, new String[0], (count, ids, columns, dt) -> {
+                    double scale = Math.pow(factor, dt);
+                    double[] out = columns[0];
+                    for (int i = 0; i < count; i++) out[i] *= scale;
+                });
+            }
+            case "clamp" -> {
+                if (args.length != 5) throw new RuntimeException("addSystem(world, \"clamp\", target, min, max) expects 5 arguments.");
+                double min = args[3].asNumber();
+                double max = args[4].asNumber();
+                world.addSystem(kind, new String[] {target}, new String[0], (count, ids, columns, dt) -> {
+                    double[] out = columns[0];
+                    for (int i = 0; i < count; i++) out[i] = Math.max(min, Math.min(max, out[i]));
+                });
+            }
+            default -> throw new RuntimeException("Unknown system kind: " + kind);
+        }
+    }
+
+    private static EntityWorld entities(Value value) {
+        return value.asObject(EntityWorld.class, "entity world");
+    }
+
+    private static String[] names(Value value) {
+        java.util.List<Value> list = value.asArray();
+        String[] names = new String[list.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = list.get(i).asString();
+        }
+        return names;
+    }
+
+    private static NavGrid navGrid(Value value) {
+        return value.asObject(NavGrid.class, "navigation grid");
+    }
+
+    private static PhysicsWorld physics(Value value) {
+        return value.asObject(PhysicsWorld.class, "physics world");
+    }
+
+    private static SpatialIndex spatial(Value value) {
+        return value.asObject(SpatialIndex.class, "spatial index");
+    }
+
+    private static Value numberArray(IntList values) {
+        java.util.List<Value> elements = new java.util.ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            elements.add(Value.number(values.get(i)));
+        }
+        return Value.array(elements);
+    }
+}
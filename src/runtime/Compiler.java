@@ -2,27 +2,42 @@
 package runtime;
 
 import parser.ASTNode;
+import parser.FlatAST;
+import parser.ModuleGraph;
 import lexer.TokenType;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+// Emits JavaScript by walking the flat encoding of the program; tree input is encoded first
 public class Compiler {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private FlatAST ast;
     private StringBuilder js;
     private int indentLevel = 0;
     private int gameWidth = 800;
     private int gameHeight = 600;
+    private ModuleGraph modules;
+    private Path currentModule;
+    private final Map<Path, String> moduleNames = new HashMap<>();
 
     public void compile(List<ASTNode.Stmt> statements, String outputPath) throws IOException {
-        js = new StringBuilder();
+        compile(FlatAST.encode(statements), outputPath);
+    }
 
-        // Generate JavaScript code
-        for (ASTNode.Stmt stmt : statements) {
-            compileStmt(stmt);
-        }
+    public void compile(FlatAST program, String outputPath) throws IOException {
+        compile(program, null, outputPath);
+    }
 
-        // Wrap in HTML template
-        String html = generateHTML(js.toString());
+    // modules holds what the program imports; null when it imports nothing
+    public void compile(FlatAST program, ModuleGraph modules, String outputPath) throws IOException {
+        String html = toHTML(program, modules);
 
         // Write to file
         try (FileWriter writer = new FileWriter(outputPath)) {
@@ -30,187 +45,530 @@ public class Compiler {
         }
     }
 
-    private void compileStmt(ASTNode.Stmt stmt) {
-        if (stmt instanceof ASTNode.GameStart) {
-            ASTNode.GameStart game = (ASTNode.GameStart) stmt;
-            gameWidth = game.width;
-            gameHeight = game.height;
-            for (ASTNode.Stmt s : game.body) {
-                compileStmt(s);
-            }
-        } else if (stmt instanceof ASTNode.Let) {
-            ASTNode.Let let = (ASTNode.Let) stmt;
-            emit("let " + let.name.lexeme + " = " + compileExpr(let.initializer) + ";");
-        } else if (stmt instanceof ASTNode.Assignment) {
-            ASTNode.Assignment assign = (ASTNode.Assignment) stmt;
-            emit(assign.name.lexeme + " = " + compileExpr(assign.value) + ";");
-        } else if (stmt instanceof ASTNode.Function) {
-            ASTNode.Function func = (ASTNode.Function) stmt;
-            String params = String.join(", ", func.params.stream()
-                    .map(t -> t.lexeme).toArray(String[]::new));
-            emit("function " + func.name.lexeme + "(" + params + ") {");
+    // The finished page, for callers that write it out themselves
+    public String toHTML(FlatAST program, ModuleGraph modules) {
+        this.modules = modules;
+        js = new StringBuilder();
+
+        // Generate JavaScript code
+        if (modules != null && !modules.modules().isEmpty()) {
+            compileModules();
+        }
+        ast = program;
+        currentModule = modules != null ? modules.root() : null;
+        compileBody(program.statements());
+
+        // Wrap in HTML template
+        return generateHTML(js.toString());
+    }
+
+    // Only modules reachable from the program are in the graph, so nothing else is bundled. Each becomes a
+    // namespace object whose top level runs on first member access, like the interpreter's modules.
+    private void compileModules() {
+        emit("// Imported modules run their top level the first time one of their members is used");
+        emit("function $lazyModule(init) {");
+        indentLevel++;
+        emit("let exports = null, running = false;");
+        emit("const load = () => { if (!exports && !running) { running = true; exports = init(); } return exports || {}; };");
+        emit("return new Proxy({}, {");
+        indentLevel++;
+        emit("get(target, key) { return load()[key]; },");
+        emit("set(target, key, value) { load()[key] = value; return true; }");
+        indentLevel--;
+        emit("});");
+        indentLevel--;
+        emit("}");
+
+        List<Path> reachable = modules.modules();
+        for (int i = 0; i < reachable.size(); i++) {
+            moduleNames.put(reachable.get(i), "$module" + (i + 1));
+        }
+        Path base = modules.root().getParent();
+        for (Path module : reachable) {
+            ast = modules.program(module);
+            currentModule = module;
+            String label = base != null ? base.relativize(module).toString() : module.toString();
+            emit("// Module " + label.replace('\\', '/'));
+            emit("const " + moduleNames.get(module) + " = $lazyModule(function() {");
+            indentLevel++;
+            compileBody(ast.statements());
+            // Accessors rather than values, so the namespace sees later assignments to the module's variables
+            emit("return {");
             indentLevel++;
-            for (ASTNode.Stmt s : func.body) {
-                compileStmt(s);
+            for (String name : exports(ast.statements())) {
+                emit("get " + name + "() { return " + name + "; }, set " + name + "($value) { " + name + " = $value; },");
             }
             indentLevel--;
-            emit("}");
-        } else if (stmt instanceof ASTNode.Return) {
-            ASTNode.Return ret = (ASTNode.Return) stmt;
-            if (ret.value != null) {
-                emit("return " + compileExpr(ret.value) + ";");
-            } else {
-                emit("return;");
+            emit("};");
+            indentLevel--;
+            emit("});");
+        }
+    }
+
+    // Names a module's top level declares
+    private Set<String> exports(int statements) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < ast.count(statements); i++) {
+            int stmt = ast.item(statements, i);
+            switch (ast.kind(stmt)) {
+                case FlatAST.LET:
+                case FlatAST.FUNCTION:
+                case FlatAST.RECORD:
+                    names.add(ast.string(ast.operand(stmt, 0)));
+                    break;
+                case FlatAST.LOAD:
+                case FlatAST.IMPORT:
+                    names.add(name(ast.operand(stmt, 0)));
+                    break;
             }
-        } else if (stmt instanceof ASTNode.If) {
-            ASTNode.If ifStmt = (ASTNode.If) stmt;
-            emit("if (" + compileExpr(ifStmt.condition) + ") {");
-            indentLevel++;
-            for (ASTNode.Stmt s : ifStmt.thenBranch) {
-                compileStmt(s);
+        }
+        return names;
+    }
+
+    private void compileBody(int statements) {
+        for (int i = 0; i < ast.count(statements); i++) {
+            compileStmt(ast.item(statements, i));
+        }
+    }
+
+    private void compileStmt(int stmt) {
+        switch (ast.kind(stmt)) {
+            case FlatAST.GAME:
+                gameWidth = ast.operand(stmt, 0);
+                gameHeight = ast.operand(stmt, 1);
+                compileBody(ast.operand(stmt, 2));
+                break;
+            case FlatAST.LET:
+                emit("let " + ast.string(ast.operand(stmt, 0)) + " = " + bind(ast.operand(stmt, 1)) + ";");
+                break;
+            case FlatAST.ASSIGN: {
+                String variable = ast.string(ast.operand(stmt, 0));
+                emit(variable + " = $rebind(" + variable + ", " + bind(ast.operand(stmt, 1)) + ");");
+                break;
             }
-            indentLevel--;
-            if (!ifStmt.elseBranch.isEmpty()) {
-                emit("} else {");
+            case FlatAST.FUNCTION: {
+                int params = ast.operand(stmt, 1);
+                emit("function " + ast.string(ast.operand(stmt, 0)) + "(" + names(params) + ") {");
                 indentLevel++;
-                for (ASTNode.Stmt s : ifStmt.elseBranch) {
-                    compileStmt(s);
+                if (ast.count(params) > 0 && !closes(ast.operand(stmt, 2))) {
+                    // Parameters are bindings of their own, given up when the call returns
+                    emit(call("$share", params) + ";");
+                    emit("try {");
+                    indentLevel++;
+                    compileBody(ast.operand(stmt, 2));
+                    indentLevel--;
+                    emit("} finally {");
+                    emit("    " + call("$release", params) + ";");
+                    emit("}");
+                } else {
+                    // A closure may keep the parameters past the return, so they stay shared
+                    if (ast.count(params) > 0) emit(call("$share", params) + ";");
+                    compileBody(ast.operand(stmt, 2));
                 }
                 indentLevel--;
+                emit("}");
+                break;
             }
-            emit("}");
-        } else if (stmt instanceof ASTNode.While) {
-            ASTNode.While whileStmt = (ASTNode.While) stmt;
-            emit("while (" + compileExpr(whileStmt.condition) + ") {");
-            indentLevel++;
-            for (ASTNode.Stmt s : whileStmt.body) {
-                compileStmt(s);
+            case FlatAST.RETURN:
+                if (ast.operand(stmt, 0) != FlatAST.NONE) {
+                    emit("return " + compileExpr(ast.operand(stmt, 0)) + ";");
+                } else {
+                    emit("return;");
+                }
+                break;
+            case FlatAST.IF: {
+                emit("if (" + compileExpr(ast.operand(stmt, 0)) + ") {");
+                indentLevel++;
+                compileBody(ast.operand(stmt, 1));
+                indentLevel--;
+                int elseBranch = ast.operand(stmt, 2);
+                if (ast.count(elseBranch) > 0) {
+                    emit("} else {");
+                    indentLevel++;
+                    compileBody(elseBranch);
+                    indentLevel--;
+                }
+                emit("}");
+                break;
             }
-            indentLevel--;
-            emit("}");
-        } else if (stmt instanceof ASTNode.For) {
-            ASTNode.For forStmt = (ASTNode.For) stmt;
-            emit("for (let " + forStmt.variable.lexeme + " of " + compileExpr(forStmt.iterable) + ") {");
-            indentLevel++;
-            for (ASTNode.Stmt s : forStmt.body) {
-                compileStmt(s);
+            case FlatAST.WHILE:
+                emit("while (" + compileExpr(ast.operand(stmt, 0)) + ") {");
+                indentLevel++;
+                compileBody(ast.operand(stmt, 1));
+                indentLevel--;
+                emit("}");
+                break;
+            case FlatAST.FOR: {
+                String variable = name(ast.operand(stmt, 0));
+                int iterable = ast.operand(stmt, 1);
+                emit("for (let " + variable + " of iterate(" + compileExpr(iterable) + ")) {");
+                indentLevel++;
+                if (isRangeCall(iterable)) {
+                    // A range only yields numbers
+                    compileBody(ast.operand(stmt, 2));
+                } else if (closes(ast.operand(stmt, 2))) {
+                    emit("$share(" + variable + ");");
+                    compileBody(ast.operand(stmt, 2));
+                } else {
+                    // The loop variable shares each element for one iteration
+                    emit("$share(" + variable + ");");
+                    emit("try {");
+                    indentLevel++;
+                    compileBody(ast.operand(stmt, 2));
+                    indentLevel--;
+                    emit("} finally {");
+                    emit("    $release(" + variable + ");");
+                    emit("}");
+                }
+                indentLevel--;
+                emit("}");
+                break;
             }
-            indentLevel--;
-            emit("}");
-        } else if (stmt instanceof ASTNode.Load) {
-            ASTNode.Load load = (ASTNode.Load) stmt;
-            emit("// Load image: " + load.path);
-            emit(load.name.lexeme + " = new Image();");
-            emit(load.name.lexeme + ".src = 'assets/" + load.path + "';");
-        } else if (stmt instanceof ASTNode.Draw) {
-            ASTNode.Draw draw = (ASTNode.Draw) stmt;
-            compileDraw(draw);
-        } else if (stmt instanceof ASTNode.Show) {
-            ASTNode.Show show = (ASTNode.Show) stmt;
-            emit("ctx.fillStyle = 'white';");
-            emit("ctx.font = '16px Arial';");
-            String x = compileExpr(show.x);
-            String y = compileExpr(show.y);
-            if ("center".equals(show.alignment)) {
-                emit("ctx.textAlign = 'center';");
-            } else if ("right".equals(show.alignment)) {
-                emit("ctx.textAlign = 'right';");
-            } else {
-                emit("ctx.textAlign = 'left';");
+            case FlatAST.LOAD: {
+                String name = name(ast.operand(stmt, 0));
+                String path = ast.string(ast.operand(stmt, 1));
+                emit("// Load image: " + path);
+                emit(name + " = new Image();");
+                emit(name + ".src = 'assets/" + path + "';");
+                break;
             }
-            emit("ctx.fillText(\"" + show.text + "\", " + x + ", " + y + ");");
-        } else if (stmt instanceof ASTNode.Play) {
-            emit("// Play sound: " + ((ASTNode.Play) stmt).path);
-        } else if (stmt instanceof ASTNode.Print) {
-            ASTNode.Print print = (ASTNode.Print) stmt;
-            emit("console.log(" + compileExpr(print.expression) + ");");
-        } else if (stmt instanceof ASTNode.Block) {
-            ASTNode.Block block = (ASTNode.Block) stmt;
-            emit("{");
-            indentLevel++;
-            for (ASTNode.Stmt s : block.statements) {
-                compileStmt(s);
+            case FlatAST.DRAW:
+                compileDraw(stmt);
+                break;
+            case FlatAST.SHOW: {
+                emit("ctx.fillStyle = 'white';");
+                emit("ctx.font = '16px Arial';");
+                String x = compileExpr(ast.operand(stmt, 1));
+                String y = compileExpr(ast.operand(stmt, 2));
+                String alignment = ast.string(ast.operand(stmt, 3));
+                if ("center".equals(alignment)) {
+                    emit("ctx.textAlign = 'center';");
+                } else if ("right".equals(alignment)) {
+                    emit("ctx.textAlign = 'right';");
+                } else {
+                    emit("ctx.textAlign = 'left';");
+                }
+                emit("ctx.fillText(\"" + ast.string(ast.operand(stmt, 0)) + "\", " + x + ", " + y + ");");
+                break;
+            }
+            case FlatAST.PLAY:
+                emit("// Play sound: " + ast.string(ast.operand(stmt, 0)));
+                break;
+            case FlatAST.PRINT:
+                emit("console.log(" + compileExpr(ast.operand(stmt, 0)) + ");");
+                break;
+            case FlatAST.BLOCK:
+                emit("{");
+                indentLevel++;
+                compileBody(ast.operand(stmt, 0));
+                indentLevel--;
+                emit("}");
+                break;
+            case FlatAST.WAIT: {
+                int millis = ast.operand(stmt, 0);
+                String amount = millis != FlatAST.NONE ? compileExpr(millis) + " ms" : "frame";
+                emit("// Wait " + amount + " (not supported in web export)");
+                break;
+            }
+            case FlatAST.YIELD:
+                emit("// Yield (not supported in web export)");
+                break;
+            case FlatAST.SPAWN:
+                // Without a scheduler the spawned call simply runs to completion in place
+                emit(compileExpr(ast.operand(stmt, 0)) + ";");
+                break;
+            case FlatAST.TIMER: {
+                int name = ast.operand(stmt, 2);
+                String prefix = name != FlatAST.NONE ? "let " + name(name) + " = " : "";
+                emit(prefix + (ast.operand(stmt, 1) != 0 ? "setInterval" : "setTimeout") + "(function() {");
+                indentLevel++;
+                compileBody(ast.operand(stmt, 3));
+                indentLevel--;
+                emit("}, " + compileExpr(ast.operand(stmt, 0)) + ");");
+                break;
+            }
+            case FlatAST.CANCEL:
+                // Timeouts and intervals share one id space, so clearTimeout covers both
+                emit("clearTimeout(" + compileExpr(ast.operand(stmt, 0)) + ");");
+                break;
+            case FlatAST.RECORD: {
+                // Plain objects with a fixed key order keep a single hidden class in JS engines
+                int fields = ast.operand(stmt, 1);
+                StringBuilder body = new StringBuilder();
+                for (int i = 0; i < ast.count(fields); i++) {
+                    String field = name(ast.item(fields, i));
+                    if (body.length() > 0) body.append(", ");
+                    body.append(field).append(": $share(").append(field).append(") ?? null");
+                }
+                emit("function " + ast.string(ast.operand(stmt, 0)) + "(" + names(fields) + ") {");
+                indentLevel++;
+                emit("return {" + body + "};");
+                indentLevel--;
+                emit("}");
+                break;
+            }
+            case FlatAST.SET_FIELD:
+                emit(compileExpr(ast.operand(stmt, 0)) + " = " + bind(ast.operand(stmt, 1)) + ";");
+                break;
+            case FlatAST.SET_INDEX:
+                emit("$set(" + compileTarget(ast.operand(stmt, 0)) + ", " + compileExpr(ast.operand(stmt, 1)) + ", "
+                        + bind(ast.operand(stmt, 2)) + ");");
+                break;
+            case FlatAST.EXPRESSION:
+                emit(compileExpr(ast.operand(stmt, 0)) + ";");
+                break;
+            case FlatAST.IMPORT: {
+                String path = ast.string(ast.operand(stmt, 1));
+                Path target = modules != null ? modules.resolve(currentModule, path) : null;
+                if (target == null) {
+                    throw new RuntimeException("Can't import " + path + " here; imports only work at the top level of a script");
+                }
+                emit("let " + name(ast.operand(stmt, 0)) + " = " + moduleNames.get(target) + ";");
+                break;
             }
-            indentLevel--;
-            emit("}");
-        } else if (stmt instanceof ASTNode.ExpressionStmt) {
-            ASTNode.ExpressionStmt exprStmt = (ASTNode.ExpressionStmt) stmt;
-            emit(compileExpr(exprStmt.expression) + ";");
         }
     }
 
-    private void compileDraw(ASTNode.Draw draw) {
-        List<ASTNode.Expr> args = draw.args;
-        String type = draw.type;
+    private void compileDraw(int draw) {
+        int args = ast.operand(draw, 1);
+        int count = ast.count(args);
+        String type = ast.string(ast.operand(draw, 0));
+        String color = ast.string(ast.operand(draw, 2));
 
-        if ("rect".equals(type) && args.size() >= 4) {
-            emit("ctx.fillStyle = '" + draw.color + "';");
+        if ("rect".equals(type) && count >= 4) {
+            emit("ctx.fillStyle = '" + color + "';");
             emit("ctx.fillRect(" +
-                    compileExpr(args.get(0)) + ", " +
-                    compileExpr(args.get(1)) + ", " +
-                    compileExpr(args.get(2)) + ", " +
-                    compileExpr(args.get(3)) + ");");
-        } else if ("circle".equals(type) && args.size() >= 3) {
-            emit("ctx.fillStyle = '" + draw.color + "';");
+                    compileArg(args, 0) + ", " +
+                    compileArg(args, 1) + ", " +
+                    compileArg(args, 2) + ", " +
+                    compileArg(args, 3) + ");");
+        } else if ("circle".equals(type) && count >= 3) {
+            emit("ctx.fillStyle = '" + color + "';");
             emit("ctx.beginPath();");
-            String x = compileExpr(args.get(0));
-            String y = compileExpr(args.get(1));
-            String r = compileExpr(args.get(2));
+            String x = compileArg(args, 0);
+            String y = compileArg(args, 1);
+            String r = compileArg(args, 2);
             emit("ctx.arc(" + x + ", " + y + ", " + r + ", 0, Math.PI * 2);");
             emit("ctx.fill();");
-        } else if ("image".equals(type) && args.size() >= 3) {
+        } else if ("image".equals(type) && count >= 3 && isTransformed(draw)) {
+            int rotationNode = ast.operand(draw, 3);
+            int scaleNode = ast.operand(draw, 4);
+            int flags = ast.operand(draw, 5);
+            String tint = ast.string(ast.operand(draw, 6));
+            String img = compileArg(args, 0);
+            String scale = scaleNode != FlatAST.NONE ? compileExpr(scaleNode) : "1";
+            String rotation = rotationNode != FlatAST.NONE ? compileExpr(rotationNode) : "0";
+            emit("ctx.save();");
+            emit("ctx.translate(" + compileArg(args, 1) + " + " + img + ".width / 2, " +
+                    compileArg(args, 2) + " + " + img + ".height / 2);");
+            emit("ctx.rotate((" + rotation + ") * Math.PI / 180);");
+            emit("ctx.scale(" + ((flags & FlatAST.FLIP_X) != 0 ? "-" : "") + "(" + scale + "), " +
+                    ((flags & FlatAST.FLIP_Y) != 0 ? "-" : "") + "(" + scale + "));");
+            if (tint != null) {
+                emit("// Tint '" + tint + "' is not supported in web export");
+            }
+            emit("ctx.drawImage(" + img + ", -" + img + ".width / 2, -" + img + ".height / 2);");
+            emit("ctx.restore();");
+        } else if ("image".equals(type) && count >= 3) {
             emit("ctx.drawImage(" +
-                    compileExpr(args.get(0)) + ", " +
-                    compileExpr(args.get(1)) + ", " +
-                    compileExpr(args.get(2)) + ");");
-        } else if ("line".equals(type) && args.size() >= 4) {
-            emit("ctx.strokeStyle = '" + draw.color + "';");
+                    compileArg(args, 0) + ", " +
+                    compileArg(args, 1) + ", " +
+                    compileArg(args, 2) + ");");
+        } else if ("tilemap".equals(type) && count >= 3) {
+            emit("// Draw tilemap: " + compileArg(args, 0) + " (not supported in web export)");
+        } else if ("particles".equals(type) && count >= 1) {
+            emit("// Draw particles: " + compileArg(args, 0) + " (not supported in web export)");
+        } else if ("line".equals(type) && count >= 4) {
+            emit("ctx.strokeStyle = '" + color + "';");
             emit("ctx.lineWidth = 2;");
             emit("ctx.beginPath();");
-            emit("ctx.moveTo(" + compileExpr(args.get(0)) + ", " + compileExpr(args.get(1)) + ");");
-            emit("ctx.lineTo(" + compileExpr(args.get(2)) + ", " + compileExpr(args.get(3)) + ");");
+            emit("ctx.moveTo(" + compileArg(args, 0) + ", " + compileArg(args, 1) + ");");
+            emit("ctx.lineTo(" + compileArg(args, 2) + ", " + compileArg(args, 3) + ");");
             emit("ctx.stroke();");
         }
     }
 
-    private String compileExpr(ASTNode.Expr expr) {
-        if (expr instanceof ASTNode.Literal) {
-            Object value = ((ASTNode.Literal) expr).value;
-            if (value instanceof String) {
-                return "\"" + value + "\"";
+    // Mirrors ASTNode.Draw.isTransformed
+    private boolean isTransformed(int draw) {
+        return ast.operand(draw, 3) != FlatAST.NONE || ast.operand(draw, 4) != FlatAST.NONE
+                || ast.operand(draw, 5) != 0 || ast.operand(draw, 6) != FlatAST.NONE;
+    }
+
+    private String compileArg(int list, int i) {
+        return compileExpr(ast.item(list, i));
+    }
+
+    private String compileExpr(int expr) {
+        switch (ast.kind(expr)) {
+            case FlatAST.LITERAL: {
+                Object value = ast.constant(ast.operand(expr, 0));
+                if (value instanceof String) {
+                    return "\"" + value + "\"";
+                }
+                if (value == null) return "null";
+                return value.toString();
+            }
+            case FlatAST.NUMBER:
+                return Double.toString(ast.number(expr));
+            case FlatAST.VARIABLE:
+                return ast.string(ast.operand(expr, 0));
+            case FlatAST.BINARY: {
+                String left = compileExpr(ast.operand(expr, 2));
+                String right = compileExpr(ast.operand(expr, 3));
+                String op = getJSOperator(TOKEN_TYPES[ast.operand(expr, 0)]);
+                return "(" + left + " " + op + " " + right + ")";
+            }
+            case FlatAST.UNARY: {
+                String op = getJSOperator(TOKEN_TYPES[ast.operand(expr, 0)]);
+                return "(" + op + compileExpr(ast.operand(expr, 2)) + ")";
+            }
+            case FlatAST.CALL: {
+                int args = ast.operand(expr, 1);
+                String callee = compileExpr(ast.operand(expr, 0));
+                // remove() changes the map it is given, so that map is written like an index target
+                if (callee.equals("remove") && ast.count(args) > 0) {
+                    StringBuilder text = new StringBuilder(compileTarget(ast.item(args, 0)));
+                    for (int i = 1; i < ast.count(args); i++) text.append(", ").append(compileArg(args, i));
+                    return callee + "(" + text + ")";
+                }
+                return callee + "(" + compileList(args) + ")";
+            }
+            case FlatAST.INDEX:
+                return "$get(" + compileExpr(ast.operand(expr, 0)) + ", " + compileExpr(ast.operand(expr, 1)) + ")";
+            case FlatAST.GET:
+                return compileExpr(ast.operand(expr, 0)) + "." + ast.string(ast.operand(expr, 1));
+            case FlatAST.SLICE: {
+                int startNode = ast.operand(expr, 1);
+                int endNode = ast.operand(expr, 2);
+                String start = startNode != FlatAST.NONE ? compileExpr(startNode) : "0";
+                String end = endNode != FlatAST.NONE ? ", " + compileExpr(endNode) : "";
+                return "$slice(" + compileExpr(ast.operand(expr, 0)) + ", " + start + end + ")";
+            }
+            case FlatAST.MAP: {
+                int keys = ast.operand(expr, 0);
+                int values = ast.operand(expr, 1);
+                StringBuilder entries = new StringBuilder();
+                for (int i = 0; i < ast.count(keys); i++) {
+                    if (i > 0) entries.append(", ");
+                    entries.append("[").append(compileArg(keys, i)).append(", ")
+                            .append(bind(ast.item(values, i))).append("]");
+                }
+                return "new Map([" + entries + "])";
+            }
+            case FlatAST.ARRAY: {
+                int elements = ast.operand(expr, 0);
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < ast.count(elements); i++) {
+                    if (i > 0) text.append(", ");
+                    text.append(bind(ast.item(elements, i)));
+                }
+                return "[" + text + "]";
             }
-            if (value == null) return "null";
-            return value.toString();
-        } else if (expr instanceof ASTNode.Variable) {
-            return ((ASTNode.Variable) expr).name.lexeme;
-        } else if (expr instanceof ASTNode.Binary) {
-            ASTNode.Binary binary = (ASTNode.Binary) expr;
-            String left = compileExpr(binary.left);
-            String right = compileExpr(binary.right);
-            String op = getJSOperator(binary.operator.type);
-            return "(" + left + " " + op + " " + right + ")";
-        } else if (expr instanceof ASTNode.Unary) {
-            ASTNode.Unary unary = (ASTNode.Unary) expr;
-            String op = getJSOperator(unary.operator.type);
-            return "(" + op + compileExpr(unary.right) + ")";
-        } else if (expr instanceof ASTNode.Call) {
-            ASTNode.Call call = (ASTNode.Call) expr;
-            String callee = compileExpr(call.callee);
-            String args = String.join(", ", call.arguments.stream()
-                    .map(this::compileExpr).toArray(String[]::new));
-            return callee + "(" + args + ")";
-        } else if (expr instanceof ASTNode.Index) {
-            ASTNode.Index index = (ASTNode.Index) expr;
-            return compileExpr(index.object) + "[" + compileExpr(index.index) + "]";
-        } else if (expr instanceof ASTNode.ArrayLiteral) {
-            ASTNode.ArrayLiteral arrLit = (ASTNode.ArrayLiteral) expr;
-            String elements = String.join(", ", arrLit.elements.stream()
-                    .map(this::compileExpr).toArray(String[]::new));
-            return "[" + elements + "]";
         }
         return "null";
     }
 
+    // An array or map about to be written through expr, copied first and stored back wherever expr reads
+    // it from if anything else shares it, along the whole path for nested targets like g[0][0]
+    private String compileTarget(int expr) {
+        switch (ast.kind(expr)) {
+            case FlatAST.VARIABLE: {
+                String variable = ast.string(ast.operand(expr, 0));
+                return "(" + variable + " = $own(" + variable + "))";
+            }
+            case FlatAST.GET:
+                return "$ownField(" + compileExpr(ast.operand(expr, 0)) + ", \"" + ast.string(ast.operand(expr, 1)) + "\")";
+            case FlatAST.INDEX:
+                return "$ownAt(" + compileTarget(ast.operand(expr, 0)) + ", " + compileExpr(ast.operand(expr, 1)) + ")";
+            default:
+                return compileExpr(expr);
+        }
+    }
+
+    // Arrays and maps are values, as in the interpreter, so storing one anywhere adds a sharer and the first
+    // write copies it. Literals, arithmetic, slices and fresh array or map literals can't be shared with
+    // anything and are stored as they are.
+    private String bind(int expr) {
+        String code = compileExpr(expr);
+        switch (ast.kind(expr)) {
+            case FlatAST.LITERAL:
+            case FlatAST.NUMBER:
+            case FlatAST.BINARY:
+            case FlatAST.UNARY:
+            case FlatAST.SLICE:
+            case FlatAST.ARRAY:
+            case FlatAST.MAP:
+                return code;
+            default:
+                return "$share(" + code + ")";
+        }
+    }
+
+    // Whether statements create a timer or function, which can keep the enclosing bindings alive
+    private boolean closes(int statements) {
+        for (int i = 0; i < ast.count(statements); i++) {
+            int stmt = ast.item(statements, i);
+            switch (ast.kind(stmt)) {
+                case FlatAST.TIMER:
+                case FlatAST.FUNCTION:
+                    return true;
+                case FlatAST.IF:
+                    if (closes(ast.operand(stmt, 1)) || closes(ast.operand(stmt, 2))) return true;
+                    break;
+                case FlatAST.BLOCK:
+                    if (closes(ast.operand(stmt, 0))) return true;
+                    break;
+                case FlatAST.WHILE:
+                    if (closes(ast.operand(stmt, 1))) return true;
+                    break;
+                case FlatAST.FOR:
+                case FlatAST.GAME:
+                    if (closes(ast.operand(stmt, 2))) return true;
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRangeCall(int expr) {
+        if (ast.kind(expr) != FlatAST.CALL) return false;
+        int callee = ast.operand(expr, 0);
+        return ast.kind(callee) == FlatAST.VARIABLE && ast.string(ast.operand(callee, 0)).equals("range");
+    }
+
+    // fn(a); fn(b); ... for a list of NAME nodes
+    private String call(String fn, int names) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ast.count(names); i++) {
+            if (i > 0) text.append("; ");
+            text.append(fn).append("(").append(name(ast.item(names, i))).append(")");
+        }
+        return text.toString();
+    }
+
+    private String compileList(int list) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ast.count(list); i++) {
+            if (i > 0) text.append(", ");
+            text.append(compileArg(list, i));
+        }
+        return text.toString();
+    }
+
+    private String name(int node) {
+        return ast.string(ast.operand(node, 0));
+    }
+
+    // Comma-separated names of a list of NAME nodes, as in a parameter list
+    private String names(int list) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ast.count(list); i++) {
+            if (i > 0) text.append(", ");
+            text.append(name(ast.item(list, i)));
+        }
+        return text.toString();
+    }
+
     private String getJSOperator(TokenType type) {
         return switch (type) {
             case PLUS -> "+";
@@ -272,6 +630,66 @@ public class Compiler {
                 "        ctx.fillStyle = 'black';\n" +
                 "        ctx.fillRect(0, 0, canvas.width, canvas.height);\n" +
                 "        \n" +
+                "        // Runtime helpers\n" +
+                "        // Like the interpreter's Range: elements are computed from their index, never stored\n" +
+                "        class $Range {\n" +
+                "            constructor(start, end, step, length) {\n" +
+                "                this.start = start; this.end = end; this.step = step; this.length = length;\n" +
+                "            }\n" +
+                "            at(i) {\n" +
+                "                if (!(i >= 0 && i < this.length)) throw new Error(\"Index \" + i + \" out of \" + this.length);\n" +
+                "                return this.start + i * this.step;\n" +
+                "            }\n" +
+                "            // Bounds as in the interpreter's slices; the count carries over rather than being re-derived\n" +
+                "            slice(from, to) {\n" +
+                "                const bound = (b, fallback) => {\n" +
+                "                    if (b === undefined) return fallback;\n" +
+                "                    b = Math.trunc(b);\n" +
+                "                    return Math.max(0, Math.min(this.length, b < 0 ? b + this.length : b));\n" +
+                "                };\n" +
+                "                const a = bound(from, 0), b = Math.max(a, bound(to, this.length));\n" +
+                "                return new $Range(this.start + a * this.step, this.start + b * this.step, this.step, b - a);\n" +
+                "            }\n" +
+                "            *[Symbol.iterator]() { for (let i = 0; i < this.length; i++) yield this.start + i * this.step; }\n" +
+                "        }\n" +
+                "        function range(start, end, step) {\n" +
+                "            if (end === undefined) { end = start; start = 0; }\n" +
+                "            if (step === undefined) step = 1;\n" +
+                "            if (step === 0 || Number.isNaN(step)) throw new Error(\"range() step can't be zero\");\n" +
+                "            return new $Range(start, end, step, Math.max(0, Math.ceil((end - start) / step)));\n" +
+                "        }\n" +
+                "        // Arrays and maps are values, but binding one only shares it: $owners counts the bindings\n" +
+                "        // holding it, and a write through one that isn't the only one copies it first. The copy is\n" +
+                "        // one level deep; nested arrays and maps gain a sharer and are copied when written in turn.\n" +
+                "        const $owners = new WeakMap();\n" +
+                "        function $share(v) {\n" +
+                "            if (Array.isArray(v) || v instanceof Map) $owners.set(v, ($owners.get(v) || 1) + 1);\n" +
+                "            return v;\n" +
+                "        }\n" +
+                "        function $release(v) { const n = $owners.get(v); if (n > 1) $owners.set(v, n - 1); }\n" +
+                "        function $rebind(old, v) { $release(old); return v; }\n" +
+                "        function $own(v) {\n" +
+                "            const n = $owners.get(v);\n" +
+                "            if (!(n > 1)) return v;\n" +
+                "            $owners.set(v, n - 1);\n" +
+                "            return Array.isArray(v) ? v.map($share) : new Map(Array.from(v, ([k, x]) => [k, $share(x)]));\n" +
+                "        }\n" +
+                "        function $ownAt(o, k) { const v = $get(o, k), w = $own(v); if (w !== v) $set(o, k, w); return w; }\n" +
+                "        function $ownField(o, f) { const v = o[f], w = $own(v); if (w !== v) o[f] = w; return w; }\n" +
+                "        function $slice(o, a, b) { const s = o.slice(a, b); if (Array.isArray(s)) s.forEach($share); return s; }\n" +
+                "        // Maps compile to Map, so number keys stay numbers; a missing key reads as null\n" +
+                "        function $get(o, k) {\n" +
+                "            if (o instanceof Map) return o.has(k) ? o.get(k) : null;\n" +
+                "            return o instanceof $Range ? o.at(k) : o[k];\n" +
+                "        }\n" +
+                "        function $set(o, k, v) { if (o instanceof Map) o.set(k, v); else o[k] = v; }\n" +
+                "        // for-loops walk a map's keys\n" +
+                "        function iterate(x) { return x instanceof Map ? x.keys() : x; }\n" +
+                "        function has(m, k) { return m.has(k); }\n" +
+                "        function remove(m, k) { const v = m.has(k) ? m.get(k) : null; m.delete(k); return v; }\n" +
+                "        function keys(m) { return Array.from(m.keys()); }\n" +
+                "        function values(m) { return Array.from(m.values(), $share); }\n" +
+                "        \n" +
                 "        // Game code\n" +
                 jsCode + "\n" +
                 "    </script>\n" +
@@ -0,0 +1,49 @@
+// src/runtime/DaemonClient.java
+package runtime;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Sends one command to a BuildDaemon and relays what it prints. Loads none of the parser or interpreter, so
+// a command costs a bare JVM start plus the work itself on an already warm daemon.
+public class DaemonClient {
+
+    // Returns the command's exit status, or -1 when no daemon is listening on socket
+    public static int send(Path socket, String[] args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return -1;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeUTF(Paths.get("").toAbsolutePath().toString());
+            out.writeInt(args.length);
+            for (String arg : args) out.writeUTF(arg);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            while (true) {
+                byte kind = in.readByte();
+                if (kind == BuildDaemon.EXIT) {
+                    System.out.flush();
+                    System.err.flush();
+                    return in.readInt();
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                PrintStream target = kind == BuildDaemon.STDERR ? System.err : System.out;
+                target.write(bytes, 0, bytes.length);
+                target.flush();
+            }
+        }
+    }
+}
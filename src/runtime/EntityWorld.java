@@ -0,0 +1,439 @@
+// src/runtime/EntityWorld.java
+package runtime;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Entity-component storage grouped by archetype: every distinct set of components gets its own table
+// with one double[] column per component, so iterating a query is a tight loop over dense arrays.
+// Components are single numbers named by string; up to 64 kinds per world.
+public class EntityWorld {
+    public static final int MAX_COMPONENTS = 64;
+
+    // Runs over one archetype table; columns follow the order the query or system listed its components
+    @FunctionalInterface
+    public interface Chunk {
+        void accept(int count, int[] entities, double[][] columns);
+    }
+
+    @FunctionalInterface
+    public interface Kernel {
+        void run(int count, int[] entities, double[][] columns, double dt);
+    }
+
+    private final Map<String, Integer> componentIds = new HashMap<>();
+    private final List<String> componentNames = new ArrayList<>();
+    private final List<Archetype> archetypes = new ArrayList<>();
+    private final Map<Long, Archetype> archetypesByMask = new HashMap<>();
+    private final Archetype empty;
+
+    // Where each live entity sits; a null archetype marks a free id
+    private Archetype[] entityArchetype = new Archetype[64];
+    private int[] entityRow = new int[64];
+    private final IntList freeIds = new IntList();
+    private int nextId = 0;
+    private int entityCount = 0;
+
+    // Bumped on every structural change so script views can tell they have gone stale
+    private int structureVersion = 0;
+    private boolean running = false;
+
+    private final List<SystemEntry> systems = new ArrayList<>();
+    private int[] stageStart = null;
+
+    public EntityWorld() {
+        empty = archetypeFor(0L);
+    }
+
+    public int spawn() {
+        requireIdle();
+        int id;
+        if (freeIds.size() > 0) {
+            id = freeIds.removeLast();
+        } else {
+            id = nextId++;
+            if (id == entityArchetype.length) {
+                entityArchetype = Arrays.copyOf(entityArchetype, id * 2);
+                entityRow = Arrays.copyOf(entityRow, id * 2);
+            }
+        }
+        entityArchetype[id] = empty;
+        entityRow[id] = empty.add(id);
+        entityCount++;
+        structureVersion++;
+        return id;
+    }
+
+    public void destroy(int entity) {
+        requireIdle();
+        Archetype archetype = archetypeOf(entity);
+        detach(archetype, entityRow[entity]);
+        entityArchetype[entity] = null;
+        freeIds.add(entity);
+        entityCount--;
+        structureVersion++;
+    }
+
+    public boolean isAlive(int entity) {
+        return entity >= 0 && entity < nextId && entityArchetype[entity] != null;
+    }
+
+    public int size() {
+        return entityCount;
+    }
+
+    // Adds the component when the entity doesn't have it yet, moving it to the matching archetype
+    public void set(int entity, String component, double value) {
+        Archetype archetype = archetypeOf(entity);
+        int id = componentId(component);
+        int slot = archetype.slotOf[id];
+        if (slot < 0) {
+            requireIdle();
+            archetype = move(entity, archetype, archetype.mask | (1L << id));
+            slot = archetype.slotOf[id];
+        }
+        archetype.columns[slot][entityRow[entity]] = value;
+    }
+
+    public double get(int entity, String component) {
+        Archetype archetype = archetypeOf(entity);
+        Integer id = componentIds.get(component);
+        int slot = id == null ? -1 : archetype.slotOf[id];
+        if (slot < 0) throw new RuntimeException("Entity " + entity + " has no " + component + " component");
+        return archetype.columns[slot][entityRow[entity]];
+    }
+
+    public boolean has(int entity, String component) {
+        Archetype archetype = archetypeOf(entity);
+        Integer id = componentIds.get(component);
+        return id != null && archetype.slotOf[id] >= 0;
+    }
+
+    public void remove(int entity, String component) {
+        Archetype archetype = archetypeOf(entity);
+        Integer id = componentIds.get(component);
+        if (id == null || archetype.slotOf[id] < 0) return;
+        requireIdle();
+        move(entity, archetype, archetype.mask & ~(1L << id));
+    }
+
+    public Query query(String... components) {
+        return new Query(components);
+    }
+
+    // Systems are grouped into stages: a system joins the first stage after every earlier system it
+    // conflicts with (one writes what the other touches), and systems within a stage run in parallel
+    public void addSystem(String name, String[] writes, String[] reads, Kernel kernel) {
+        String[] components = new String[writes.length + reads.length];
+        System.arraycopy(writes, 0, components, 0, writes.length);
+        System.arraycopy(reads, 0, components, writes.length, reads.length);
+        systems.add(new SystemEntry(name, maskOf(writes), maskOf(reads), new Query(components), kernel));
+        stageStart = null;
+    }
+
+    public void runSystems(double dt) {
+        if (systems.isEmpty()) return;
+        if (stageStart == null) schedule();
+        running = true;
+        try {
+            for (int stage = 0; stage + 1 < stageStart.length; stage++) {
+                int from = stageStart[stage];
+                int to = stageStart[stage + 1];
+                if (to - from == 1) {
+                    systems.get(from).run(dt);
+                } else {
+                    IntStream.range(from, to).parallel().forEach(i -> systems.get(i).run(dt));
+                }
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    public int stageCount() {
+        if (stageStart == null) schedule();
+        return stageStart.length - 1;
+    }
+
+    private void schedule() {
+        int n = systems.size();
+        int[] stageOf = new int[n];
+        int stages = 0;
+        for (int i = 0; i < n; i++) {
+            SystemEntry system = systems.get(i);
+            int stage = 0;
+            for (int j = 0; j < i; j++) {
+                if (system.conflictsWith(systems.get(j))) stage = Math.max(stage, stageOf[j] + 1);
+            }
+            stageOf[i] = stage;
+            stages = Math.max(stages, stage + 1);
+        }
+        // Stable sort by stage keeps registration order inside a stage
+        List<SystemEntry> ordered = new ArrayList<>(n);
+        stageStart = new int[stages + 1];
+        for (int stage = 0; stage < stages; stage++) {
+            stageStart[stage] = ordered.size();
+            for (int i = 0; i < n; i++) {
+                if (stageOf[i] == stage) ordered.add(systems.get(i));
+            }
+        }
+        stageStart[stages] = n;
+        systems.clear();
+        systems.addAll(ordered);
+    }
+
+    private Archetype archetypeOf(int entity) {
+        if (!isAlive(entity)) throw new RuntimeException("Entity " + entity + " does not exist");
+        return entityArchetype[entity];
+    }
+
+    private void requireIdle() {
+        if (running) throw new RuntimeException("Entities can't be added or reshaped while systems are running");
+    }
+
+    private int componentId(String name) {
+        Integer id = componentIds.get(name);
+        if (id != null) return id;
+        if (componentNames.size() == MAX_COMPONENTS) {
+            throw new RuntimeException("An entity world supports at most " + MAX_COMPONENTS + " component kinds");
+        }
+        id = componentNames.size();
+        componentNames.add(name);
+        componentIds.put(name, id);
+        return id;
+    }
+
+    private long maskOf(String[] components) {
+        long mask = 0;
+        for (String name : components) mask |= 1L << componentId(name);
+        return mask;
+    }
+
+    private Archetype move(int entity, Archetype from, long mask) {
+        Archetype to = archetypeFor(mask);
+        int oldRow = entityRow[entity];
+        int newRow = to.add(entity);
+        for (int slot = 0; slot < to.components.length; slot++) {
+            int fromSlot = from.slotOf[to.components[slot]];
+            if (fromSlot >= 0) to.columns[slot][newRow] = from.columns[fromSlot][oldRow];
+        }
+        detach(from, oldRow);
+        entityArchetype[entity] = to;
+        entityRow[entity] = newRow;
+        structureVersion++;
+        return to;
+    }
+
+    // Swap-removes a row and repoints the entity that filled the hole
+    private void detach(Archetype archetype, int row) {
+        int moved = archetype.removeRow(row);
+        if (moved >= 0) entityRow[moved] = row;
+    }
+
+    private Archetype archetypeFor(long mask) {
+        Archetype archetype = archetypesByMask.get(mask);
+        if (archetype == null) {
+            archetype = new Archetype(mask);
+            archetypesByMask.put(mask, archetype);
+            archetypes.add(archetype);
+        }
+        return archetype;
+    }
+
+    private static final class Archetype {
+        final long mask;
+        final int[] components;
+        final int[] slotOf = new int[MAX_COMPONENTS];
+        double[][] columns;
+        int[] entities = new int[16];
+        int size = 0;
+
+        Archetype(long mask) {
+            this.mask = mask;
+            this.components = new int[Long.bitCount(mask)];
+            Arrays.fill(slotOf, -1);
+            int slot = 0;
+            for (int id = 0; id < MAX_COMPONENTS; id++) {
+                if ((mask & (1L << id)) != 0) {
+                    components[slot] = id;
+                    slotOf[id] = slot++;
+                }
+            }
+            columns = new double[components.length][16];
+        }
+
+        int add(int entity) {
+            if (size == entities.length) {
+                int capacity = size * 2;
+                entities = Arrays.copyOf(entities, capacity);
+                for (int slot = 0; slot < columns.length; slot++) {
+                    columns[slot] = Arrays.copyOf(columns[slot], capacity);
+                }
+            }
+            entities[size] = entity;
+            return size++;
+        }
+
+        // Returns the entity moved into row, or -1 if row was the last one
+        int removeRow(int row) {
+            int last = --size;
+            if (row == last) return -1;
+            entities[row] = entities[last];
+            for (double[] column : columns) column[row] = column[last];
+            return entities[row];
+        }
+    }
+
+    // Cached list of the archetypes holding all of a set of components; new archetypes are
+    // picked up incrementally since archetypes are never deleted
+    public final class Query {
+        private final int[] componentIds;
+        private final long mask;
+        private final List<Archetype> matches = new ArrayList<>();
+        private int checked = 0;
+        private final double[][] view;
+
+        Query(String[] components) {
+            componentIds = new int[components.length];
+            long bits = 0;
+            for (int i = 0; i < components.length; i++) {
+                componentIds[i] = componentId(components[i]);
+                bits |= 1L << componentIds[i];
+            }
+            mask = bits;
+            view = new double[components.length][];
+        }
+
+        public void forEach(Chunk chunk) {
+            refresh();
+            for (int m = 0; m < matches.size(); m++) {
+                Archetype archetype = matches.get(m);
+                if (archetype.size == 0) continue;
+                for (int c = 0; c < componentIds.length; c++) {
+                    view[c] = archetype.columns[archetype.slotOf[componentIds[c]]];
+                }
+                chunk.accept(archetype.size, archetype.entities, view);
+            }
+        }
+
+        public int count() {
+            refresh();
+            int total = 0;
+            for (Archetype archetype : matches) total += archetype.size;
+            return total;
+        }
+
+        // Script-facing lists over the current matches: entity ids first, then one list per component.
+        // Reads and writes go straight to the columns; the lists are invalid after any structural change.
+        public List<List<Value>> views() {
+            refresh();
+            Snapshot snapshot = new Snapshot(matches);
+            List<List<Value>> lists = new ArrayList<>(componentIds.length + 1);
+            lists.add(new ColumnView(snapshot, -1));
+            for (int componentId : componentIds) lists.add(new ColumnView(snapshot, componentId));
+            return lists;
+        }
+
+        private void refresh() {
+            while (checked < archetypes.size()) {
+                Archetype archetype = archetypes.get(checked++);
+                if ((archetype.mask & mask) == mask) matches.add(archetype);
+            }
+        }
+    }
+
+    private final class Snapshot {
+        final Archetype[] tables;
+        final int[] offsets;
+        final int version = structureVersion;
+
+        Snapshot(List<Archetype> matches) {
+            tables = matches.toArray(new Archetype[0]);
+            offsets = new int[tables.length + 1];
+            for (int i = 0; i < tables.length; i++) offsets[i + 1] = offsets[i] + tables[i].size;
+        }
+
+        int table(int index) {
+            if (version != structureVersion) throw new RuntimeException("Entity query is stale; query again after adding or removing components");
+            if (index < 0 || index >= offsets[tables.length]) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of " + offsets[tables.length]);
+            }
+            int t = Arrays.binarySearch(offsets, index);
+            // Empty tables share an offset with their successor, so step past them
+            if (t >= 0) {
+                while (offsets[t + 1] == index) t++;
+                return t;
+            }
+            return -t - 2;
+        }
+    }
+
+    private static final class ColumnView extends AbstractList<Value> {
+        private final Snapshot snapshot;
+        private final int componentId;
+
+        ColumnView(Snapshot snapshot, int componentId) {
+            this.snapshot = snapshot;
+            this.componentId = componentId;
+        }
+
+        @Override
+        public Value get(int index) {
+            int t = snapshot.table(index);
+            Archetype archetype = snapshot.tables[t];
+            int row = index - snapshot.offsets[t];
+            if (componentId < 0) return Value.number(archetype.entities[row]);
+            return Value.number(archetype.columns[archetype.slotOf[componentId]][row]);
+        }
+
+        @Override
+        public Value set(int index, Value value) {
+            if (componentId < 0) throw new UnsupportedOperationException("Entity ids are read-only");
+            int t = snapshot.table(index);
+            Archetype archetype = snapshot.tables[t];
+            double[] column = archetype.columns[archetype.slotOf[componentId]];
+            int row = index - snapshot.offsets[t];
+            Value previous = Value.number(column[row]);
+            column[row] = value.asNumber();
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return snapshot.offsets[snapshot.tables.length];
+        }
+    }
+
+    private static final class SystemEntry {
+        final String name;
+        final long writes;
+        final long reads;
+        final Query query;
+        final Kernel kernel;
+
+        SystemEntry(String name, long writes, long reads, Query query, Kernel kernel) {
+            this.name = name;
+            this.writes = writes;
+            this.reads = reads;
+            this.query = query;
+            this.kernel = kernel;
+        }
+
+        boolean conflictsWith(SystemEntry other) {
+            return (writes & (other.writes | other.reads)) != 0 || (other.writes & reads) != 0;
+        }
+
+        void run(double dt) {
+            try {
+                query.forEach((count, entities, columns) -> kernel.run(count, entities, columns, dt));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("System '" + name + "' failed: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+// src/runtime/FlowField.java
+package runtime;
+
+// Per-cell direction towards a single target, so any number of agents can steer with one lookup each
+public class FlowField {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+    // Path cost to the target in tenths of a cell, and the index into DX/DY of the best next step
+    final int[] distance;
+    final byte[] direction;
+
+    FlowField(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.distance = new int[width * height];
+        this.direction = new byte[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int distance(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return UNREACHABLE;
+        return distance[y * width + x];
+    }
+
+    // Step to take from a cell; 0,0 at the target, on walls and where the target can't be reached
+    public int directionX(int x, int y) {
+        int d = step(x, y);
+        return d < 0 ? 0 : Pathfinder.DX[d];
+    }
+
+    public int directionY(int x, int y) {
+        int d = step(x, y);
+        return d < 0 ? 0 : Pathfinder.DY[d];
+    }
+
+    private int step(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return -1;
+        return direction[y * width + x];
+    }
+}
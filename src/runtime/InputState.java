@@ -0,0 +1,217 @@
+// src/runtime/InputState.java
+package runtime;
+
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// AWT listeners write live bitsets; the game thread copies them into plain arrays once per frame
+public class InputState implements KeyListener, MouseListener, MouseMotionListener {
+    private static final int KEY_CODES = 1024;
+    private static final int KEY_WORDS = KEY_CODES / 64;
+    private static final int TEXT_CAPACITY = 256;
+
+    private static final Map<String, Integer> KEY_NAMES = new HashMap<>();
+
+    static {
+        for (Field field : KeyEvent.class.getFields()) {
+            if (field.getName().startsWith("VK_") && Modifier.isStatic(field.getModifiers())
+                    && field.getType() == int.class) {
+                try {
+                    KEY_NAMES.put(field.getName().substring(3), field.getInt(null));
+                } catch (IllegalAccessException ignored) {
+                }
+            }
+        }
+    }
+
+    // Live state, written by the AWT event thread
+    private final AtomicLongArray liveKeys = new AtomicLongArray(KEY_WORDS);
+    private final AtomicLongArray liveKeyPresses = new AtomicLongArray(KEY_WORDS);
+    private final AtomicLongArray liveButtons = new AtomicLongArray(1);
+    private final AtomicLongArray liveButtonPresses = new AtomicLongArray(1);
+    private final AtomicLong liveMouse = new AtomicLong();
+
+    // Frame snapshot, read by scripts without synchronization
+    private final long[] keys = new long[KEY_WORDS];
+    private final long[] previousKeys = new long[KEY_WORDS];
+    private final long[] keyPresses = new long[KEY_WORDS];
+    private long buttons;
+    private long previousButtons;
+    private long buttonPresses;
+    private int mouseX;
+    private int mouseY;
+
+    // Single-producer (AWT) / single-consumer (game thread) ring for typed characters
+    private final char[] text = new char[TEXT_CAPACITY];
+    private final AtomicLong textHead = new AtomicLong();
+    private final AtomicLong textTail = new AtomicLong();
+
+    // Script key names resolved once, keyed by the exact string the script used
+    private final Map<String, Integer> resolvedNames = new HashMap<>();
+
+    public void attach(Component component) {
+        component.addKeyListener(this);
+        component.addMouseListener(this);
+        component.addMouseMotionListener(this);
+    }
+
+    public void snapshot() {
+        for (int w = 0; w < KEY_WORDS; w++) {
+            previousKeys[w] = keys[w];
+            keys[w] = liveKeys.get(w);
+            keyPresses[w] = liveKeyPresses.getAndSet(w, 0);
+        }
+        previousButtons = buttons;
+        buttons = liveButtons.get(0);
+        buttonPresses = liveButtonPresses.getAndSet(0, 0);
+        long mouse = liveMouse.get();
+        mouseX = (int) (mouse >> 32);
+        mouseY = (int) mouse;
+    }
+
+    public boolean isKeyDown(int code) {
+        return code >= 0 && code < KEY_CODES && (keys[code >>> 6] & (1L << code)) != 0;
+    }
+
+    // True if the key went down at any point since the previous snapshot, even if already released
+    public boolean wasKeyPressed(int code) {
+        return code >= 0 && code < KEY_CODES && (keyPresses[code >>> 6] & (1L << code)) != 0;
+    }
+
+    public boolean wasKeyReleased(int code) {
+        if (code < 0 || code >= KEY_CODES) return false;
+        long mask = 1L << code;
+        return (previousKeys[code >>> 6] & mask) != 0 && (keys[code >>> 6] & mask) == 0;
+    }
+
+    public boolean isButtonDown(int button) {
+        return button >= 0 && button < 64 && (buttons & (1L << button)) != 0;
+    }
+
+    public boolean wasButtonPressed(int button) {
+        return button >= 0 && button < 64 && (buttonPresses & (1L << button)) != 0;
+    }
+
+    public boolean wasButtonReleased(int button) {
+        if (button < 0 || button >= 64) return false;
+        long mask = 1L << button;
+        return (previousButtons & mask) != 0 && (buttons & mask) == 0;
+    }
+
+    public int getMouseX() {
+        return mouseX;
+    }
+
+    public int getMouseY() {
+        return mouseY;
+    }
+
+    public int keyCode(String name) {
+        Integer code = resolvedNames.get(name);
+        if (code == null) {
+            code = KEY_NAMES.get(name.toUpperCase());
+            if (code == null) throw new RuntimeException("Unknown key '" + name + "'");
+            resolvedNames.put(name, code);
+        }
+        return code;
+    }
+
+    // Drains typed characters; returns an empty string without allocating when nothing was typed
+    public String readText() {
+        long head = textHead.get();
+        long tail = textTail.get();
+        if (head == tail) return "";
+        StringBuilder sb = new StringBuilder((int) (tail - head));
+        for (long i = head; i < tail; i++) {
+            sb.append(text[(int) (i & (TEXT_CAPACITY - 1))]);
+        }
+        textHead.lazySet(tail);
+        return sb.toString();
+    }
+
+    private static void setBit(AtomicLongArray bits, int word, long mask) {
+        long old;
+        do {
+            old = bits.get(word);
+        } while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask));
+    }
+
+    private static void clearBit(AtomicLongArray bits, int word, long mask) {
+        long old;
+        do {
+            old = bits.get(word);
+        } while ((old & mask) != 0 && !bits.compareAndSet(word, old, old & ~mask));
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        int code = e.getKeyCode();
+        if (code < 0 || code >= KEY_CODES) return;
+        setBit(liveKeys, code >>> 6, 1L << code);
+        setBit(liveKeyPresses, code >>> 6, 1L << code);
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        int code = e.getKeyCode();
+        if (code < 0 || code >= KEY_CODES) return;
+        clearBit(liveKeys, code >>> 6, 1L << code);
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+        char c = e.getKeyChar();
+        if (c == KeyEvent.CHAR_UNDEFINED) return;
+        long tail = textTail.get();
+        if (tail - textHead.get() >= TEXT_CAPACITY) return; // full: drop rather than block the EDT
+        text[(int) (tail & (TEXT_CAPACITY - 1))] = c;
+        textTail.lazySet(tail + 1);
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        int button = e.getButton();
+        if (button < 0 || button >= 64) return;
+        setBit(liveButtons, 0, 1L << button);
+        setBit(liveButtonPresses, 0, 1L << button);
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        int button = e.getButton();
+        if (button < 0 || button >= 64) return;
+        clearBit(liveButtons, 0, 1L << button);
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        liveMouse.set(((long) e.getX() << 32) | (e.getY() & 0xFFFFFFFFL));
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        mouseMoved(e);
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+    }
+}
@@ -0,0 +1,60 @@
+// src/runtime/IntList.java
+package runtime;
+
+import java.util.Arrays;
+
+// Growable int array used by native subsystems to hand back results without boxing
+public class IntList {
+    private int[] data;
+    private int size = 0;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        data = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int removeLast() {
+        return data[--size];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    // Backing array; only the first size() entries are meaningful
+    public int[] rawArray() {
+        return data;
+    }
+}
@@ -0,0 +1,97 @@
+// src/runtime/IntMinHeap.java
+package runtime;
+
+// Binary min-heap of int ids in [0, capacity) with float priorities and decrease-key.
+// Everything lives in preallocated arrays so pushes and pops never allocate.
+public class IntMinHeap {
+    private final int[] heap;
+    private final int[] position;
+    private final float[] priority;
+    private int size = 0;
+
+    public IntMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        priority = new float[capacity];
+        java.util.Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return position[id] >= 0;
+    }
+
+    // Inserts id, or lowers its priority if it is already queued with a higher one
+    public void push(int id, float value) {
+        int index = position[id];
+        if (index >= 0) {
+            if (value >= priority[id]) return;
+            priority[id] = value;
+            siftUp(index);
+            return;
+        }
+        priority[id] = value;
+        heap[size] = id;
+        position[id] = size;
+        siftUp(size++);
+    }
+
+    public int pop() {
+        int top = heap[0];
+        position[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        int id = heap[index];
+        float value = priority[id];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            int parentId = heap[parent];
+            if (priority[parentId] <= value) break;
+            heap[index] = parentId;
+            position[parentId] = index;
+            index = parent;
+        }
+        heap[index] = id;
+        position[id] = index;
+    }
+
+    private void siftDown(int index) {
+        int id = heap[index];
+        float value = priority[id];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && priority[heap[right]] < priority[heap[child]]) child = right;
+            int childId = heap[child];
+            if (priority[childId] >= value) break;
+            heap[index] = childId;
+            position[childId] = index;
+            index = child;
+        }
+        heap[index] = id;
+        position[id] = index;
+    }
+}
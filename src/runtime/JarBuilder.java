@@ -1,8 +1,12 @@
 // src/runtime/JarBuilder.java
 package runtime;
 
-import parser.ASTNode;
+import parser.FlatAST;
+import parser.KuromicFormat;
+import parser.ModuleGraph;
+import parser.ProgramCache;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.jar.*;
@@ -10,7 +14,13 @@ import java.util.zip.*;
 
 public class JarBuilder {
 
-    public void buildJar(List<ASTNode.Stmt> statements, String sourceCode, String outputPath) throws IOException {
+    // Resource listing the bundled modules' imports, one "importer<TAB>module<TAB>path" line per import.
+    // Modules are numbered from 1 in ModuleGraph.modules() order, 0 is the main script, and module n is
+    // stored precompiled as resources/modules/n.kuromic.
+    static final String MODULE_INDEX = "resources/modules.index";
+
+    // modules is null when the program imports nothing
+    public void buildJar(FlatAST program, ModuleGraph modules, String sourceCode, String outputPath) throws IOException {
         System.out.println("📦 Building standalone JAR...");
 
         // Create temporary directory for building
@@ -23,7 +33,11 @@ public class JarBuilder {
 
             // Step 2: Create embedded script
             System.out.println("  → Embedding KuromiScript...");
-            createEmbeddedScript(tempDir, sourceCode);
+            createEmbeddedScript(tempDir, program, sourceCode);
+            if (modules != null && !modules.modules().isEmpty()) {
+                System.out.println("  → Embedding " + modules.modules().size() + " imported modules...");
+                createEmbeddedModules(tempDir, modules);
+            }
 
             // Step 3: Create manifest
             System.out.println("  → Creating manifest...");
@@ -54,14 +68,43 @@ public class JarBuilder {
         copyDirectory(outDir, tempDir);
     }
 
-    private void createEmbeddedScript(Path tempDir, String sourceCode) throws IOException {
+    private void createEmbeddedScript(Path tempDir, FlatAST program, String sourceCode) throws IOException {
         // Create a resources directory
         Path resourceDir = tempDir.resolve("resources");
         Files.createDirectories(resourceDir);
 
         // Write the script to a resource file
+        byte[] source = sourceCode.getBytes();
         Path scriptFile = resourceDir.resolve("embedded.kuromi");
-        Files.write(scriptFile, sourceCode.getBytes());
+        Files.write(scriptFile, source);
+
+        // And the parsed program beside it, so the jar starts without lexing or parsing. The runner falls
+        // back to the source if this one was built by a different engine version.
+        Path programFile = resourceDir.resolve("embedded" + KuromicFormat.EXTENSION);
+        Files.write(programFile, KuromicFormat.encode(program, ProgramCache.hash(source)));
+    }
+
+    // Only modules reachable from the script are in the graph, so only those are bundled
+    private void createEmbeddedModules(Path tempDir, ModuleGraph modules) throws IOException {
+        Path moduleDir = tempDir.resolve("resources").resolve("modules");
+        Files.createDirectories(moduleDir);
+        Map<Path, Integer> ids = new LinkedHashMap<>();
+        ids.put(modules.root(), 0);
+        for (Path module : modules.modules()) {
+            int id = ids.size();
+            ids.put(module, id);
+            byte[] hash = ProgramCache.hash(Files.readAllBytes(module));
+            Files.write(moduleDir.resolve(id + KuromicFormat.EXTENSION), KuromicFormat.encode(modules.program(module), hash));
+        }
+
+        StringBuilder index = new StringBuilder();
+        for (Map.Entry<Path, Integer> importer : ids.entrySet()) {
+            for (Map.Entry<String, Path> target : modules.imports(importer.getKey()).entrySet()) {
+                index.append(importer.getValue()).append('\t').append(ids.get(target.getValue()))
+                        .append('\t').append(target.getKey()).append('\n');
+            }
+        }
+        Files.write(tempDir.resolve(MODULE_INDEX), index.toString().getBytes(StandardCharsets.UTF_8));
     }
 
     private void createManifest(Path tempDir) throws IOException {
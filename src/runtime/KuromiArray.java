@@ -0,0 +1,148 @@
+// src/runtime/KuromiArray.java
+package runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+// Script array with copy-on-write storage. Slices and shared copies point into the same backing array;
+// the first write through any of them copies just that array's elements, so handing megabytes of level
+// data to a function costs nothing unless it writes. Storage counts the arrays sharing it, and a binding
+// that goes away releases its claim, so a read-only call leaves the caller's array its own again. A copy
+// shares the nested arrays and maps it holds, so a write through grid[y][x] copies each level it passes.
+public final class KuromiArray extends AbstractList<Value> implements RandomAccess {
+    private static final class Storage {
+        final Value[] data;
+        int owners = 1;
+
+        Storage(Value[] data) {
+            this.data = data;
+        }
+    }
+
+    private Storage storage;
+    private int offset;
+    private int length;
+    // Set by release: storage no longer counts this array, so the next write through it must copy
+    private boolean released;
+
+    public KuromiArray() {
+        this(8);
+    }
+
+    public KuromiArray(int capacity) {
+        this(new Storage(new Value[Math.max(1, capacity)]), 0, 0);
+    }
+
+    private KuromiArray(Storage storage, int offset, int length) {
+        this.storage = storage;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static KuromiArray copyOf(List<Value> elements) {
+        KuromiArray array = new KuromiArray(elements.size());
+        for (Value element : elements) array.add(element);
+        return array;
+    }
+
+    @Override
+    public Value get(int index) {
+        checkIndex(index);
+        return storage.data[offset + index];
+    }
+
+    @Override
+    public Value set(int index, Value value) {
+        checkIndex(index);
+        ensureOwned(length);
+        Value previous = storage.data[offset + index];
+        storage.data[offset + index] = value;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Value value) {
+        if (index < 0 || index > length) throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+        ensureOwned(length + 1);
+        Value[] data = storage.data;
+        System.arraycopy(data, offset + index, data, offset + index + 1, length - index);
+        data[offset + index] = value;
+        length++;
+        modCount++;
+    }
+
+    @Override
+    public Value remove(int index) {
+        checkIndex(index);
+        ensureOwned(length);
+        Value[] data = storage.data;
+        Value previous = data[offset + index];
+        System.arraycopy(data, offset + index + 1, data, offset + index, length - index - 1);
+        data[offset + --length] = null;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    // View of [from, to) sharing this array's storage until either side writes
+    public KuromiArray slice(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Slice " + from + ":" + to + " out of " + length);
+        }
+        storage.owners++;
+        return new KuromiArray(storage, offset + from, to - from);
+    }
+
+    // O(1) copy with value semantics: both arrays see the same elements until one of them writes
+    public KuromiArray share() {
+        return slice(0, length);
+    }
+
+    // Called when the binding holding this array goes away, so the arrays still sharing its storage can
+    // write in place again. Reads keep working; a write through a released array copies.
+    public void release() {
+        if (released) return;
+        released = true;
+        storage.owners--;
+    }
+
+    // Element index of this array, after making the array its own, for a write into that element
+    public Value getForWrite(int index) {
+        checkIndex(index);
+        ensureOwned(length);
+        return storage.data[offset + index];
+    }
+
+    // Gives this array storage of its own with room for capacity elements before a write
+    private void ensureOwned(int capacity) {
+        Storage current = storage;
+        boolean shared = released || current.owners > 1;
+        if (!shared && offset + capacity <= current.data.length) return;
+        Value[] copy = new Value[Math.max(capacity, length < 4 ? 8 : length + (length >> 1))];
+        if (shared) {
+            // Both storages now hold the nested arrays and maps, so they have to be shared too
+            for (int i = 0; i < length; i++) copy[i] = current.data[offset + i].share();
+            if (!released) current.owners--;
+            released = false;
+        } else {
+            System.arraycopy(current.data, offset, copy, 0, length);
+        }
+        storage = new Storage(copy);
+        offset = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOfRange(storage.data, offset, offset + length, Object[].class);
+    }
+}
@@ -0,0 +1,357 @@
+// src/runtime/KuromiMap.java
+package runtime;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Script map keyed by numbers or strings. Open addressing with linear probing over parallel arrays:
+// number keys sit unboxed in a double[], string keys keep their mixed hash alongside so a probe only
+// calls equals on a real candidate. Keys iterate in insertion order, as JS Maps do in the web export,
+// from a list of slots kept beside the table. Like KuromiArray, copies share the table until one side writes, a
+// released binding stops counting as a sharer, and a copy shares the arrays and maps it holds.
+public final class KuromiMap implements Iterable<Value> {
+    private static final byte EMPTY = 0;
+    private static final byte DELETED = 1;
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+
+    private static final class Table {
+        byte[] kinds;
+        int[] hashes;
+        double[] numberKeys;
+        String[] stringKeys;
+        Value[] values;
+        // Slots in insertion order, -1 where a key was removed, and each slot's index in that order
+        int[] order;
+        int[] positions;
+        int ordered = 0;
+        int size = 0;
+        int deleted = 0;
+        int owners = 1;
+
+        Table(int capacity) {
+            kinds = new byte[capacity];
+            hashes = new int[capacity];
+            numberKeys = new double[capacity];
+            stringKeys = new String[capacity];
+            values = new Value[capacity];
+            order = new int[capacity];
+            positions = new int[capacity];
+        }
+
+        Table copy() {
+            Table table = new Table(0);
+            table.kinds = kinds.clone();
+            table.hashes = hashes.clone();
+            table.numberKeys = numberKeys.clone();
+            table.stringKeys = stringKeys.clone();
+            table.values = values.clone();
+            table.order = order.clone();
+            table.positions = positions.clone();
+            table.ordered = ordered;
+            for (int slot = 0; slot < values.length; slot++) {
+                if (kinds[slot] >= NUMBER) table.values[slot] = values[slot].share();
+            }
+            table.size = size;
+            table.deleted = deleted;
+            return table;
+        }
+    }
+
+    private Table table;
+    // Set by release: the table no longer counts this map, so the next write through it must copy
+    private boolean released;
+
+    public KuromiMap() {
+        this(8);
+    }
+
+    public KuromiMap(int expected) {
+        int capacity = 8;
+        while (capacity * 3 < expected * 4) capacity <<= 1;
+        table = new Table(capacity);
+    }
+
+    private KuromiMap(Table table) {
+        this.table = table;
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    // O(1) copy with value semantics, mirroring KuromiArray.share
+    public KuromiMap share() {
+        table.owners++;
+        return new KuromiMap(table);
+    }
+
+    // See KuromiArray.release
+    public void release() {
+        if (released) return;
+        released = true;
+        table.owners--;
+    }
+
+    // The value under key, after making this map its own, for a write into that value
+    public Value getForWrite(Value key) {
+        if (isShared()) unshare();
+        return get(key);
+    }
+
+    // Missing keys read as null, like an out-of-range lookup in most scripting languages
+    public Value get(Value key) {
+        int slot = key.type == Value.Type.NUMBER ? findNumber(key.asNumber()) : findString(stringKey(key));
+        return slot >= 0 ? table.values[slot] : Value.nil();
+    }
+
+    public Value get(double key) {
+        int slot = findNumber(key);
+        return slot >= 0 ? table.values[slot] : Value.nil();
+    }
+
+    public Value get(String key) {
+        int slot = findString(key);
+        return slot >= 0 ? table.values[slot] : Value.nil();
+    }
+
+    public boolean containsKey(Value key) {
+        return (key.type == Value.Type.NUMBER ? findNumber(key.asNumber()) : findString(stringKey(key))) >= 0;
+    }
+
+    public void put(Value key, Value value) {
+        if (key.type == Value.Type.NUMBER) {
+            put(key.asNumber(), value);
+        } else {
+            put(stringKey(key), value);
+        }
+    }
+
+    public void put(double key, Value value) {
+        if (Double.isNaN(key)) throw new RuntimeException("NaN can't be used as a map key");
+        key = key == 0 ? 0.0 : key;
+        prepareWrite();
+        int hash = numberHash(key);
+        int slot = probe(hash, key, null);
+        if (table.kinds[slot] != NUMBER) {
+            claim(slot, NUMBER, hash);
+            table.numberKeys[slot] = key;
+        }
+        table.values[slot] = value;
+    }
+
+    public void put(String key, Value value) {
+        prepareWrite();
+        int hash = stringHash(key);
+        int slot = probe(hash, 0, key);
+        if (table.kinds[slot] != STRING) {
+            claim(slot, STRING, hash);
+            table.stringKeys[slot] = key;
+        }
+        table.values[slot] = value;
+    }
+
+    public Value remove(Value key) {
+        int slot = key.type == Value.Type.NUMBER ? findNumber(key.asNumber()) : findString(stringKey(key));
+        if (slot < 0) return Value.nil();
+        if (isShared()) unshare();
+        Table t = table;
+        Value previous = t.values[slot];
+        t.kinds[slot] = DELETED;
+        t.order[t.positions[slot]] = -1;
+        t.stringKeys[slot] = null;
+        t.values[slot] = null;
+        t.size--;
+        t.deleted++;
+        return previous;
+    }
+
+    // Keys in insertion order
+    @Override
+    public Iterator<Value> iterator() {
+        Table snapshot = table;
+        return new Iterator<Value>() {
+            private int index = advance(0);
+
+            private int advance(int from) {
+                while (from < snapshot.ordered && snapshot.order[from] < 0) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < snapshot.ordered;
+            }
+
+            @Override
+            public Value next() {
+                if (index >= snapshot.ordered) throw new NoSuchElementException();
+                int slot = snapshot.order[index];
+                Value key = snapshot.kinds[slot] == NUMBER
+                        ? Value.number(snapshot.numberKeys[slot]) : Value.string(snapshot.stringKeys[slot]);
+                index = advance(index + 1);
+                return key;
+            }
+        };
+    }
+
+    public KuromiArray keys() {
+        KuromiArray keys = new KuromiArray(table.size);
+        for (Value key : this) keys.add(key);
+        return keys;
+    }
+
+    public KuromiArray values() {
+        KuromiArray values = new KuromiArray(table.size);
+        Table t = table;
+        for (int i = 0; i < t.ordered; i++) {
+            if (t.order[i] >= 0) values.add(t.values[t.order[i]].share());
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        Table t = table;
+        for (int i = 0; i < t.ordered; i++) {
+            int slot = t.order[i];
+            if (slot < 0) continue;
+            if (text.length() > 1) text.append(", ");
+            text.append(t.kinds[slot] == NUMBER ? Value.number(t.numberKeys[slot]).asString() : t.stringKeys[slot]);
+            text.append(": ").append(t.values[slot].asString());
+        }
+        return text.append('}').toString();
+    }
+
+    private int findNumber(double key) {
+        key = key == 0 ? 0.0 : key;
+        Table t = table;
+        int mask = t.kinds.length - 1;
+        for (int slot = numberHash(key) & mask; ; slot = (slot + 1) & mask) {
+            byte kind = t.kinds[slot];
+            if (kind == EMPTY) return -1;
+            if (kind == NUMBER && t.numberKeys[slot] == key) return slot;
+        }
+    }
+
+    private int findString(String key) {
+        Table t = table;
+        int hash = stringHash(key);
+        int mask = t.kinds.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte kind = t.kinds[slot];
+            if (kind == EMPTY) return -1;
+            if (kind == STRING && t.hashes[slot] == hash && key.equals(t.stringKeys[slot])) return slot;
+        }
+    }
+
+    // Slot holding the key, or the first reusable slot on its probe path
+    private int probe(int hash, double numberKey, String stringKey) {
+        Table t = table;
+        int mask = t.kinds.length - 1;
+        int reusable = -1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte kind = t.kinds[slot];
+            if (kind == EMPTY) return reusable >= 0 ? reusable : slot;
+            if (kind == DELETED) {
+                if (reusable < 0) reusable = slot;
+            } else if (stringKey == null) {
+                if (kind == NUMBER && t.numberKeys[slot] == numberKey) return slot;
+            } else if (kind == STRING && t.hashes[slot] == hash && stringKey.equals(t.stringKeys[slot])) {
+                return slot;
+            }
+        }
+    }
+
+    private void claim(int slot, byte kind, int hash) {
+        Table t = table;
+        if (t.kinds[slot] == DELETED) t.deleted--;
+        t.kinds[slot] = kind;
+        t.hashes[slot] = hash;
+        t.size++;
+        if (t.ordered == t.order.length) compactOrder(t);
+        t.positions[slot] = t.ordered;
+        t.order[t.ordered++] = slot;
+    }
+
+    // Drops removed keys from the insertion order once it fills up; the table holds fewer keys than
+    // slots, so this always makes room
+    private static void compactOrder(Table t) {
+        int live = 0;
+        for (int i = 0; i < t.ordered; i++) {
+            int slot = t.order[i];
+            if (slot < 0) continue;
+            t.positions[slot] = live;
+            t.order[live++] = slot;
+        }
+        t.ordered = live;
+    }
+
+    // Copies a shared table and keeps the load factor under 3/4 counting tombstones,
+    // so an insert always finds a free slot
+    private void prepareWrite() {
+        Table t = table;
+        if ((t.size + t.deleted + 1) * 4 > t.kinds.length * 3) {
+            int capacity = t.kinds.length;
+            if ((t.size + 1) * 2 > capacity) capacity <<= 1;
+            rehash(capacity);
+        } else if (isShared()) {
+            unshare();
+        }
+    }
+
+    private boolean isShared() {
+        return released || table.owners > 1;
+    }
+
+    private void unshare() {
+        if (!released) table.owners--;
+        released = false;
+        table = table.copy();
+    }
+
+    private void rehash(int capacity) {
+        Table old = table;
+        boolean shared = isShared();
+        if (shared && !released) old.owners--;
+        released = false;
+        Table t = new Table(capacity);
+        int mask = capacity - 1;
+        // Walks the old slots in memory order; each key keeps its place in the insertion order
+        if (old.ordered > old.size) Arrays.fill(t.order, 0, old.ordered, -1);
+        for (int i = 0; i < old.kinds.length; i++) {
+            byte kind = old.kinds[i];
+            if (kind < NUMBER) continue;
+            int slot = old.hashes[i] & mask;
+            while (t.kinds[slot] != EMPTY) slot = (slot + 1) & mask;
+            t.order[old.positions[i]] = slot;
+            t.kinds[slot] = kind;
+            t.hashes[slot] = old.hashes[i];
+            t.numberKeys[slot] = old.numberKeys[i];
+            t.stringKeys[slot] = old.stringKeys[i];
+            t.values[slot] = shared ? old.values[i].share() : old.values[i];
+        }
+        t.size = old.size;
+        t.ordered = old.ordered;
+        compactOrder(t);
+        table = t;
+    }
+
+    private static String stringKey(Value key) {
+        if (key.type == Value.Type.STRING) return key.asString();
+        throw new RuntimeException("Map keys must be numbers or strings");
+    }
+
+    private static int numberHash(double key) {
+        long bits = Double.doubleToLongBits(key) * 0x9E3779B97F4A7C15L;
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    // String.hashCode is cached by the string itself; the multiply spreads it for power-of-two tables
+    private static int stringHash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,77 @@
+// src/runtime/NavGrid.java
+package runtime;
+
+import java.util.stream.IntStream;
+
+// Walkability grid for AI pathfinding. Queries borrow a per-thread Pathfinder, so the grid itself
+// holds no search state and any number of threads can search it while nobody is editing it.
+public class NavGrid {
+    private static final ThreadLocal<Pathfinder> PATHFINDERS = ThreadLocal.withInitial(Pathfinder::new);
+
+    private final int width;
+    private final int height;
+    private final boolean[] blocked;
+
+    public NavGrid(int width, int height) {
+        if (width <= 0 || height <= 0) throw new RuntimeException("Navigation grid size must be positive");
+        this.width = width;
+        this.height = height;
+        this.blocked = new boolean[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setBlocked(int x, int y, boolean value) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new RuntimeException("Cell " + x + "," + y + " is outside the navigation grid");
+        }
+        blocked[y * width + x] = value;
+    }
+
+    // Anything outside the grid counts as a wall
+    public boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && !blocked[y * width + x];
+    }
+
+    // Appends the cells from start to goal as x,y pairs; false when the goal is unreachable
+    public boolean findPath(int sx, int sy, int gx, int gy, IntList out) {
+        return PATHFINDERS.get().findPath(this, sx, sy, gx, gy, out);
+    }
+
+    // Same result shape as findPath, but expands far fewer nodes on open maps
+    public boolean jumpPath(int sx, int sy, int gx, int gy, IntList out) {
+        return PATHFINDERS.get().jumpPath(this, sx, sy, gx, gy, out);
+    }
+
+    public FlowField flowField(int tx, int ty) {
+        FlowField field = new FlowField(width, height);
+        updateFlowField(field, tx, ty);
+        return field;
+    }
+
+    // Recomputes an existing field in place, e.g. when the target moves
+    public void updateFlowField(FlowField field, int tx, int ty) {
+        PATHFINDERS.get().flowField(this, tx, ty, field);
+    }
+
+    // Queries are packed as sx, sy, gx, gy per agent; unreachable goals come back as null
+    public IntList[] findPaths(int[] queries, boolean jumpPoints) {
+        if (queries.length % 4 != 0) throw new RuntimeException("Path queries must be sx, sy, gx, gy groups");
+        IntList[] paths = new IntList[queries.length / 4];
+        IntStream.range(0, paths.length).parallel().forEach(i -> {
+            IntList path = new IntList();
+            int q = i * 4;
+            boolean found = jumpPoints
+                    ? jumpPath(queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path)
+                    : findPath(queries[q], queries[q + 1], queries[q + 2], queries[q + 3], path);
+            paths[i] = found ? path : null;
+        });
+        return paths;
+    }
+}
@@ -0,0 +1,125 @@
+// src/runtime/ParticleSystem.java
+package runtime;
+
+public class ParticleSystem {
+    // Structure-of-arrays storage: particle i lives at index i of every array
+    private final float[] x;
+    private final float[] y;
+    private final float[] vx;
+    private final float[] vy;
+    private final float[] life;
+    private final float[] invMaxLife;
+    private final int[] color;
+    private final int capacity;
+    private int count = 0;
+
+    private float gravityX = 0;
+    private float gravityY = 0;
+    private long seed = 0x2545F4914F6CDD1DL;
+
+    public ParticleSystem(int capacity) {
+        if (capacity <= 0) throw new RuntimeException("Particle capacity must be positive");
+        this.capacity = capacity;
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        life = new float[capacity];
+        invMaxLife = new float[capacity];
+        color = new int[capacity];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setGravity(float gx, float gy) {
+        gravityX = gx;
+        gravityY = gy;
+    }
+
+    // Spawns up to n particles at (px, py) flying in random directions; extra particles are dropped
+    public int emit(float px, float py, int n, float speed, float lifetime, int rgb) {
+        int spawned = Math.min(n, capacity - count);
+        float inv = lifetime > 0 ? 1f / lifetime : 1f;
+        for (int k = 0; k < spawned; k++) {
+            int i = count++;
+            float angle = nextFloat() * (float) (Math.PI * 2);
+            float s = speed * (0.5f + 0.5f * nextFloat());
+            x[i] = px;
+            y[i] = py;
+            vx[i] = (float) Math.cos(angle) * s;
+            vy[i] = (float) Math.sin(angle) * s;
+            life[i] = lifetime;
+            invMaxLife[i] = inv;
+            color[i] = rgb & 0xFFFFFF;
+        }
+        return spawned;
+    }
+
+    public void update(float dt) {
+        float gx = gravityX * dt;
+        float gy = gravityY * dt;
+        int i = 0;
+        while (i < count) {
+            float remaining = life[i] - dt;
+            if (remaining <= 0) {
+                // Swap-remove: the last live particle takes this slot, order is not preserved
+                int last = --count;
+                x[i] = x[last];
+                y[i] = y[last];
+                vx[i] = vx[last];
+                vy[i] = vy[last];
+                life[i] = life[last];
+                invMaxLife[i] = invMaxLife[last];
+                color[i] = color[last];
+                continue;
+            }
+            life[i] = remaining;
+            vx[i] += gx;
+            vy[i] += gy;
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            i++;
+        }
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    // Writes straight into an INT_RGB raster, fading each particle out over its lifetime
+    public void render(int[] pixels, int width, int height) {
+        for (int i = 0; i < count; i++) {
+            int px = (int) x[i];
+            int py = (int) y[i];
+            if (px < 0 || py < 0 || px >= width || py >= height) continue;
+
+            int offset = py * width + px;
+            int alpha = (int) (life[i] * invMaxLife[i] * 256);
+            if (alpha >= 256) {
+                pixels[offset] = color[i];
+                continue;
+            }
+            int src = color[i];
+            int dst = pixels[offset];
+            int rb = dst & 0xFF00FF;
+            int g = dst & 0x00FF00;
+            rb += (((src & 0xFF00FF) - rb) * alpha) >> 8;
+            g += (((src & 0x00FF00) - g) * alpha) >> 8;
+            pixels[offset] = (rb & 0xFF00FF) | (g & 0x00FF00);
+        }
+    }
+
+    private float nextFloat() {
+        // xorshift64* keeps emission allocation-free and independent of java.util.Random
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return ((seed * 0x2545F4914F6CDD1DL) >>> 40) * (1f / (1 << 24));
+    }
+}
@@ -0,0 +1,304 @@
+// src/runtime/Pathfinder.java
+package runtime;
+
+import java.util.Arrays;
+
+// Search scratch for NavGrid queries: costs, parents and an int heap sized to the largest grid seen.
+// Generation stamps mark which entries belong to the current query, so nothing is cleared between searches
+// and a query allocates nothing once the buffers have grown. One instance per thread.
+class Pathfinder {
+    // Orthogonal directions first, then diagonals
+    static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final float DIAGONAL = 1.4142135f;
+    private static final int STRAIGHT_COST = 10;
+    private static final int DIAGONAL_COST = 14;
+
+    private float[] cost = new float[0];
+    private int[] parent = new int[0];
+    private int[] touched = new int[0];
+    private int[] closed = new int[0];
+    private IntMinHeap open = new IntMinHeap(0);
+    private int generation = 0;
+    private final int[] successors = new int[8];
+
+    boolean findPath(NavGrid grid, int sx, int sy, int gx, int gy, IntList out) {
+        if (!grid.isWalkable(sx, sy) || !grid.isWalkable(gx, gy)) return false;
+        int width = grid.getWidth();
+        int start = sy * width + sx;
+        int goal = gy * width + gx;
+        begin(grid);
+        touch(start, 0, -1);
+        open.push(start, heuristic(sx, sy, gx, gy));
+
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            if (node == goal) {
+                open.clear();
+                appendPath(goal, width, out);
+                return true;
+            }
+            closed[node] = generation;
+            int x = node % width;
+            int y = node / width;
+            for (int d = 0; d < 8; d++) {
+                if (!canStep(grid, x, y, d)) continue;
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                int next = ny * width + nx;
+                if (closed[next] == generation) continue;
+                float g = cost[node] + (d < 4 ? 1f : DIAGONAL);
+                if (touched[next] == generation && g >= cost[next]) continue;
+                touch(next, g, node);
+                open.push(next, g + heuristic(nx, ny, gx, gy));
+            }
+        }
+        return false;
+    }
+
+    // Jump point search for 8-way movement without corner cutting: straight runs and diagonals are
+    // skipped over until a forced neighbour appears, so only the turning points enter the heap
+    boolean jumpPath(NavGrid grid, int sx, int sy, int gx, int gy, IntList out) {
+        if (!grid.isWalkable(sx, sy) || !grid.isWalkable(gx, gy)) return false;
+        int width = grid.getWidth();
+        int start = sy * width + sx;
+        int goal = gy * width + gx;
+        begin(grid);
+        touch(start, 0, -1);
+        open.push(start, heuristic(sx, sy, gx, gy));
+
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            if (node == goal) {
+                open.clear();
+                appendJumpPath(goal, width, out);
+                return true;
+            }
+            closed[node] = generation;
+            int x = node % width;
+            int y = node / width;
+            int count = prunedNeighbours(grid, node, x, y);
+            for (int i = 0; i < count; i++) {
+                int d = successors[i];
+                int jump = jump(grid, x + DX[d], y + DY[d], DX[d], DY[d], goal);
+                if (jump < 0 || closed[jump] == generation) continue;
+                int jx = jump % width;
+                int jy = jump / width;
+                float g = cost[node] + heuristic(x, y, jx, jy);
+                if (touched[jump] == generation && g >= cost[jump]) continue;
+                touch(jump, g, node);
+                open.push(jump, g + heuristic(jx, jy, gx, gy));
+            }
+        }
+        return false;
+    }
+
+    // Dijkstra outwards from the target in integer tenths, then every cell points at its cheapest neighbour
+    void flowField(NavGrid grid, int tx, int ty, FlowField field) {
+        int width = grid.getWidth();
+        int[] distance = field.distance;
+        byte[] direction = field.direction;
+        Arrays.fill(distance, FlowField.UNREACHABLE);
+        Arrays.fill(direction, (byte) -1);
+        if (!grid.isWalkable(tx, ty)) return;
+
+        begin(grid);
+        int target = ty * width + tx;
+        distance[target] = 0;
+        open.push(target, 0);
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            int x = node % width;
+            int y = node / width;
+            for (int d = 0; d < 8; d++) {
+                if (!canStep(grid, x, y, d)) continue;
+                int next = (y + DY[d]) * width + x + DX[d];
+                int g = distance[node] + (d < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (g >= distance[next]) continue;
+                distance[next] = g;
+                open.push(next, g);
+            }
+        }
+
+        for (int node = 0; node < distance.length; node++) {
+            if (node == target || distance[node] == FlowField.UNREACHABLE) continue;
+            int x = node % width;
+            int y = node / width;
+            int best = -1;
+            int bestDistance = distance[node];
+            for (int d = 0; d < 8; d++) {
+                if (!canStep(grid, x, y, d)) continue;
+                int nextDistance = distance[(y + DY[d]) * width + x + DX[d]];
+                if (nextDistance < bestDistance) {
+                    bestDistance = nextDistance;
+                    best = d;
+                }
+            }
+            direction[node] = (byte) best;
+        }
+    }
+
+    private int jump(NavGrid grid, int x, int y, int dx, int dy, int goal) {
+        int width = grid.getWidth();
+        while (true) {
+            if (!grid.isWalkable(x, y)) return -1;
+            int node = y * width + x;
+            if (node == goal) return node;
+            if (dx != 0 && dy != 0) {
+                // A diagonal stops wherever one of its straight components would find something
+                if (jump(grid, x + dx, y, dx, 0, goal) >= 0 || jump(grid, x, y + dy, 0, dy, goal) >= 0) return node;
+                if (!grid.isWalkable(x + dx, y) || !grid.isWalkable(x, y + dy)) return -1;
+            } else if (dx != 0) {
+                if ((grid.isWalkable(x, y - 1) && !grid.isWalkable(x - dx, y - 1))
+                        || (grid.isWalkable(x, y + 1) && !grid.isWalkable(x - dx, y + 1))) {
+                    return node;
+                }
+            } else {
+                if ((grid.isWalkable(x - 1, y) && !grid.isWalkable(x - 1, y - dy))
+                        || (grid.isWalkable(x + 1, y) && !grid.isWalkable(x + 1, y - dy))) {
+                    return node;
+                }
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    // Fills successors with the directions worth jumping in, given the direction we arrived from
+    private int prunedNeighbours(NavGrid grid, int node, int x, int y) {
+        int count = 0;
+        int from = parent[node];
+        if (from < 0) {
+            for (int d = 0; d < 8; d++) {
+                if (canStep(grid, x, y, d)) successors[count++] = d;
+            }
+            return count;
+        }
+        int width = grid.getWidth();
+        int dx = Integer.signum(x - from % width);
+        int dy = Integer.signum(y - from / width);
+        if (dx != 0 && dy != 0) {
+            boolean vertical = grid.isWalkable(x, y + dy);
+            boolean horizontal = grid.isWalkable(x + dx, y);
+            if (vertical) successors[count++] = direction(0, dy);
+            if (horizontal) successors[count++] = direction(dx, 0);
+            if (vertical && horizontal) successors[count++] = direction(dx, dy);
+        } else if (dx != 0) {
+            boolean ahead = grid.isWalkable(x + dx, y);
+            boolean below = grid.isWalkable(x, y + 1);
+            boolean above = grid.isWalkable(x, y - 1);
+            if (ahead) {
+                successors[count++] = direction(dx, 0);
+                if (below) successors[count++] = direction(dx, 1);
+                if (above) successors[count++] = direction(dx, -1);
+            }
+            if (below) successors[count++] = direction(0, 1);
+            if (above) successors[count++] = direction(0, -1);
+        } else {
+            boolean ahead = grid.isWalkable(x, y + dy);
+            boolean right = grid.isWalkable(x + 1, y);
+            boolean left = grid.isWalkable(x - 1, y);
+            if (ahead) {
+                successors[count++] = direction(0, dy);
+                if (right) successors[count++] = direction(1, dy);
+                if (left) successors[count++] = direction(-1, dy);
+            }
+            if (right) successors[count++] = direction(1, 0);
+            if (left) successors[count++] = direction(-1, 0);
+        }
+        return count;
+    }
+
+    private static int direction(int dx, int dy) {
+        for (int d = 0; d < 8; d++) {
+            if (DX[d] == dx && DY[d] == dy) return d;
+        }
+        throw new IllegalArgumentException("No direction " + dx + "," + dy);
+    }
+
+    // Diagonal steps need both orthogonal cells free so agents never clip a wall corner
+    private static boolean canStep(NavGrid grid, int x, int y, int d) {
+        int nx = x + DX[d];
+        int ny = y + DY[d];
+        if (!grid.isWalkable(nx, ny)) return false;
+        return d < 4 || (grid.isWalkable(nx, y) && grid.isWalkable(x, ny));
+    }
+
+    // Octile distance: exact cost on an empty 8-way grid, so the heuristic never overestimates
+    private static float heuristic(int x, int y, int gx, int gy) {
+        int dx = Math.abs(x - gx);
+        int dy = Math.abs(y - gy);
+        return Math.max(dx, dy) + (DIAGONAL - 1f) * Math.min(dx, dy);
+    }
+
+    private void touch(int node, float g, int from) {
+        touched[node] = generation;
+        cost[node] = g;
+        parent[node] = from;
+    }
+
+    private void appendPath(int goal, int width, IntList out) {
+        int first = out.size();
+        for (int node = goal; node >= 0; node = parent[node]) {
+            out.add(node % width);
+            out.add(node / width);
+        }
+        reversePairs(out, first);
+    }
+
+    // Jump points are joined by straight or 45 degree runs, which are filled back in cell by cell
+    private void appendJumpPath(int goal, int width, IntList out) {
+        int first = out.size();
+        for (int node = goal; parent[node] >= 0; node = parent[node]) {
+            int x = node % width;
+            int y = node / width;
+            int px = parent[node] % width;
+            int py = parent[node] / width;
+            int dx = Integer.signum(px - x);
+            int dy = Integer.signum(py - y);
+            while (x != px || y != py) {
+                out.add(x);
+                out.add(y);
+                x += dx;
+                y += dy;
+            }
+        }
+        int start = firstNode(goal);
+        out.add(start % width);
+        out.add(start / width);
+        reversePairs(out, first);
+    }
+
+    private int firstNode(int node) {
+        while (parent[node] >= 0) node = parent[node];
+        return node;
+    }
+
+    private static void reversePairs(IntList out, int first) {
+        for (int i = first, j = out.size() - 2; i < j; i += 2, j -= 2) {
+            int x = out.get(i);
+            int y = out.get(i + 1);
+            out.set(i, out.get(j));
+            out.set(i + 1, out.get(j + 1));
+            out.set(j, x);
+            out.set(j + 1, y);
+        }
+    }
+
+    private void begin(NavGrid grid) {
+        int cells = grid.getWidth() * grid.getHeight();
+        if (cost.length < cells) {
+            cost = new float[cells];
+            parent = new int[cells];
+            touched = new int[cells];
+            closed = new int[cells];
+            open = new IntMinHeap(cells);
+            generation = 0;
+        }
+        if (++generation == 0) {
+            Arrays.fill(touched, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+    }
+}
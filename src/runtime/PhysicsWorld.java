@@ -0,0 +1,572 @@
+// src/runtime/PhysicsWorld.java
+package runtime;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// 2D impulse-based rigid bodies without rotation. Bodies are stored as parallel arrays and advanced
+// on a fixed timestep; positions handed to scripts are interpolated between the last two steps.
+public class PhysicsWorld {
+    public static final int CIRCLE = 0;
+    public static final int BOX = 1;
+    public static final int POLYGON = 2;
+
+    public static final float FIXED_STEP = 1f / 60f;
+    private static final int MAX_STEPS_PER_FRAME = 5;
+    private static final int SOLVER_ITERATIONS = 4;
+    private static final float CORRECTION_PERCENT = 0.8f;
+    private static final float CORRECTION_SLOP = 0.01f;
+    private static final int PARALLEL_CONTACTS = 2048;
+
+    // Body state
+    private float[] x = new float[64];
+    private float[] y = new float[64];
+    private float[] prevX = new float[64];
+    private float[] prevY = new float[64];
+    private float[] vx = new float[64];
+    private float[] vy = new float[64];
+    private float[] invMass = new float[64];
+    private float[] restitution = new float[64];
+    private int[] shape = new int[64];
+    private float[] radius = new float[64];   // circles; bounding radius for polygons
+    private float[] halfW = new float[64];
+    private float[] halfH = new float[64];
+    private int[] polyStart = new int[64];
+    private int[] polyCount = new int[64];
+    private float[] polyVertices = new float[256]; // local x,y pairs relative to the body centre
+    private int polyUsed = 0;
+    private int bodyCount = 0;
+
+    // Contacts found this step, also as parallel arrays
+    private int[] contactA = new int[256];
+    private int[] contactB = new int[256];
+    private float[] contactNX = new float[256];
+    private float[] contactNY = new float[256];
+    private float[] contactDepth = new float[256];
+    private int contactCount = 0;
+
+    // Islands: contacts grouped so that no two islands touch the same dynamic body
+    private int[] islandParent = new int[64];
+    private int[] islandStart = new int[64];
+    private int[] islandOrder = new int[256];
+    private int[] islandOf = new int[64];
+    private int[] islandFill = new int[257];
+    private int[] contactIsland = new int[256];
+    private int islandCount = 0;
+
+    private final SpatialHashGrid broadphase = new SpatialHashGrid(64);
+    private final IntList pairs = new IntList(1024);
+    private long[] sortKeys = new long[512];
+    private final float[] axisScratch = new float[4];
+
+    private float gravityX;
+    private float gravityY;
+    private float accumulator = 0;
+    private boolean deterministic = false;
+
+    public PhysicsWorld(float gravityX, float gravityY) {
+        this.gravityX = gravityX;
+        this.gravityY = gravityY;
+    }
+
+    // Deterministic mode sorts contacts, solves islands in order on one thread and uses StrictMath,
+    // so identical inputs give bit-identical results regardless of core count
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    public int bodyCount() {
+        return bodyCount;
+    }
+
+    public int addCircle(float cx, float cy, float r, float mass) {
+        int id = newBody(cx, cy, mass, CIRCLE);
+        radius[id] = r;
+        halfW[id] = r;
+        halfH[id] = r;
+        return id;
+    }
+
+    public int addBox(float cx, float cy, float w, float h, float mass) {
+        int id = newBody(cx, cy, mass, BOX);
+        halfW[id] = w / 2;
+        halfH[id] = h / 2;
+        radius[id] = (float) sqrt(halfW[id] * halfW[id] + halfH[id] * halfH[id]);
+        return id;
+    }
+
+    // Vertices are local x,y pairs around the centre and must form a convex polygon
+    public int addPolygon(float cx, float cy, float[] vertices, float mass) {
+        if (vertices.length < 6 || vertices.length % 2 != 0) {
+            throw new RuntimeException("A polygon needs at least 3 x,y vertex pairs");
+        }
+        int id = newBody(cx, cy, mass, POLYGON);
+        if (polyUsed + vertices.length > polyVertices.length) {
+            polyVertices = Arrays.copyOf(polyVertices, Math.max(polyVertices.length * 2, polyUsed + vertices.length));
+        }
+        polyStart[id] = polyUsed;
+        polyCount[id] = vertices.length / 2;
+        System.arraycopy(vertices, 0, polyVertices, polyUsed, vertices.length);
+        polyUsed += vertices.length;
+        float maxX = 0, maxY = 0, r = 0;
+        for (int i = 0; i < vertices.length; i += 2) {
+            maxX = Math.max(maxX, Math.abs(vertices[i]));
+            maxY = Math.max(maxY, Math.abs(vertices[i + 1]));
+            r = Math.max(r, (float) sqrt(vertices[i] * vertices[i] + vertices[i + 1] * vertices[i + 1]));
+        }
+        halfW[id] = maxX;
+        halfH[id] = maxY;
+        radius[id] = r;
+        return id;
+    }
+
+    public void setVelocity(int id, float newVx, float newVy) {
+        check(id);
+        vx[id] = newVx;
+        vy[id] = newVy;
+    }
+
+    public void setRestitution(int id, float value) {
+        check(id);
+        restitution[id] = value;
+    }
+
+    public float getVelocityX(int id) {
+        check(id);
+        return vx[id];
+    }
+
+    public float getVelocityY(int id) {
+        check(id);
+        return vy[id];
+    }
+
+    // Interpolated render position between the previous and current fixed step
+    public float getX(int id) {
+        check(id);
+        float alpha = accumulator / FIXED_STEP;
+        return prevX[id] + (x[id] - prevX[id]) * alpha;
+    }
+
+    public float getY(int id) {
+        check(id);
+        float alpha = accumulator / FIXED_STEP;
+        return prevY[id] + (y[id] - prevY[id]) * alpha;
+    }
+
+    // Advances by a frame's elapsed time, running as many fixed steps as fit
+    public int update(float frameSeconds) {
+        accumulator += Math.max(0, frameSeconds);
+        int steps = 0;
+        while (accumulator >= FIXED_STEP && steps < MAX_STEPS_PER_FRAME) {
+            step();
+            accumulator -= FIXED_STEP;
+            steps++;
+        }
+        // Drop time we could not catch up on rather than spiralling
+        if (steps == MAX_STEPS_PER_FRAME && accumulator >= FIXED_STEP) accumulator = 0;
+        return steps;
+    }
+
+    public void step() {
+        float dt = FIXED_STEP;
+        for (int i = 0; i < bodyCount; i++) {
+            prevX[i] = x[i];
+            prevY[i] = y[i];
+            if (invMass[i] == 0) continue;
+            vx[i] += gravityX * dt;
+            vy[i] += gravityY * dt;
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+        }
+        findContacts();
+        buildIslands();
+        if (deterministic || contactCount < PARALLEL_CONTACTS || islandCount < 2) {
+            for (int island = 0; island < islandCount; island++) solveIsland(island);
+        } else {
+            IntStream.range(0, islandCount).parallel().forEach(this::solveIsland);
+        }
+    }
+
+    private int newBody(float cx, float cy, float mass, int kind) {
+        if (bodyCount == x.length) grow();
+        int id = bodyCount++;
+        x[id] = cx;
+        y[id] = cy;
+        prevX[id] = cx;
+        prevY[id] = cy;
+        vx[id] = 0;
+        vy[id] = 0;
+        invMass[id] = mass > 0 ? 1f / mass : 0f; // mass 0 means static
+        restitution[id] = 0.5f;
+        shape[id] = kind;
+        return id;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        invMass = Arrays.copyOf(invMass, capacity);
+        restitution = Arrays.copyOf(restitution, capacity);
+        shape = Arrays.copyOf(shape, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        halfW = Arrays.copyOf(halfW, capacity);
+        halfH = Arrays.copyOf(halfH, capacity);
+        polyStart = Arrays.copyOf(polyStart, capacity);
+        polyCount = Arrays.copyOf(polyCount, capacity);
+        islandParent = Arrays.copyOf(islandParent, capacity);
+        islandOf = Arrays.copyOf(islandOf, capacity);
+    }
+
+    private void check(int id) {
+        if (id < 0 || id >= bodyCount) throw new RuntimeException("No physics body " + id);
+    }
+
+    private void findContacts() {
+        for (int i = 0; i < bodyCount; i++) {
+            broadphase.insert(i, x[i] - halfW[i], y[i] - halfH[i], 2 * halfW[i], 2 * halfH[i]);
+        }
+        pairs.clear();
+        broadphase.queryPairs(pairs);
+        if (deterministic) sortPairs();
+
+        contactCount = 0;
+        for (int p = 0; p < pairs.size(); p += 2) {
+            int a = pairs.get(p);
+            int b = pairs.get(p + 1);
+            if (invMass[a] == 0 && invMass[b] == 0) continue;
+            collide(a, b);
+        }
+    }
+
+    private void sortPairs() {
+        int n = pairs.size() / 2;
+        if (sortKeys.length < n) sortKeys = new long[Math.max(n, sortKeys.length * 2)];
+        int[] data = pairs.rawArray();
+        for (int i = 0; i < n; i++) {
+            sortKeys[i] = ((long) data[2 * i] << 32) | data[2 * i + 1];
+        }
+        Arrays.sort(sortKeys, 0, n);
+        for (int i = 0; i < n; i++) {
+            data[2 * i] = (int) (sortKeys[i] >>> 32);
+            data[2 * i + 1] = (int) sortKeys[i];
+        }
+    }
+
+    private void collide(int a, int b) {
+        int sa = shape[a];
+        int sb = shape[b];
+        if (sa == CIRCLE && sb == CIRCLE) {
+            circleCircle(a, b);
+        } else if (sa == BOX && sb == BOX) {
+            boxBox(a, b);
+        } else if (sa == CIRCLE && sb == BOX) {
+            circleBox(a, b, false);
+        } else if (sa == BOX && sb == CIRCLE) {
+            circleBox(b, a, true);
+        } else if (sa == CIRCLE) {
+            circlePolygon(a, b, false);
+        } else if (sb == CIRCLE) {
+            circlePolygon(b, a, true);
+        } else {
+            polygonPolygon(a, b);
+        }
+    }
+
+    private void circleCircle(int a, int b) {
+        float dx = x[b] - x[a];
+        float dy = y[b] - y[a];
+        float r = radius[a] + radius[b];
+        float d2 = dx * dx + dy * dy;
+        if (d2 >= r * r) return;
+        float d = (float) sqrt(d2);
+        if (d == 0) {
+            addContact(a, b, 0, 1, r);
+        } else {
+            addContact(a, b, dx / d, dy / d, r - d);
+        }
+    }
+
+    private void boxBox(int a, int b) {
+        float dx = x[b] - x[a];
+        float dy = y[b] - y[a];
+        float overlapX = halfW[a] + halfW[b] - Math.abs(dx);
+        float overlapY = halfH[a] + halfH[b] - Math.abs(dy);
+        if (overlapX <= 0 || overlapY <= 0) return;
+        if (overlapX < overlapY) {
+            addContact(a, b, dx < 0 ? -1 : 1, 0, overlapX);
+        } else {
+            addContact(a, b, 0, dy < 0 ? -1 : 1, overlapY);
+        }
+    }
+
+    // Contact normal always points from the first body of the pair to the second
+    private void circleBox(int circle, int box, boolean boxFirst) {
+        float dx = x[circle] - x[box];
+        float dy = y[circle] - y[box];
+        float cx = Math.max(-halfW[box], Math.min(halfW[box], dx));
+        float cy = Math.max(-halfH[box], Math.min(halfH[box], dy));
+        boolean inside = cx == dx && cy == dy;
+        float nx, ny, depth;
+        if (inside) {
+            // Centre is inside the box: push out along the nearest face
+            float faceX = halfW[box] - Math.abs(dx);
+            float faceY = halfH[box] - Math.abs(dy);
+            if (faceX < faceY) {
+                nx = dx < 0 ? -1 : 1;
+                ny = 0;
+                depth = faceX + radius[circle];
+            } else {
+                nx = 0;
+                ny = dy < 0 ? -1 : 1;
+                depth = faceY + radius[circle];
+            }
+        } else {
+            float ox = dx - cx;
+            float oy = dy - cy;
+            float d2 = ox * ox + oy * oy;
+            if (d2 >= radius[circle] * radius[circle]) return;
+            float d = (float) sqrt(d2);
+            nx = ox / d;
+            ny = oy / d;
+            depth = radius[circle] - d;
+        }
+        // (nx, ny) points from box to circle
+        if (boxFirst) {
+            addContact(box, circle, nx, ny, depth);
+        } else {
+            addContact(circle, box, -nx, -ny, depth);
+        }
+    }
+
+    private void circlePolygon(int circle, int poly, boolean polyFirst) {
+        float best = Float.MAX_VALUE;
+        float bestNX = 0, bestNY = 0;
+        int n = vertexCount(poly);
+
+        // Polygon edge normals, plus the axis from the closest vertex to the circle centre
+        float closestD2 = Float.MAX_VALUE;
+        float closestX = 0, closestY = 0;
+        for (int i = 0; i <= n; i++) {
+            float ax, ay;
+            if (i < n) {
+                edgeNormal(poly, i, axisScratch);
+                ax = axisScratch[0];
+                ay = axisScratch[1];
+                float vx0 = vertexX(poly, i) - x[circle];
+                float vy0 = vertexY(poly, i) - y[circle];
+                float d2 = vx0 * vx0 + vy0 * vy0;
+                if (d2 < closestD2) {
+                    closestD2 = d2;
+                    closestX = vertexX(poly, i);
+                    closestY = vertexY(poly, i);
+                }
+            } else {
+                ax = x[circle] - closestX;
+                ay = y[circle] - closestY;
+                float len = (float) sqrt(ax * ax + ay * ay);
+                if (len == 0) continue;
+                ax /= len;
+                ay /= len;
+            }
+            project(poly, ax, ay, axisScratch);
+            float c = x[circle] * ax + y[circle] * ay;
+            // Penetration along this axis measured as pushing the circle toward its positive or negative side
+            float forward = axisScratch[1] - (c - radius[circle]);
+            float backward = (c + radius[circle]) - axisScratch[0];
+            if (forward <= 0 || backward <= 0) return;
+            float overlap = Math.min(forward, backward);
+            if (overlap < best) {
+                best = overlap;
+                float sign = forward < backward ? 1 : -1;
+                bestNX = ax * sign;
+                bestNY = ay * sign;
+            }
+        }
+        // (bestNX, bestNY) points from polygon to circle
+        if (polyFirst) {
+            addContact(poly, circle, bestNX, bestNY, best);
+        } else {
+            addContact(circle, poly, -bestNX, -bestNY, best);
+        }
+    }
+
+    private void polygonPolygon(int a, int b) {
+        float best = Float.MAX_VALUE;
+        float bestNX = 0, bestNY = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int owner = pass == 0 ? a : b;
+            int n = vertexCount(owner);
+            for (int i = 0; i < n; i++) {
+                edgeNormal(owner, i, axisScratch);
+                float ax = axisScratch[0];
+                float ay = axisScratch[1];
+                project(a, ax, ay, axisScratch);
+                float minA = axisScratch[0];
+                float maxA = axisScratch[1];
+                project(b, ax, ay, axisScratch);
+                // Separate by whichever direction needs the shorter push, so containment is handled too
+                float forward = maxA - axisScratch[0];
+                float backward = axisScratch[1] - minA;
+                if (forward <= 0 || backward <= 0) return;
+                float overlap = Math.min(forward, backward);
+                if (overlap < best) {
+                    best = overlap;
+                    float sign = forward < backward ? 1 : -1;
+                    bestNX = ax * sign;
+                    bestNY = ay * sign;
+                }
+            }
+        }
+        addContact(a, b, bestNX, bestNY, best);
+    }
+
+    // Boxes are treated as 4-vertex polygons by the SAT routines
+    private int vertexCount(int body) {
+        return shape[body] == BOX ? 4 : polyCount[body];
+    }
+
+    private float vertexX(int body, int i) {
+        if (shape[body] == BOX) return x[body] + (i == 0 || i == 3 ? -halfW[body] : halfW[body]);
+        return x[body] + polyVertices[polyStart[body] + 2 * i];
+    }
+
+    private float vertexY(int body, int i) {
+        if (shape[body] == BOX) return y[body] + (i < 2 ? -halfH[body] : halfH[body]);
+        return y[body] + polyVertices[polyStart[body] + 2 * i + 1];
+    }
+
+    private void edgeNormal(int body, int i, float[] out) {
+        int n = vertexCount(body);
+        int j = (i + 1) % n;
+        float ex = vertexX(body, j) - vertexX(body, i);
+        float ey = vertexY(body, j) - vertexY(body, i);
+        float len = (float) sqrt(ex * ex + ey * ey);
+        out[0] = len == 0 ? 0 : -ey / len;
+        out[1] = len == 0 ? 1 : ex / len;
+    }
+
+    private void project(int body, float ax, float ay, float[] out) {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        int n = vertexCount(body);
+        for (int i = 0; i < n; i++) {
+            float p = vertexX(body, i) * ax + vertexY(body, i) * ay;
+            min = Math.min(min, p);
+            max = Math.max(max, p);
+        }
+        out[0] = min;
+        out[1] = max;
+    }
+
+    private void addContact(int a, int b, float nx, float ny, float depth) {
+        if (contactCount == contactA.length) {
+            int capacity = contactCount * 2;
+            contactA = Arrays.copyOf(contactA, capacity);
+            contactB = Arrays.copyOf(contactB, capacity);
+            contactNX = Arrays.copyOf(contactNX, capacity);
+            contactNY = Arrays.copyOf(contactNY, capacity);
+            contactDepth = Arrays.copyOf(contactDepth, capacity);
+            islandOrder = Arrays.copyOf(islandOrder, capacity);
+            contactIsland = Arrays.copyOf(contactIsland, capacity);
+        }
+        contactA[contactCount] = a;
+        contactB[contactCount] = b;
+        contactNX[contactCount] = nx;
+        contactNY[contactCount] = ny;
+        contactDepth[contactCount] = depth;
+        contactCount++;
+    }
+
+    // Union-find over dynamic bodies; static bodies never merge islands because they are never written
+    private void buildIslands() {
+        for (int i = 0; i < bodyCount; i++) islandParent[i] = i;
+        for (int c = 0; c < contactCount; c++) {
+            int a = contactA[c];
+            int b = contactB[c];
+            if (invMass[a] != 0 && invMass[b] != 0) union(a, b);
+        }
+
+        // Counting sort of contacts by island, keeping contact order stable within an island
+        Arrays.fill(islandOf, 0, bodyCount, -1);
+        if (islandFill.length < contactCount + 1) islandFill = new int[contactIsland.length + 1];
+        Arrays.fill(islandFill, 0, contactCount + 1, 0);
+        islandCount = 0;
+        for (int c = 0; c < contactCount; c++) {
+            int root = find(invMass[contactA[c]] != 0 ? contactA[c] : contactB[c]);
+            if (islandOf[root] < 0) islandOf[root] = islandCount++;
+            contactIsland[c] = islandOf[root];
+            islandFill[contactIsland[c]]++;
+        }
+        if (islandStart.length < islandCount + 1) islandStart = new int[islandFill.length];
+        int offset = 0;
+        for (int i = 0; i < islandCount; i++) {
+            islandStart[i] = offset;
+            offset += islandFill[i];
+            islandFill[i] = islandStart[i];
+        }
+        islandStart[islandCount] = offset;
+        for (int c = 0; c < contactCount; c++) {
+            islandOrder[islandFill[contactIsland[c]]++] = c;
+        }
+    }
+
+    private int find(int i) {
+        while (islandParent[i] != i) {
+            islandParent[i] = islandParent[islandParent[i]];
+            i = islandParent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) return;
+        // Deterministic root choice: the lower id wins
+        if (ra < rb) islandParent[rb] = ra;
+        else islandParent[ra] = rb;
+    }
+
+    private void solveIsland(int island) {
+        int from = islandStart[island];
+        int to = islandStart[island + 1];
+        for (int iteration = 0; iteration < SOLVER_ITERATIONS; iteration++) {
+            for (int k = from; k < to; k++) {
+                int c = islandOrder[k];
+                int a = contactA[c];
+                int b = contactB[c];
+                float nx = contactNX[c];
+                float ny = contactNY[c];
+                float velocityAlongNormal = (vx[b] - vx[a]) * nx + (vy[b] - vy[a]) * ny;
+                if (velocityAlongNormal > 0) continue;
+                float e = Math.min(restitution[a], restitution[b]);
+                float impulse = -(1 + e) * velocityAlongNormal / (invMass[a] + invMass[b]);
+                vx[a] -= impulse * invMass[a] * nx;
+                vy[a] -= impulse * invMass[a] * ny;
+                vx[b] += impulse * invMass[b] * nx;
+                vy[b] += impulse * invMass[b] * ny;
+            }
+        }
+        for (int k = from; k < to; k++) {
+            int c = islandOrder[k];
+            int a = contactA[c];
+            int b = contactB[c];
+            float correction = Math.max(contactDepth[c] - CORRECTION_SLOP, 0)
+                    / (invMass[a] + invMass[b]) * CORRECTION_PERCENT;
+            x[a] -= correction * invMass[a] * contactNX[c];
+            y[a] -= correction * invMass[a] * contactNY[c];
+            x[b] += correction * invMass[b] * contactNX[c];
+            y[b] += correction * invMass[b] * contactNY[c];
+        }
+    }
+
+    private double sqrt(double value) {
+        return deterministic ? StrictMath.sqrt(value) : Math.sqrt(value);
+    }
+}
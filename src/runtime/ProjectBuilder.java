@@ -0,0 +1,263 @@
+// src/runtime/ProjectBuilder.java
+package runtime;
+
+import parser.FlatAST;
+import parser.KuromicFormat;
+import parser.ModuleCache;
+import parser.ModuleGraph;
+import parser.ProgramCache;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Builds every script under a project directory to HTML in one JVM. A script another project file imports
+// is a module: it is bundled into the pages that import it rather than built on its own. Both passes run on
+// a work-stealing pool, one task per file:
+//   1. hash each file, and parse only those whose hash changed since the last build to learn their imports
+//   2. compile each entry script whose own source or any module it reaches changed, and write its page
+// The manifest in the output directory records each file's hash and imports, and which entries were built
+// from exactly those files, so an unchanged project rebuilds nothing and parses nothing.
+public class ProjectBuilder {
+    private static final String MANIFEST = ".kuromi-build";
+    private static final String EXTENSION = ".kuromi";
+
+    private final ModuleCache modules;
+
+    public ProjectBuilder(ModuleCache modules) {
+        this.modules = modules;
+    }
+
+    // One source file as seen by this build
+    private static final class Source {
+        final Path path;
+        String hash;
+        List<Path> imports = List.of();
+        String error;
+        long parseNanos;
+
+        Source(Path path) {
+            this.path = path;
+        }
+    }
+
+    // What a build left behind: file hashes and imports, and the entries built from them
+    private static final class Manifest {
+        final Map<Path, String> hashes = new HashMap<>();
+        final Map<Path, List<Path>> imports = new HashMap<>();
+        final Set<Path> built = new HashSet<>();
+    }
+
+    private static final class Result {
+        final Path entry;
+        final long parseNanos;
+        final long compileNanos;
+        final long writeNanos;
+        final String error;
+
+        Result(Path entry, long parseNanos, long compileNanos, long writeNanos, String error) {
+            this.entry = entry;
+            this.parseNanos = parseNanos;
+            this.compileNanos = compileNanos;
+            this.writeNanos = writeNanos;
+            this.error = error;
+        }
+    }
+
+    // Returns false when any script failed to build
+    public boolean build(Path directory, Path outputDirectory) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Path root = directory.toRealPath();
+        Files.createDirectories(outputDirectory);
+        Path output = outputDirectory.toRealPath();
+        Path manifestFile = output.resolve(MANIFEST);
+        Manifest previous = readManifest(manifestFile);
+
+        List<Path> scripts;
+        try (Stream<Path> files = Files.walk(root)) {
+            scripts = files.filter(file -> file.toString().endsWith(EXTENSION) && !file.startsWith(output))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Pass 1, widening to modules outside the project as imports reveal them
+            Map<Path, Source> sources = new HashMap<>();
+            List<Path> pending = scripts;
+            while (!pending.isEmpty()) {
+                List<Callable<Source>> tasks = new ArrayList<>();
+                for (Path file : pending) tasks.add(() -> inspect(file, previous));
+                Set<Path> discovered = new LinkedHashSet<>();
+                for (Source source : invokeAll(pool, tasks)) {
+                    sources.put(source.path, source);
+                    discovered.addAll(source.imports);
+                }
+                discovered.removeAll(sources.keySet());
+                pending = new ArrayList<>(discovered);
+            }
+
+            Set<Path> imported = new HashSet<>();
+            for (Path script : scripts) imported.addAll(sources.get(script).imports);
+            List<Path> entries = new ArrayList<>();
+            List<Path> upToDate = new ArrayList<>();
+            for (Path script : scripts) {
+                if (imported.contains(script)) continue;
+                if (isUpToDate(script, root, output, sources, previous)) upToDate.add(script); else entries.add(script);
+            }
+
+            // Pass 2
+            List<Callable<Result>> tasks = new ArrayList<>();
+            for (Path entry : entries) tasks.add(() -> build(entry, outputFor(entry, root, output), sources.get(entry)));
+            List<Result> results = invokeAll(pool, tasks);
+
+            Set<Path> built = new HashSet<>(upToDate);
+            for (Result result : results) {
+                if (result.error == null) built.add(result.entry);
+            }
+            writeManifest(manifestFile, sources.values(), built);
+            return printSummary(root, results, upToDate.size(), threads, System.nanoTime() - start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Source inspect(Path file, Manifest previous) {
+        long start = System.nanoTime();
+        Source source = new Source(file);
+        try {
+            source.hash = ProgramCache.hex(ProgramCache.hash(file));
+            if (source.hash.equals(previous.hashes.get(file))) {
+                source.imports = previous.imports.get(file);
+            } else {
+                FlatAST program = modules.get(file);
+                List<Path> imports = new ArrayList<>();
+                for (String path : ModuleGraph.imports(program)) imports.add(ModuleGraph.resolveImport(file, path));
+                source.imports = imports;
+            }
+        } catch (IOException | RuntimeException e) {
+            source.error = e.getMessage();
+        }
+        source.parseNanos = System.nanoTime() - start;
+        return source;
+    }
+
+    // Built last time, still on disk, and nothing it reaches has changed or failed since
+    private static boolean isUpToDate(Path entry, Path root, Path output, Map<Path, Source> sources, Manifest previous) {
+        if (!previous.built.contains(entry) || !Files.exists(outputFor(entry, root, output))) return false;
+        Set<Path> visited = new HashSet<>();
+        ArrayDeque<Path> pending = new ArrayDeque<>();
+        pending.push(entry);
+        while (!pending.isEmpty()) {
+            Source source = sources.get(pending.pop());
+            if (!visited.add(source.path)) continue;
+            if (source.error != null || !source.hash.equals(previous.hashes.get(source.path))) return false;
+            for (Path module : source.imports) pending.push(module);
+        }
+        return true;
+    }
+
+    private Result build(Path entry, Path output, Source source) {
+        long start = System.nanoTime();
+        if (source.error != null) return new Result(entry, source.parseNanos, 0, 0, source.error);
+        try {
+            FlatAST program = modules.get(entry);
+            List<String> imports = ModuleGraph.imports(program);
+            ModuleGraph graph = imports.isEmpty() ? null : ModuleGraph.load(entry, imports, modules);
+            long parsed = System.nanoTime();
+            String html = new Compiler().toHTML(program, graph);
+            long compiled = System.nanoTime();
+            Files.createDirectories(output.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                writer.write(html);
+            }
+            return new Result(entry, source.parseNanos + parsed - start, compiled - parsed,
+                    System.nanoTime() - compiled, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(entry, source.parseNanos + System.nanoTime() - start, 0, 0, e.getMessage());
+        }
+    }
+
+    private static Path outputFor(Path entry, Path root, Path output) {
+        String relative = root.relativize(entry).toString();
+        return output.resolve(relative.substring(0, relative.length() - EXTENSION.length()) + ".html");
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static boolean printSummary(Path root, List<Result> results, int upToDate, int threads, long nanos) {
+        List<Result> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparing(result -> result.entry));
+        int failed = 0;
+        System.out.println();
+        System.out.println("📊 Build summary");
+        for (Result result : sorted) {
+            String name = root.relativize(result.entry).toString();
+            if (result.error != null) {
+                failed++;
+                System.out.printf("  ❌ %-40s %s%n", name, result.error);
+            } else {
+                System.out.printf("  ✓ %-40s parse %7.1f ms  compile %7.1f ms  write %7.1f ms%n", name,
+                        result.parseNanos / 1e6, result.compileNanos / 1e6, result.writeNanos / 1e6);
+            }
+        }
+        System.out.printf("%d built, %d up to date, %d failed in %.0f ms on %d threads%n",
+                results.size() - failed, upToDate, failed, nanos / 1e6, threads);
+        return failed == 0;
+    }
+
+    // "kuromi-build VERSION" then "file HASH PATH IMPORT..." and "built PATH" lines, tab-separated. A manifest
+    // from another engine version reads as empty, so everything is rebuilt.
+    private static Manifest readManifest(Path file) throws IOException {
+        Manifest manifest = new Manifest();
+        if (!Files.exists(file)) return manifest;
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals("kuromi-build\t" + KuromicFormat.ENGINE_VERSION)) return manifest;
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals("file") && fields.length >= 3) {
+                Path path = Path.of(fields[2]);
+                manifest.hashes.put(path, fields[1]);
+                List<Path> imports = new ArrayList<>();
+                for (int i = 3; i < fields.length; i++) imports.add(Path.of(fields[i]));
+                manifest.imports.put(path, imports);
+            } else if (fields[0].equals("built") && fields.length == 2) {
+                manifest.built.add(Path.of(fields[1]));
+            }
+        }
+        return manifest;
+    }
+
+    // Files that failed to read or parse are left out, so the next build looks at them again
+    private static void writeManifest(Path file, Collection<Source> sources, Set<Path> built) throws IOException {
+        StringBuilder text = new StringBuilder("kuromi-build\t").append(KuromicFormat.ENGINE_VERSION).append('\n');
+        for (Source source : sources) {
+            if (source.error != null) continue;
+            text.append("file\t").append(source.hash).append('\t').append(source.path);
+            for (Path module : source.imports) text.append('\t').append(module);
+            text.append('\n');
+        }
+        for (Path entry : built) text.append("built\t").append(entry).append('\n');
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
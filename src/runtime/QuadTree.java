@@ -0,0 +1,246 @@
+// src/runtime/QuadTree.java
+package runtime;
+
+import java.util.Arrays;
+
+// Region quadtree over fixed world bounds; better than a uniform grid when objects cluster unevenly.
+// Each object lives in the deepest node that fully contains it, anything outside the bounds stays at the root.
+public class QuadTree extends SpatialIndex {
+    private static final int SPLIT_THRESHOLD = 8;
+    private static final int MAX_DEPTH = 10;
+
+    private float[] nodeMinX = new float[64];
+    private float[] nodeMinY = new float[64];
+    private float[] nodeMaxX = new float[64];
+    private float[] nodeMaxY = new float[64];
+    private int[] firstChild = new int[64];
+    private int[] depth = new int[64];
+    private int[][] nodeItems = new int[64][];
+    private int[] nodeItemCount = new int[64];
+    private int nodeCount = 0;
+
+    private int[] objectNode = new int[64];
+    private int[] stack = new int[64];
+
+    public QuadTree(float x, float y, float w, float h) {
+        if (w <= 0 || h <= 0) throw new RuntimeException("Quadtree bounds must be positive");
+        newNode(x, y, x + w, y + h, 0);
+    }
+
+    @Override
+    public void insert(int id, float x, float y, float w, float h) {
+        if (contains(id)) {
+            move(id, x, y, w, h);
+            return;
+        }
+        store(id, x, y, w, h);
+        if (objectNode.length < present.length) objectNode = Arrays.copyOf(objectNode, present.length);
+        present[id] = true;
+        count++;
+        place(id);
+    }
+
+    @Override
+    public void move(int id, float x, float y, float w, float h) {
+        requirePresent(id);
+        store(id, x, y, w, h);
+        int node = objectNode[id];
+        if ((node == 0 || fits(node, id)) && (firstChild[node] < 0 || childFor(node, id) < 0)) {
+            return;
+        }
+        detach(id, node);
+        place(id);
+    }
+
+    @Override
+    public void remove(int id) {
+        if (!contains(id)) return;
+        detach(id, objectNode[id]);
+        present[id] = false;
+        count--;
+    }
+
+    @Override
+    public void queryRect(float x, float y, float w, float h, IntList out) {
+        float x1 = x + w;
+        float y1 = y + h;
+        int queryStamp = beginQuery();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int[] nodeList = nodeItems[node];
+            for (int i = 0; i < nodeItemCount[node]; i++) {
+                int id = nodeList[i];
+                if (overlaps(id, x, y, x1, y1) && visit(id, queryStamp)) out.add(id);
+            }
+            int child = firstChild[node];
+            if (child < 0) continue;
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            for (int c = child; c < child + 4; c++) {
+                if (nodeMinX[c] <= x1 && nodeMaxX[c] >= x && nodeMinY[c] <= y1 && nodeMaxY[c] >= y) {
+                    stack[top++] = c;
+                }
+            }
+        }
+    }
+
+    // Overlapping objects always share a node or sit in an ancestor/descendant pair, so each node
+    // checks its own items against each other and then against its subtree, pruned by bounds
+    @Override
+    public void queryPairs(IntList out) {
+        for (int node = 0; node < nodeCount; node++) {
+            int[] list = nodeItems[node];
+            int n = nodeItemCount[node];
+            for (int i = 0; i < n; i++) {
+                int a = list[i];
+                for (int j = i + 1; j < n; j++) {
+                    int b = list[j];
+                    if (overlaps(a, b)) addPair(a, b, out);
+                }
+                if (firstChild[node] >= 0) pairsBelow(node, a, out);
+            }
+        }
+    }
+
+    private void pairsBelow(int node, int a, IntList out) {
+        int top = 0;
+        int child = firstChild[node];
+        for (int c = child; c < child + 4; c++) stack[top++] = c;
+        while (top > 0) {
+            int current = stack[--top];
+            if (nodeMinX[current] > maxX[a] || nodeMaxX[current] < minX[a]
+                    || nodeMinY[current] > maxY[a] || nodeMaxY[current] < minY[a]) {
+                continue;
+            }
+            int[] list = nodeItems[current];
+            for (int i = 0; i < nodeItemCount[current]; i++) {
+                int b = list[i];
+                if (overlaps(a, b)) addPair(a, b, out);
+            }
+            int first = firstChild[current];
+            if (first < 0) continue;
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            for (int c = first; c < first + 4; c++) stack[top++] = c;
+        }
+    }
+
+    private static void addPair(int a, int b, IntList out) {
+        out.add(Math.min(a, b));
+        out.add(Math.max(a, b));
+    }
+
+    @Override
+    public void clear() {
+        float x0 = nodeMinX[0];
+        float y0 = nodeMinY[0];
+        float x1 = nodeMaxX[0];
+        float y1 = nodeMaxY[0];
+        nodeCount = 0;
+        Arrays.fill(present, false);
+        count = 0;
+        newNode(x0, y0, x1, y1, 0);
+    }
+
+    private void place(int id) {
+        int node = 0;
+        while (true) {
+            int child = firstChild[node] >= 0 ? childFor(node, id) : -1;
+            if (child < 0) break;
+            node = child;
+        }
+        addItem(node, id);
+        if (firstChild[node] < 0 && nodeItemCount[node] > SPLIT_THRESHOLD && depth[node] < MAX_DEPTH) {
+            split(node);
+        }
+    }
+
+    private void split(int node) {
+        float x0 = nodeMinX[node];
+        float y0 = nodeMinY[node];
+        float x1 = nodeMaxX[node];
+        float y1 = nodeMaxY[node];
+        float mx = (x0 + x1) * 0.5f;
+        float my = (y0 + y1) * 0.5f;
+        int d = depth[node] + 1;
+        int first = newNode(x0, y0, mx, my, d);
+        newNode(mx, y0, x1, my, d);
+        newNode(x0, my, mx, y1, d);
+        newNode(mx, my, x1, y1, d);
+        firstChild[node] = first;
+
+        // Push down every item that now fits entirely inside one child
+        int[] list = nodeItems[node];
+        int kept = 0;
+        for (int i = 0; i < nodeItemCount[node]; i++) {
+            int id = list[i];
+            int child = childFor(node, id);
+            if (child >= 0) {
+                addItem(child, id);
+            } else {
+                list[kept++] = id;
+            }
+        }
+        nodeItemCount[node] = kept;
+    }
+
+    private int childFor(int node, int id) {
+        int child = firstChild[node];
+        for (int c = child; c < child + 4; c++) {
+            if (fits(c, id)) return c;
+        }
+        return -1;
+    }
+
+    // Half-open on the far edges so two objects in sibling nodes can never touch
+    private boolean fits(int node, int id) {
+        return minX[id] >= nodeMinX[node] && maxX[id] < nodeMaxX[node]
+                && minY[id] >= nodeMinY[node] && maxY[id] < nodeMaxY[node];
+    }
+
+    private void addItem(int node, int id) {
+        int[] list = nodeItems[node];
+        if (nodeItemCount[node] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            nodeItems[node] = list;
+        }
+        list[nodeItemCount[node]++] = id;
+        objectNode[id] = node;
+    }
+
+    private void detach(int id, int node) {
+        int[] list = nodeItems[node];
+        int n = nodeItemCount[node];
+        for (int i = 0; i < n; i++) {
+            if (list[i] == id) {
+                list[i] = list[n - 1];
+                nodeItemCount[node] = n - 1;
+                return;
+            }
+        }
+    }
+
+    private int newNode(float x0, float y0, float x1, float y1, int d) {
+        if (nodeCount == firstChild.length) {
+            int capacity = nodeCount * 2;
+            nodeMinX = Arrays.copyOf(nodeMinX, capacity);
+            nodeMinY = Arrays.copyOf(nodeMinY, capacity);
+            nodeMaxX = Arrays.copyOf(nodeMaxX, capacity);
+            nodeMaxY = Arrays.copyOf(nodeMaxY, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            nodeItems = Arrays.copyOf(nodeItems, capacity);
+            nodeItemCount = Arrays.copyOf(nodeItemCount, capacity);
+        }
+        int node = nodeCount++;
+        nodeMinX[node] = x0;
+        nodeMinY[node] = y0;
+        nodeMaxX[node] = x1;
+        nodeMaxY[node] = y1;
+        firstChild[node] = -1;
+        depth[node] = d;
+        if (nodeItems[node] == null) nodeItems[node] = new int[4];
+        nodeItemCount[node] = 0;
+        return node;
+    }
+}
@@ -0,0 +1,73 @@
+// src/runtime/Range.java
+package runtime;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Arithmetic sequence from start (inclusive) to end (exclusive). Elements are computed from their index,
+// never stored, so range(0, 1000000) costs the same as range(0, 10).
+public final class Range implements Iterable<Value> {
+    public final double start;
+    public final double end;
+    public final double step;
+    private final int size;
+
+    public Range(double start, double end, double step) {
+        if (step == 0 || Double.isNaN(step)) throw new RuntimeException("range() step can't be zero");
+        this.start = start;
+        this.end = end;
+        this.step = step;
+        double count = Math.ceil((end - start) / step);
+        if (count > Integer.MAX_VALUE) throw new RuntimeException("range() has too many elements");
+        this.size = count > 0 ? (int) count : 0;
+    }
+
+    private Range(double start, double end, double step, int size) {
+        this.start = start;
+        this.end = end;
+        this.step = step;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Elements [from, to) as a range of their own. The count is carried over rather than re-derived from
+    // the new end bound, where rounding in start + to * step could add an element.
+    public Range slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Slice " + from + ":" + to + " out of " + size);
+        }
+        return new Range(start + from * step, start + to * step, step, to - from);
+    }
+
+    // Computed as start + i * step so long ranges don't accumulate rounding error
+    public double get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        return start + index * step;
+    }
+
+    @Override
+    public Iterator<Value> iterator() {
+        return new Iterator<Value>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Value next() {
+                if (index >= size) throw new NoSuchElementException();
+                return Value.number(start + index++ * step);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "range(" + Value.number(start) + ", " + Value.number(end) + ", " + Value.number(step) + ")";
+    }
+}
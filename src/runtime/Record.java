@@ -0,0 +1,65 @@
+// src/runtime/Record.java
+package runtime;
+
+import java.util.Arrays;
+
+// Instance of a RecordType: one slot per field, found by the slot the type assigned it, so a field
+// access is an array index instead of a map lookup. Number fields live unboxed in numbers[], which the
+// interpreter reads and writes directly when it evaluates arithmetic; values[] holds every other field
+// and the boxed number once someone asks for it, and is null while a number written by setNumber hasn't
+// been boxed yet. Records are shared by reference, like entities and other native objects.
+public final class Record {
+    private final RecordType type;
+    private final double[] numbers;
+    private final Value[] values;
+
+    Record(RecordType type) {
+        this.type = type;
+        this.numbers = new double[type.size()];
+        this.values = new Value[type.size()];
+        Arrays.fill(values, Value.nil());
+    }
+
+    public RecordType getType() {
+        return type;
+    }
+
+    public Value get(int slot) {
+        Value value = values[slot];
+        if (value == null) {
+            value = Value.number(numbers[slot]);
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    public void set(int slot, Value value) {
+        if (value.type == Value.Type.NUMBER) numbers[slot] = value.asNumber();
+        values[slot] = value;
+    }
+
+    public boolean holdsNumber(int slot) {
+        Value value = values[slot];
+        return value == null || value.type == Value.Type.NUMBER;
+    }
+
+    // Only meaningful while holdsNumber(slot)
+    public double getNumber(int slot) {
+        return numbers[slot];
+    }
+
+    public void setNumber(int slot, double value) {
+        numbers[slot] = value;
+        values[slot] = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(type.getName()).append('(');
+        for (int slot = 0; slot < type.size(); slot++) {
+            if (slot > 0) text.append(", ");
+            text.append(type.field(slot)).append(": ").append(get(slot).asString());
+        }
+        return text.append(')').toString();
+    }
+}
@@ -0,0 +1,54 @@
+// src/runtime/RecordType.java
+package runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Layout declared by "record Name { a, b, c }": field names in slot order. Names are interned so
+// the interpreter can check a parse-time slot hint with a reference comparison.
+public final class RecordType {
+    private final String name;
+    private final String[] fields;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    public RecordType(String name, String[] fields) {
+        this.name = name;
+        this.fields = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            this.fields[i] = fields[i].intern();
+            if (slots.put(this.fields[i], i) != null) {
+                throw new RuntimeException("Record " + name + " declares field '" + fields[i] + "' twice");
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    public String field(int slot) {
+        return fields[slot];
+    }
+
+    // -1 when the record has no such field
+    public int slot(String field) {
+        Integer slot = slots.get(field);
+        return slot != null ? slot : -1;
+    }
+
+    // Positional constructor; missing arguments leave the field null
+    public Record construct(Value[] args) {
+        if (args.length > fields.length) {
+            throw new RuntimeException(name + "() expects at most " + fields.length + " arguments.");
+        }
+        Record record = new Record(this);
+        for (int i = 0; i < args.length; i++) {
+            record.set(i, args[i].share());
+        }
+        return record;
+    }
+}
@@ -0,0 +1,253 @@
+// src/runtime/SpatialHashGrid.java
+package runtime;
+
+import java.util.Arrays;
+
+// Uniform grid over an unbounded plane; only occupied cells are stored, in an open-addressing table
+public class SpatialHashGrid extends SpatialIndex {
+    private final float cellSize;
+    private final float inverseCell;
+
+    // Cell range each object currently occupies, so moves within the same cells are O(1)
+    private int[] cellX0 = new int[64];
+    private int[] cellY0 = new int[64];
+    private int[] cellX1 = new int[64];
+    private int[] cellY1 = new int[64];
+
+    private long[] keys = new long[256];
+    private boolean[] used = new boolean[256];
+    private int[][] items = new int[256][];
+    private int[] itemCount = new int[256];
+    private int usedCells = 0;
+
+    public SpatialHashGrid(float cellSize) {
+        if (cellSize <= 0) throw new RuntimeException("Cell size must be positive");
+        this.cellSize = cellSize;
+        this.inverseCell = 1f / cellSize;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public void insert(int id, float x, float y, float w, float h) {
+        if (contains(id)) {
+            move(id, x, y, w, h);
+            return;
+        }
+        store(id, x, y, w, h);
+        ensureRanges(id);
+        present[id] = true;
+        count++;
+        assignCells(id);
+    }
+
+    @Override
+    public void move(int id, float x, float y, float w, float h) {
+        requirePresent(id);
+        store(id, x, y, w, h);
+        if (cell(x) == cellX0[id] && cell(y) == cellY0[id]
+                && cell(x + w) == cellX1[id] && cell(y + h) == cellY1[id]) {
+            return;
+        }
+        unassignCells(id);
+        assignCells(id);
+    }
+
+    @Override
+    public void remove(int id) {
+        if (!contains(id)) return;
+        unassignCells(id);
+        present[id] = false;
+        count--;
+    }
+
+    @Override
+    public void queryRect(float x, float y, float w, float h, IntList out) {
+        float x1 = x + w;
+        float y1 = y + h;
+        int queryStamp = beginQuery();
+        int cx0 = cell(x);
+        int cy0 = cell(y);
+        int cx1 = cell(x1);
+        int cy1 = cell(y1);
+
+        long cellsInRange = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+        if (cellsInRange > usedCells) {
+            // Huge query over a sparse grid: scanning occupied cells is cheaper than probing empty ones
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (!used[slot]) continue;
+                int cx = (int) (keys[slot] >> 32);
+                int cy = (int) keys[slot];
+                if (cx < cx0 || cx > cx1 || cy < cy0 || cy > cy1) continue;
+                collect(slot, x, y, x1, y1, queryStamp, out);
+            }
+            return;
+        }
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int slot = find(key(cx, cy));
+                if (slot >= 0) collect(slot, x, y, x1, y1, queryStamp, out);
+            }
+        }
+    }
+
+    @Override
+    public void queryPairs(IntList out) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (!used[slot] || itemCount[slot] < 2) continue;
+            int[] cellItems = items[slot];
+            int n = itemCount[slot];
+            int cx = (int) (keys[slot] >> 32);
+            int cy = (int) keys[slot];
+            for (int i = 0; i < n; i++) {
+                int a = cellItems[i];
+                for (int j = i + 1; j < n; j++) {
+                    int b = cellItems[j];
+                    if (!overlaps(a, b)) continue;
+                    // Objects sharing several cells are reported only from the cell holding their overlap's corner
+                    if (cell(Math.max(minX[a], minX[b])) != cx || cell(Math.max(minY[a], minY[b])) != cy) continue;
+                    out.add(Math.min(a, b));
+                    out.add(Math.max(a, b));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(itemCount, 0);
+        Arrays.fill(present, false);
+        usedCells = 0;
+        count = 0;
+    }
+
+    private void collect(int slot, float x0, float y0, float x1, float y1, int queryStamp, IntList out) {
+        int[] cellItems = items[slot];
+        int n = itemCount[slot];
+        for (int i = 0; i < n; i++) {
+            int id = cellItems[i];
+            if (overlaps(id, x0, y0, x1, y1) && visit(id, queryStamp)) {
+                out.add(id);
+            }
+        }
+    }
+
+    private void assignCells(int id) {
+        int cx0 = cell(minX[id]);
+        int cy0 = cell(minY[id]);
+        int cx1 = cell(maxX[id]);
+        int cy1 = cell(maxY[id]);
+        cellX0[id] = cx0;
+        cellY0[id] = cy0;
+        cellX1[id] = cx1;
+        cellY1[id] = cy1;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int slot = findOrCreate(key(cx, cy));
+                int[] cellItems = items[slot];
+                if (itemCount[slot] == cellItems.length) {
+                    cellItems = Arrays.copyOf(cellItems, cellItems.length * 2);
+                    items[slot] = cellItems;
+                }
+                cellItems[itemCount[slot]++] = id;
+            }
+        }
+    }
+
+    private void unassignCells(int id) {
+        for (int cy = cellY0[id]; cy <= cellY1[id]; cy++) {
+            for (int cx = cellX0[id]; cx <= cellX1[id]; cx++) {
+                int slot = find(key(cx, cy));
+                if (slot < 0) continue;
+                int[] cellItems = items[slot];
+                int n = itemCount[slot];
+                for (int i = 0; i < n; i++) {
+                    if (cellItems[i] == id) {
+                        cellItems[i] = cellItems[n - 1];
+                        itemCount[slot] = n - 1;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void ensureRanges(int id) {
+        if (id < cellX0.length) return;
+        int capacity = present.length;
+        cellX0 = Arrays.copyOf(cellX0, capacity);
+        cellY0 = Arrays.copyOf(cellY0, capacity);
+        cellX1 = Arrays.copyOf(cellX1, capacity);
+        cellY1 = Arrays.copyOf(cellY1, capacity);
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate * inverseCell);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+        }
+        return -1;
+    }
+
+    // Empty cells keep their slot so objects bouncing between cells don't churn the table
+    private int findOrCreate(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        if ((usedCells + 1) * 4 > keys.length * 3) {
+            grow();
+            return findOrCreate(key);
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        if (items[slot] == null) items[slot] = new int[4];
+        itemCount[slot] = 0;
+        usedCells++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        int[][] oldItems = items;
+        int[] oldCount = itemCount;
+        int capacity = oldKeys.length * 2;
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        items = new int[capacity][];
+        itemCount = new int[capacity];
+        usedCells = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            // Drop cells that emptied out while rehashing
+            if (!oldUsed[i] || oldCount[i] == 0) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (used[slot]) slot = (slot + 1) & mask;
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            items[slot] = oldItems[i];
+            itemCount[slot] = oldCount[i];
+            usedCells++;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// src/runtime/SpatialIndex.java
+package runtime;
+
+import java.util.Arrays;
+
+// Axis-aligned boxes keyed by small non-negative ids, stored as parallel arrays
+public abstract class SpatialIndex {
+    protected float[] minX = new float[64];
+    protected float[] minY = new float[64];
+    protected float[] maxX = new float[64];
+    protected float[] maxY = new float[64];
+    protected boolean[] present = new boolean[64];
+    protected int count = 0;
+
+    // Per-id stamp so an object reachable from several cells or nodes is reported once per query
+    private int[] visited = new int[64];
+    private int stamp = 0;
+
+    public abstract void insert(int id, float x, float y, float w, float h);
+
+    public abstract void move(int id, float x, float y, float w, float h);
+
+    public abstract void remove(int id);
+
+    // Appends the ids whose boxes overlap the rectangle to out
+    public abstract void queryRect(float x, float y, float w, float h, IntList out);
+
+    // Appends every overlapping pair as two consecutive ids (a < b)
+    public abstract void queryPairs(IntList out);
+
+    public abstract void clear();
+
+    public void queryCircle(float cx, float cy, float r, IntList out) {
+        int start = out.size();
+        queryRect(cx - r, cy - r, 2 * r, 2 * r, out);
+        int kept = start;
+        float r2 = r * r;
+        for (int i = start; i < out.size(); i++) {
+            int id = out.get(i);
+            float dx = cx - Math.max(minX[id], Math.min(cx, maxX[id]));
+            float dy = cy - Math.max(minY[id], Math.min(cy, maxY[id]));
+            if (dx * dx + dy * dy <= r2) {
+                out.set(kept++, id);
+            }
+        }
+        while (out.size() > kept) out.removeLast();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < present.length && present[id];
+    }
+
+    protected void store(int id, float x, float y, float w, float h) {
+        if (id < 0) throw new RuntimeException("Spatial ids must be non-negative");
+        if (id >= present.length) {
+            int capacity = Math.max(present.length * 2, id + 1);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            present = Arrays.copyOf(present, capacity);
+            visited = Arrays.copyOf(visited, capacity);
+        }
+        minX[id] = x;
+        minY[id] = y;
+        maxX[id] = x + w;
+        maxY[id] = y + h;
+    }
+
+    protected void requirePresent(int id) {
+        if (!contains(id)) throw new RuntimeException("Object " + id + " is not in the spatial index");
+    }
+
+    protected boolean overlaps(int a, int b) {
+        return minX[a] <= maxX[b] && maxX[a] >= minX[b] && minY[a] <= maxY[b] && maxY[a] >= minY[b];
+    }
+
+    protected boolean overlaps(int id, float x0, float y0, float x1, float y1) {
+        return minX[id] <= x1 && maxX[id] >= x0 && minY[id] <= y1 && maxY[id] >= y0;
+    }
+
+    protected int beginQuery() {
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    // Returns true the first time id is seen during the current query
+    protected boolean visit(int id, int queryStamp) {
+        if (visited[id] == queryStamp) return false;
+        visited[id] = queryStamp;
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+// src/runtime/SpriteCache.java
+package runtime;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SpriteCache {
+    // Angles snap to 256 steps per turn and scales to 1/32, so small jitter reuses one entry
+    public static final int ANGLE_STEPS = 256;
+    public static final int SCALE_STEPS = 32;
+    public static final int NO_TINT = -1;
+
+    private final long maxPixels;
+    private long cachedPixels = 0;
+    private final LinkedHashMap<Key, BufferedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Key probe = new Key();
+
+    public SpriteCache(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    public BufferedImage get(BufferedImage source, double degrees, double scale,
+                             boolean flipX, boolean flipY, int tint) {
+        int angleStep = Math.floorMod((int) Math.round(degrees * ANGLE_STEPS / 360.0), ANGLE_STEPS);
+        int scaleStep = Math.max(1, (int) Math.round(scale * SCALE_STEPS));
+
+        probe.set(source, angleStep, scaleStep, flipX, flipY, tint);
+        BufferedImage cached = entries.get(probe);
+        if (cached != null) return cached;
+
+        BufferedImage transformed = transform(source, angleStep, scaleStep, flipX, flipY, tint);
+        Key key = new Key();
+        key.set(source, angleStep, scaleStep, flipX, flipY, tint);
+        entries.put(key, transformed);
+        cachedPixels += pixels(transformed);
+        evict();
+        return transformed;
+    }
+
+    public void clear() {
+        entries.clear();
+        cachedPixels = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = entries.entrySet().iterator();
+        while (cachedPixels > maxPixels && entries.size() > 1 && it.hasNext()) {
+            cachedPixels -= pixels(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long pixels(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    private static BufferedImage transform(BufferedImage source, int angleStep, int scaleStep,
+                                           boolean flipX, boolean flipY, int tint) {
+        double theta = angleStep * (2 * Math.PI / ANGLE_STEPS);
+        double scale = (double) scaleStep / SCALE_STEPS;
+        double w = source.getWidth() * scale;
+        double h = source.getHeight() * scale;
+        double cos = Math.abs(Math.cos(theta));
+        double sin = Math.abs(Math.sin(theta));
+        int outW = Math.max(1, (int) Math.ceil(w * cos + h * sin));
+        int outH = Math.max(1, (int) Math.ceil(w * sin + h * cos));
+
+        BufferedImage out = new BufferedImage(outW, outH, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        AffineTransform at = new AffineTransform();
+        at.translate(outW / 2.0, outH / 2.0);
+        at.rotate(theta);
+        at.scale(flipX ? -scale : scale, flipY ? -scale : scale);
+        at.translate(-source.getWidth() / 2.0, -source.getHeight() / 2.0);
+        g.drawImage(source, at, null);
+        g.dispose();
+
+        if (tint != NO_TINT) {
+            applyTint(out, tint);
+        }
+        return out;
+    }
+
+    // Multiplies every channel by the tint color, keeping alpha
+    private static void applyTint(BufferedImage image, int tint) {
+        int tr = (tint >> 16) & 0xFF;
+        int tg = (tint >> 8) & 0xFF;
+        int tb = tint & 0xFF;
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            int p = pixels[i];
+            int r = ((p >> 16) & 0xFF) * tr / 255;
+            int g = ((p >> 8) & 0xFF) * tg / 255;
+            int b = (p & 0xFF) * tb / 255;
+            pixels[i] = (p & 0xFF000000) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static final class Key {
+        private BufferedImage source;
+        private long bits;
+
+        void set(BufferedImage source, int angleStep, int scaleStep, boolean flipX, boolean flipY, int tint) {
+            this.source = source;
+            this.bits = ((long) angleStep << 54) | ((long) (scaleStep & 0xFFFFF) << 34)
+                    | (flipX ? 1L << 33 : 0) | (flipY ? 1L << 32 : 0) | (tint & 0xFFFFFFFFL);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return source == other.source && bits == other.bits;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(source) * 31 + Long.hashCode(bits);
+        }
+    }
+}
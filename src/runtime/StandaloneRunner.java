@@ -0,0 +1,80 @@
+// src/runtime/StandaloneRunner.java
+package runtime;
+
+import interpreter.Interpreter;
+import lexer.ColumnarLexer;
+import parser.FlatAST;
+import parser.KuromicFormat;
+import parser.ModuleGraph;
+import parser.Parser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Entry point of jars made by JarBuilder. Runs the precompiled program embedded beside the script, and only
+// lexes and parses the embedded source when that program is missing or was written by another engine version.
+// A jar entry can't be memory-mapped, so the program is read onto the heap and decoded from there.
+public class StandaloneRunner {
+
+    public static void main(String[] args) {
+        try {
+            Interpreter interpreter = new Interpreter();
+            ModuleGraph modules = loadModules();
+            if (modules != null) interpreter.setModules(modules);
+            FlatAST program = loadProgram();
+            if (program != null) {
+                interpreter.interpret(program);
+            } else {
+                byte[] source = readResource("/resources/embedded.kuromi");
+                if (source == null) {
+                    throw new RuntimeException("No embedded script found in this jar");
+                }
+                Parser parser = new Parser(new ColumnarLexer(new String(source)).scanTokens());
+                parser.setLazyFunctionBodies(true);
+                interpreter.interpret(parser.parse());
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static FlatAST loadProgram() throws IOException {
+        byte[] bytes = readResource("/resources/embedded" + KuromicFormat.EXTENSION);
+        return bytes == null ? null : KuromicFormat.decode(ByteBuffer.wrap(bytes), null);
+    }
+
+    // Rebuilds the graph JarBuilder wrote out; module n stands in as the path "n", with the script as "0"
+    private static ModuleGraph loadModules() throws IOException {
+        byte[] index = readResource("/" + JarBuilder.MODULE_INDEX);
+        if (index == null) return null;
+        Map<Path, FlatAST> programs = new HashMap<>();
+        Map<Path, Map<String, Path>> imports = new HashMap<>();
+        for (String line : new String(index, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split("\t", 3);
+            Path importer = Paths.get(fields[0]);
+            Path module = Paths.get(fields[1]);
+            imports.computeIfAbsent(importer, path -> new LinkedHashMap<>()).put(fields[2], module);
+            if (!programs.containsKey(module)) {
+                byte[] bytes = readResource("/resources/modules/" + fields[1] + KuromicFormat.EXTENSION);
+                FlatAST program = bytes != null ? KuromicFormat.decode(ByteBuffer.wrap(bytes), null) : null;
+                if (program == null) throw new RuntimeException("Embedded module " + fields[2] + " is missing or damaged");
+                programs.put(module, program);
+            }
+        }
+        return new ModuleGraph(Paths.get("0"), programs, imports);
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = StandaloneRunner.class.getResourceAsStream(name)) {
+            return in == null ? null : in.readAllBytes();
+        }
+    }
+}
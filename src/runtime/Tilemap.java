@@ -0,0 +1,133 @@
+// src/runtime/Tilemap.java
+package runtime;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+public class Tilemap {
+    public static final int CHUNK_SIZE = 16;
+
+    private final int cols;
+    private final int rows;
+    private final int tileSize;
+    private final BufferedImage tileset;
+    private final int tilesetCols;
+    private final int[] tiles;
+
+    // Chunks are prerendered lazily and only redrawn after one of their tiles changes
+    private final int chunkCols;
+    private final int chunkRows;
+    private final BufferedImage[] chunkCache;
+    private final boolean[] dirty;
+
+    public Tilemap(int cols, int rows, int tileSize, BufferedImage tileset) {
+        if (cols <= 0 || rows <= 0 || tileSize <= 0) {
+            throw new RuntimeException("Tilemap size must be positive");
+        }
+        this.cols = cols;
+        this.rows = rows;
+        this.tileSize = tileSize;
+        this.tileset = tileset;
+        this.tilesetCols = tileset != null ? Math.max(1, tileset.getWidth() / tileSize) : 1;
+        this.tiles = new int[cols * rows];
+        this.chunkCols = (cols + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkRows = (rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkCache = new BufferedImage[chunkCols * chunkRows];
+        this.dirty = new boolean[chunkCols * chunkRows];
+        java.util.Arrays.fill(dirty, true);
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int get(int col, int row) {
+        if (col < 0 || row < 0 || col >= cols || row >= rows) return 0;
+        return tiles[row * cols + col];
+    }
+
+    public void set(int col, int row, int tile) {
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            throw new RuntimeException("Tile " + col + "," + row + " is outside the tilemap");
+        }
+        int index = row * cols + col;
+        if (tiles[index] == tile) return;
+        tiles[index] = tile;
+        dirty[(row / CHUNK_SIZE) * chunkCols + col / CHUNK_SIZE] = true;
+    }
+
+    public void render(Graphics2D g, int x, int y, int viewWidth, int viewHeight) {
+        int chunkPixels = CHUNK_SIZE * tileSize;
+
+        // Only chunks overlapping the viewport are touched
+        int firstCol = Math.max(0, Math.floorDiv(-x, chunkPixels));
+        int firstRow = Math.max(0, Math.floorDiv(-y, chunkPixels));
+        int lastCol = Math.min(chunkCols - 1, Math.floorDiv(viewWidth - 1 - x, chunkPixels));
+        int lastRow = Math.min(chunkRows - 1, Math.floorDiv(viewHeight - 1 - y, chunkPixels));
+
+        for (int cy = firstRow; cy <= lastRow; cy++) {
+            for (int cx = firstCol; cx <= lastCol; cx++) {
+                int chunk = cy * chunkCols + cx;
+                if (dirty[chunk] || chunkCache[chunk] == null) {
+                    renderChunk(cx, cy);
+                }
+                g.drawImage(chunkCache[chunk], x + cx * chunkPixels, y + cy * chunkPixels, null);
+            }
+        }
+    }
+
+    private void renderChunk(int cx, int cy) {
+        int chunk = cy * chunkCols + cx;
+        BufferedImage image = chunkCache[chunk];
+        if (image == null) {
+            int size = CHUNK_SIZE * tileSize;
+            image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            chunkCache[chunk] = image;
+        }
+
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+
+        int startCol = cx * CHUNK_SIZE;
+        int startRow = cy * CHUNK_SIZE;
+        int endCol = Math.min(cols, startCol + CHUNK_SIZE);
+        int endRow = Math.min(rows, startRow + CHUNK_SIZE);
+        for (int row = startRow; row < endRow; row++) {
+            for (int col = startCol; col < endCol; col++) {
+                int tile = tiles[row * cols + col];
+                if (tile <= 0) continue;
+                int dx = (col - startCol) * tileSize;
+                int dy = (row - startRow) * tileSize;
+                if (tileset != null) {
+                    // Tile ids start at 1 and index the tileset left-to-right, top-to-bottom
+                    int sx = ((tile - 1) % tilesetCols) * tileSize;
+                    int sy = ((tile - 1) / tilesetCols) * tileSize;
+                    g.drawImage(tileset, dx, dy, dx + tileSize, dy + tileSize,
+                            sx, sy, sx + tileSize, sy + tileSize, null);
+                } else {
+                    g.setColor(new java.awt.Color(tileColor(tile)));
+                    g.fillRect(dx, dy, tileSize, tileSize);
+                }
+            }
+        }
+        g.dispose();
+        dirty[chunk] = false;
+    }
+
+    // Without a tileset every tile id gets a stable debug color
+    private static int tileColor(int tile) {
+        int h = tile * 0x9E3779B1;
+        return (h >>> 8) | 0x404040;
+    }
+}
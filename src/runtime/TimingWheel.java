@@ -0,0 +1,226 @@
+// src/runtime/TimingWheel.java
+package runtime;
+
+import java.util.Arrays;
+
+// Hashed hierarchical timing wheel: four levels of 256 slots, each level 256 times coarser than the one
+// below. Inserting and cancelling are O(1); advancing moves timers down a level when their slot comes up
+// and fires the current level-0 slot as one batch. Timers live in parallel arrays and are addressed by
+// handles carrying a generation, so a stale handle can never cancel a reused entry.
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    public static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private static final int FREE = -1;
+    private static final int FIRING = -2;
+    private static final int GENERATION_MASK = 0xFFFFF;
+
+    @FunctionalInterface
+    public interface Expiry<T> {
+        void expired(long handle, T payload);
+    }
+
+    // Per-timer state
+    private long[] deadline = new long[256];
+    private long[] period = new long[256];
+    private int[] next = new int[256];
+    private int[] prev = new int[256];
+    private int[] slotOf = new int[256];
+    private int[] generation = new int[256];
+    private Object[] payload = new Object[256];
+    private int used = 0;
+    private int freeHead = -1;
+    private int pending = 0;
+
+    // Doubly linked list per slot with a tail so equal deadlines fire in insertion order
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private final int[] tails = new int[LEVELS * SLOTS];
+    private final long[] occupied = new long[SLOTS / 64];
+    private long current;
+
+    private final IntList firingIndex = new IntList(256);
+    private final IntList firingGeneration = new IntList(256);
+
+    public TimingWheel(long startTick) {
+        current = startTick;
+        Arrays.fill(heads, -1);
+        Arrays.fill(tails, -1);
+    }
+
+    public long currentTick() {
+        return current;
+    }
+
+    public int size() {
+        return pending;
+    }
+
+    public boolean isEmpty() {
+        return pending == 0;
+    }
+
+    // Fires delay ticks from now (at least one); a positive period makes it repeat
+    public long schedule(long delay, long period, T value) {
+        if (delay > MAX_DELAY || period > MAX_DELAY) throw new RuntimeException("Timer delay is too long");
+        int index = allocate();
+        deadline[index] = current + Math.max(1, delay);
+        this.period[index] = Math.max(0, period);
+        payload[index] = value;
+        pending++;
+        place(index);
+        return handle(index);
+    }
+
+    public long schedule(long delay, T value) {
+        return schedule(delay, 0, value);
+    }
+
+    // Returns false if the timer already fired (one-shot) or was cancelled
+    public boolean cancel(long handle) {
+        int index = (int) handle;
+        if (index < 0 || index >= used || generation[index] != (int) (handle >>> 32) || slotOf[index] == FREE) {
+            return false;
+        }
+        if (slotOf[index] != FIRING) unlink(index);
+        release(index);
+        return true;
+    }
+
+    // Moves time forward to tick, firing every timer that comes due along the way in deadline order
+    public void advance(long tick, Expiry<T> expiry) {
+        while (current < tick) {
+            long t = ++current;
+            cascade(t);
+            int slot = (int) (t & SLOT_MASK);
+            if (heads[slot] >= 0) fire(slot, expiry);
+        }
+    }
+
+    // Earliest tick worth waking up for: exact when a level-0 slot is occupied, otherwise the next
+    // cascade, which may itself have nothing due. Long.MAX_VALUE when no timers are pending.
+    public long nextWakeTick() {
+        if (pending == 0) return Long.MAX_VALUE;
+        for (long t = current + 1, end = current + SLOTS; t <= end; t++) {
+            int slot = (int) (t & SLOT_MASK);
+            if ((occupied[slot >>> 6] & (1L << slot)) != 0) return t;
+            if (slot == SLOT_MASK) return t + 1;
+        }
+        return current + SLOTS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fire(int slot, Expiry<T> expiry) {
+        // Detach the whole slot first so callbacks can schedule and cancel freely
+        firingIndex.clear();
+        firingGeneration.clear();
+        for (int index = heads[slot]; index >= 0; index = next[index]) {
+            slotOf[index] = FIRING;
+            firingIndex.add(index);
+            firingGeneration.add(generation[index]);
+        }
+        heads[slot] = -1;
+        tails[slot] = -1;
+        occupied[slot >>> 6] &= ~(1L << slot);
+
+        for (int i = 0; i < firingIndex.size(); i++) {
+            int index = firingIndex.get(i);
+            // Cancelled by an earlier callback in this batch
+            if (generation[index] != firingGeneration.get(i) || slotOf[index] != FIRING) continue;
+            T value = (T) payload[index];
+            long handle = handle(index);
+            if (period[index] > 0) {
+                deadline[index] += period[index];
+                place(index);
+            }
+            expiry.expired(handle, value);
+            if (period[index] == 0 && generation[index] == firingGeneration.get(i) && slotOf[index] == FIRING) {
+                release(index);
+            }
+        }
+    }
+
+    // At each multiple of 256^level, that level's current slot is redistributed to the levels below
+    private void cascade(long t) {
+        int top = 0;
+        while (top + 1 < LEVELS && ((t >>> (SLOT_BITS * top)) & SLOT_MASK) == 0) top++;
+        for (int level = top; level >= 1; level--) {
+            int slot = level * SLOTS + (int) ((t >>> (SLOT_BITS * level)) & SLOT_MASK);
+            int index = heads[slot];
+            heads[slot] = -1;
+            tails[slot] = -1;
+            while (index >= 0) {
+                int following = next[index];
+                place(index);
+                index = following;
+            }
+        }
+    }
+
+    private void place(int index) {
+        long delta = deadline[index] - current;
+        int level = 0;
+        while (level + 1 < LEVELS && delta >= 1L << (SLOT_BITS * (level + 1))) level++;
+        int local = (int) ((deadline[index] >>> (SLOT_BITS * level)) & SLOT_MASK);
+        int slot = level * SLOTS + local;
+        slotOf[index] = slot;
+        next[index] = -1;
+        prev[index] = tails[slot];
+        if (tails[slot] >= 0) {
+            next[tails[slot]] = index;
+        } else {
+            heads[slot] = index;
+        }
+        tails[slot] = index;
+        if (level == 0) occupied[local >>> 6] |= 1L << local;
+    }
+
+    private void unlink(int index) {
+        int slot = slotOf[index];
+        if (prev[index] >= 0) {
+            next[prev[index]] = next[index];
+        } else {
+            heads[slot] = next[index];
+        }
+        if (next[index] >= 0) {
+            prev[next[index]] = prev[index];
+        } else {
+            tails[slot] = prev[index];
+        }
+        if (slot < SLOTS && heads[slot] < 0) occupied[slot >>> 6] &= ~(1L << slot);
+    }
+
+    private int allocate() {
+        if (freeHead >= 0) {
+            int index = freeHead;
+            freeHead = next[index];
+            return index;
+        }
+        if (used == deadline.length) {
+            int capacity = used * 2;
+            deadline = Arrays.copyOf(deadline, capacity);
+            period = Arrays.copyOf(period, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            slotOf = Arrays.copyOf(slotOf, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+            payload = Arrays.copyOf(payload, capacity);
+        }
+        return used++;
+    }
+
+    private void release(int index) {
+        slotOf[index] = FREE;
+        payload[index] = null;
+        generation[index] = (generation[index] + 1) & GENERATION_MASK;
+        next[index] = freeHead;
+        freeHead = index;
+        pending--;
+    }
+
+    private long handle(int index) {
+        return ((long) generation[index] << 32) | index;
+    }
+}
@@ -1,13 +1,14 @@
 // src/runtime/Value.java
 package runtime;
 
+import interpreter.Module;
 import parser.ASTNode;
 import java.awt.image.BufferedImage;
 import java.util.List;
 
 public class Value {
     public enum Type {
-        NUMBER, STRING, BOOL, NULL, FUNCTION, IMAGE, ARRAY
+        NUMBER, STRING, BOOL, NULL, FUNCTION, NATIVE, IMAGE, ARRAY, TILEMAP, OBJECT, RANGE, MAP, RECORD, MODULE
     }
 
     public final Type type;
@@ -38,6 +39,10 @@ public class Value {
         return new Value(Type.FUNCTION, func);
     }
 
+    public static Value nativeFunction(BuiltInFunctions.Function func) {
+        return new Value(Type.NATIVE, func);
+    }
+
     public static Value image(BufferedImage img) {
         return new Value(Type.IMAGE, img);
     }
@@ -46,6 +51,45 @@ public class Value {
         return new Value(Type.ARRAY, elements);
     }
 
+    public static Value tilemap(Tilemap map) {
+        return new Value(Type.TILEMAP, map);
+    }
+
+    public static Value record(Record record) {
+        return new Value(Type.RECORD, record);
+    }
+
+    public static Value map(KuromiMap map) {
+        return new Value(Type.MAP, map);
+    }
+
+    public static Value range(Range range) {
+        return new Value(Type.RANGE, range);
+    }
+
+    public static Value module(Module module) {
+        return new Value(Type.MODULE, module);
+    }
+
+    // Opaque handle to a native runtime object such as a particle system
+    public static Value object(Object handle) {
+        return new Value(Type.OBJECT, handle);
+    }
+
+    // What a variable or parameter binding stores: arrays and maps become O(1) copy-on-write copies, so
+    // the callee can't mutate the caller's array; every other value is returned as is
+    public Value share() {
+        if (type == Type.ARRAY && data instanceof KuromiArray) return array(((KuromiArray) data).share());
+        if (type == Type.MAP) return map(((KuromiMap) data).share());
+        return this;
+    }
+
+    // The binding that stored this value with share() is gone
+    public void release() {
+        if (type == Type.ARRAY && data instanceof KuromiArray) ((KuromiArray) data).release();
+        if (type == Type.MAP) ((KuromiMap) data).release();
+    }
+
     public double asNumber() {
         if (type == Type.NUMBER) return (Double) data;
         if (type == Type.BOOL) return ((Boolean) data) ? 1.0 : 0.0;
@@ -79,6 +123,31 @@ public class Value {
         throw new RuntimeException("Not an array");
     }
 
+    public Tilemap asTilemap() {
+        if (type == Type.TILEMAP) return (Tilemap) data;
+        throw new RuntimeException("Not a tilemap");
+    }
+
+    public Record asRecord() {
+        if (type == Type.RECORD) return (Record) data;
+        throw new RuntimeException("Not a record");
+    }
+
+    public KuromiMap asMap() {
+        if (type == Type.MAP) return (KuromiMap) data;
+        throw new RuntimeException("Not a map");
+    }
+
+    public Range asRange() {
+        if (type == Type.RANGE) return (Range) data;
+        throw new RuntimeException("Not a range");
+    }
+
+    public <T> T asObject(Class<T> kind, String name) {
+        if (type == Type.OBJECT && kind.isInstance(data)) return kind.cast(data);
+        throw new RuntimeException("Not a " + name);
+    }
+
     @Override
     public String toString() {
         return asString();
@@ -0,0 +1,113 @@
+// tests/IncrementalDocumentTest.java - NO PACKAGE DECLARATION
+import lexer.ColumnarLexer;
+import lexer.ErrorReporter;
+import lexer.Token;
+import lexer.TokenStream;
+import parser.IncrementalDocument;
+import parser.Parser;
+import java.util.List;
+import java.util.Random;
+
+// Applies edits to an IncrementalDocument and checks after each one that its tokens and statement count
+// match a fresh lex and parse of the same text. Run with: java IncrementalDocumentTest [edits] [seed]
+public class IncrementalDocumentTest {
+    private static final String SCRIPT =
+            "let x = 1.5\n"
+            + "fn add(a, b) {\n"
+            + "    return a + b * 2.25\n"
+            + "}\n"
+            + "// a comment\n"
+            + "let s = \"text\"\n"
+            + "if (x >= 3) { print add(x, 4) } else { print s }\n"
+            + "let m = {hp: 10, \"name\": \"orc\"}\n"
+            + "for i in range(0, 10, 0.5) { m[i] = i }\n";
+
+    // Fragments that tend to merge with or split the tokens around them
+    private static final String[] FRAGMENTS = {
+        "1", "5", ".", ".5", "1.", "=", "==", "!", "<", ">", "/", "//", "\"", "\n", " ", "{", "}", "(", ")",
+        "let", "fn", "x", "_y2", ",", "[", "]", ":", "+", "-"
+    };
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        int edits = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+
+        typing("let x = 1.5");
+        typing(SCRIPT);
+        fuzz(edits, new Random(seed));
+
+        if (failures > 0) {
+            System.out.println("❌ " + failures + " mismatches");
+            System.exit(1);
+        }
+        System.out.println("✅ IncrementalDocumentTest passed");
+    }
+
+    // Types text one character at a time into an empty document
+    private static void typing(String text) {
+        IncrementalDocument document = new IncrementalDocument();
+        for (int i = 0; i < text.length(); i++) {
+            document.insert(i, text.substring(i, i + 1));
+            check(document, "typing " + quote(text.substring(0, i + 1)));
+        }
+    }
+
+    private static void fuzz(int edits, Random random) {
+        IncrementalDocument document = new IncrementalDocument();
+        document.setText(SCRIPT);
+        for (int i = 0; i < edits && failures < 10; i++) {
+            String text = document.getText();
+            // Keeps the document near its starting size so edits keep landing among real tokens
+            if (text.length() > SCRIPT.length() * 2) {
+                document.setText(SCRIPT);
+                text = SCRIPT;
+            }
+            int offset = random.nextInt(text.length() + 1);
+            int length = random.nextInt(3) == 0 ? random.nextInt(Math.min(4, text.length() - offset) + 1) : 0;
+            String replacement = random.nextInt(4) == 0 ? "" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+            document.edit(offset, length, replacement);
+            check(document, "edit " + i + " at " + offset + "+" + length + " " + quote(replacement));
+        }
+    }
+
+    private static void check(IncrementalDocument document, String step) {
+        String text = document.getText();
+        TokenStream fresh = new ColumnarLexer(text, 0, 1, ErrorReporter.IGNORE).scanTokens();
+        List<Token> tokens = document.tokens();
+        boolean same = tokens.size() == fresh.size();
+        for (int i = 0; same && i < tokens.size(); i++) {
+            Token expected = fresh.token(i);
+            Token actual = tokens.get(i);
+            same = actual.type == expected.type && actual.lexeme.equals(expected.lexeme)
+                    && java.util.Objects.equals(actual.literal, expected.literal);
+        }
+        if (!same) {
+            fail(step, "tokens " + tokens + " but a fresh lex gives " + list(fresh));
+            return;
+        }
+        int expectedStatements = new Parser(fresh, ErrorReporter.IGNORE).parse().size();
+        if (document.statements().size() != expectedStatements) {
+            fail(step, document.statements().size() + " statements but a fresh parse gives " + expectedStatements);
+        }
+    }
+
+    private static void fail(String step, String message) {
+        failures++;
+        System.out.println("❌ " + step + ": " + message);
+    }
+
+    private static String list(TokenStream stream) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < stream.size(); i++) {
+            if (i > 0) text.append(", ");
+            text.append(stream.token(i));
+        }
+        return text.append(']').toString();
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\n", "\\n") + '"';
+    }
+}